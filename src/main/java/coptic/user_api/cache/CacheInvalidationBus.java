@@ -0,0 +1,153 @@
+package coptic.user_api.cache;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+/**
+ * Tells the other nodes which cache entries a write made stale.
+ * Services publish (region, user ID) next to their local invalidation; every other node evicts the matching entries of
+ * the caches subscribed to that region. If a node may have missed events (its subscription was lost and re-established)
+ * it flushes those caches completely, so staleness never outlives a reconnect.
+ */
+@Component
+public class CacheInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheInvalidationBus.class);
+
+    //Message layout: origin node | region | user ID
+    private static final String SEPARATOR = "|";
+
+    private final InvalidationTransport transport;
+    private final boolean enabled;
+
+    //Identifies this node's own messages, which need no handling (it invalidated locally already)
+    private final String nodeId = UUID.randomUUID().toString();
+
+    //Handlers per region
+    private final Map<CacheRegion, List<Subscription>> subscriptions = new EnumMap<>(CacheRegion.class);
+
+    //Events received from other nodes, and full flushes after a gap
+    private final LongAdder received = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+
+    /**
+     * Creates the bus
+     * @param transport How messages travel between nodes
+     * @param enabled Off for single-node deployments: nothing is sent or received
+     */
+    public CacheInvalidationBus(InvalidationTransport transport,
+                                @Value("${cache.invalidation.enabled:true}") boolean enabled) {
+        this.transport = transport;
+        this.enabled = enabled;
+        for (CacheRegion region : CacheRegion.values()) {
+            subscriptions.put(region, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            transport.start(new InvalidationTransport.Listener() {
+                @Override
+                public void onMessage(String message) { handle(message); }
+
+                @Override
+                public void onGap() { flushAll(); }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (enabled) {
+            transport.stop();
+        }
+    }
+
+    /**
+     * Registers a cache for a region
+     * @param region The region the cache holds
+     * @param invalidate Evicts one user's entries
+     * @param invalidateAll Evicts everything
+     */
+    public void subscribe(CacheRegion region, IntConsumer invalidate, Runnable invalidateAll) {
+        subscriptions.get(region).add(new Subscription(invalidate, invalidateAll));
+    }
+
+    /**
+     * Tells the other nodes that a user's entries in a region are stale
+     * Inside a transaction the event is sent on commit, and not at all on rollback
+     * @param region What changed
+     * @param userId Whose data changed
+     */
+    public void publish(CacheRegion region, int userId) {
+        if (enabled) {
+            transport.publish(nodeId + SEPARATOR + region.name() + SEPARATOR + userId);
+        }
+    }
+
+    //STATISTICS (since startup)
+    public long getReceivedCount() { return received.sum(); }
+    public long getFlushCount() { return flushes.sum(); }
+
+    void handle(String message) {
+        String[] parts = message.split("\\" + SEPARATOR);
+        if (parts.length != 3 || parts[0].equals(nodeId)) {
+            return;
+        }
+        CacheRegion region;
+        int userId;
+        try {
+            region = CacheRegion.valueOf(parts[1]);
+            userId = Integer.parseInt(parts[2]);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring malformed cache invalidation message: {}", message);
+            return;
+        }
+        received.increment();
+        for (Subscription subscription : subscriptions.get(region)) {
+            try {
+                subscription.invalidate.accept(userId);
+            } catch (RuntimeException e) {
+                log.error("Cache invalidation handler failed for {} {}", region, userId, e);
+            }
+        }
+    }
+
+    void flushAll() {
+        flushes.increment();
+        log.info("Cache invalidation subscription (re)established; flushing subscribed caches");
+        for (List<Subscription> list : subscriptions.values()) {
+            for (Subscription subscription : list) {
+                try {
+                    subscription.invalidateAll.run();
+                } catch (RuntimeException e) {
+                    log.error("Cache flush failed", e);
+                }
+            }
+        }
+    }
+
+    //One cache's handlers
+    private static final class Subscription {
+        private final IntConsumer invalidate;
+        private final Runnable invalidateAll;
+
+        private Subscription(IntConsumer invalidate, Runnable invalidateAll) {
+            this.invalidate = invalidate;
+            this.invalidateAll = invalidateAll;
+        }
+    }
+}
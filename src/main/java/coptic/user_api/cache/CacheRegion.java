@@ -0,0 +1,9 @@
+package coptic.user_api.cache;
+
+//What an invalidation event is about; the ID in the event is always a user ID
+public enum CacheRegion {
+    //A user's row (password hash, token version): user cache and token version cache
+    USER,
+    //A user's bookmarks: bookmark list cache
+    BOOKMARKS
+}
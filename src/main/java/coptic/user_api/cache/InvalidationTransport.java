@@ -0,0 +1,33 @@
+package coptic.user_api.cache;
+
+/**
+ * Carries invalidation messages between the nodes of the service.
+ * Delivery is at most once: a node that loses its subscription must assume it missed messages, which the transport
+ * reports through Listener.onGap once it is subscribed again.
+ */
+public interface InvalidationTransport {
+
+    /**
+     * Sends a message to every node (this one included)
+     * Inside a transaction the message goes out only if, and when, the transaction commits
+     * @param message The message (short, single line)
+     */
+    void publish(String message);
+
+    /**
+     * Starts receiving messages on a background thread
+     * @param listener Called for every message and after every (re)subscription
+     */
+    void start(Listener listener);
+
+    //Stops receiving messages
+    void stop();
+
+    interface Listener {
+        //A message from any node
+        void onMessage(String message);
+
+        //Just subscribed: messages sent before this point may have been missed
+        void onGap();
+    }
+}
@@ -0,0 +1,152 @@
+package coptic.user_api.cache;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+/**
+ * Invalidation messages over Postgres NOTIFY/LISTEN, so no separate broker is needed.
+ * Publishing runs pg_notify on the caller's connection: inside a transaction Postgres delivers it on commit only.
+ * Receiving uses one dedicated connection outside the pool, opened straight from the datasource settings and held by a
+ * daemon thread; if it breaks, the thread reconnects, LISTENs again and reports a gap.
+ */
+@Component
+public class PostgresInvalidationTransport implements InvalidationTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresInvalidationTransport.class);
+
+    //Shows up in pg_stat_activity, so the listener connection is easy to tell apart from pooled ones
+    static final String APPLICATION_NAME = "user-api-cache-listener";
+
+    //Publishing connection: the current transaction's, or a pooled one
+    private final JdbcTemplate jdbcTemplate;
+
+    //Where the listener connects
+    private final String url;
+    private final String username;
+    private final String password;
+
+    //NOTIFY channel (a plain SQL identifier)
+    private final String channel;
+
+    //How long one wait for notifications lasts before the connection is checked, and the pause between reconnects
+    private final int pollMillis;
+    private final long reconnectMillis;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Creates the transport
+     * @param jdbcTemplate Used to publish
+     * @param url JDBC URL of the database
+     * @param username Database user
+     * @param password Database password
+     * @param channel NOTIFY channel shared by all nodes
+     * @param pollMillis Longest wait for notifications before checking that the connection is alive
+     * @param reconnectMillis Pause before reconnecting after the listener connection fails
+     */
+    public PostgresInvalidationTransport(JdbcTemplate jdbcTemplate,
+                                         @Value("${spring.datasource.url}") String url,
+                                         @Value("${spring.datasource.username:}") String username,
+                                         @Value("${spring.datasource.password:}") String password,
+                                         @Value("${cache.invalidation.channel:cache_invalidation}") String channel,
+                                         @Value("${cache.invalidation.poll-millis:5000}") int pollMillis,
+                                         @Value("${cache.invalidation.reconnect-millis:2000}") long reconnectMillis) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid NOTIFY channel: " + channel);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.channel = channel;
+        this.pollMillis = pollMillis;
+        this.reconnectMillis = reconnectMillis;
+    }
+
+    @Override
+    public void publish(String message) {
+        jdbcTemplate.execute("SELECT pg_notify(?, ?)", (PreparedStatementCallback<Boolean>) statement -> {
+            statement.setString(1, channel);
+            statement.setString(2, message);
+            return statement.execute();
+        });
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (running) {
+            throw new IllegalStateException("Already started");
+        }
+        running = true;
+        thread = new Thread(() -> listen(listener), "cache-invalidation-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    //Connect, LISTEN, report the gap, then hand over notifications until the connection fails; repeat while running
+    private void listen(Listener listener) {
+        while (running) {
+            try (Connection connection = connect()) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                listener.onGap();
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollMillis);
+                    if (notifications == null || notifications.length == 0) {
+                        //Quiet period: make sure the socket is still alive, a silent drop would lose events unnoticed
+                        if (!connection.isValid(Math.max(1, pollMillis / 1000))) {
+                            throw new SQLException("Listener connection is no longer valid");
+                        }
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        listener.onMessage(notification.getParameter());
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("Cache invalidation listener lost its connection; reconnecting in {} ms: {}", reconnectMillis, e.getMessage());
+                try {
+                    Thread.sleep(reconnectMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", username);
+        properties.setProperty("password", password);
+        properties.setProperty("ApplicationName", APPLICATION_NAME);
+        return DriverManager.getConnection(url, properties);
+    }
+}
@@ -0,0 +1,23 @@
+package coptic.user_api.config;
+
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.cache.CacheRegion;
+import coptic.user_api.security.TokenVersionCache;
+import coptic.user_api.security.UserCache;
+import coptic.user_api.services.BookmarkListCache;
+import org.springframework.context.annotation.Configuration;
+
+//Subscribes the in-process caches to invalidation events from the other nodes
+@Configuration
+public class CacheInvalidationConfig {
+
+    public CacheInvalidationConfig(CacheInvalidationBus bus, UserCache userCache, TokenVersionCache tokenVersionCache,
+                                   BookmarkListCache bookmarkListCache) {
+        //A user's row changed elsewhere (password, token version)
+        bus.subscribe(CacheRegion.USER, userCache::invalidate, userCache::invalidateAll);
+        bus.subscribe(CacheRegion.USER, tokenVersionCache::evict, tokenVersionCache::evictAll);
+
+        //A user's bookmarks changed elsewhere
+        bus.subscribe(CacheRegion.BOOKMARKS, bookmarkListCache::invalidate, bookmarkListCache::invalidateAll);
+    }
+}
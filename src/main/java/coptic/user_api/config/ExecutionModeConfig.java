@@ -0,0 +1,71 @@
+package coptic.user_api.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+
+/**
+ * Execution mode: platform threads (default) or virtual threads (spring.threads.virtual.enabled=true).
+ * In virtual mode Spring Boot runs Tomcat requests and its task executor (streamed exports, the database work after a
+ * password hash) on virtual threads. The BCrypt pool stays on platform threads on purpose: hashing is CPU-bound and
+ * must stay bounded. The DataSource is also wrapped so no more connections are requested at once than the pool holds.
+ * ExecutionModeBenchmarkTest compares the two modes on the same workload (mvn test -Pbenchmark).
+ */
+@Configuration
+public class ExecutionModeConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionModeConfig.class);
+
+    //DataSource wrappers are applied in this order: the access limit first, directly over the pool, then
+    //SQL inspection (SqlInspectionConfig.SQL_INSPECTION_ORDER) around it
+    public static final int DATABASE_ACCESS_LIMIT_ORDER = Ordered.LOWEST_PRECEDENCE - 1;
+
+    /**
+     * Wraps the DataSource in a ConcurrencyLimitedDataSource when the database access limit is on
+     * @param enabled Whether to limit (defaults to on in virtual-thread mode)
+     * @param permits Most connections checked out at once (defaults to the pool size)
+     * @param acquireTimeoutMillis Longest wait for a slot
+     * @return The post-processor
+     */
+    @Bean
+    public static DatabaseAccessLimitPostProcessor databaseAccessLimit(
+            @Value("${db.access-limit.enabled:${spring.threads.virtual.enabled:false}}") boolean enabled,
+            @Value("${db.access-limit.permits:${spring.datasource.hikari.maximum-pool-size:10}}") int permits,
+            @Value("${db.access-limit.acquire-timeout-millis:2000}") long acquireTimeoutMillis) {
+        return new DatabaseAccessLimitPostProcessor(enabled, permits, acquireTimeoutMillis);
+    }
+
+    //Ordered (and declared as such on the bean method) so Spring applies it before the SQL inspection proxy
+    public static final class DatabaseAccessLimitPostProcessor implements BeanPostProcessor, Ordered {
+
+        private final boolean enabled;
+        private final int permits;
+        private final long acquireTimeoutMillis;
+
+        DatabaseAccessLimitPostProcessor(boolean enabled, int permits, long acquireTimeoutMillis) {
+            this.enabled = enabled;
+            this.permits = permits;
+            this.acquireTimeoutMillis = acquireTimeoutMillis;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (enabled && bean instanceof DataSource dataSource && !(bean instanceof ConcurrencyLimitedDataSource)) {
+                log.info("Limiting concurrent database access to {} connections", permits);
+                return new ConcurrencyLimitedDataSource(dataSource, permits, acquireTimeoutMillis);
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return DATABASE_ACCESS_LIMIT_ORDER;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package coptic.user_api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.outbox.Outbox;
+import coptic.user_api.outbox.OutboxWorker;
+import coptic.user_api.security.AimdLimit;
+import coptic.user_api.security.ConcurrencyLimitFilter;
+import coptic.user_api.security.TokenRevocationList;
+import coptic.user_api.security.UserCache;
+import coptic.user_api.services.BookmarkListCache;
+import coptic.user_api.services.PasswordHashingService;
+import coptic.user_api.services.RefreshTokenService;
+import coptic.user_api.services.ResetTokenSweeper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Metrics beyond what Actuator binds on its own (HTTP server requests, Hikari pool, Hibernate statistics, repository
+ * invocations, JVM): the in-process caches, the hashing pool, load shedding, cache invalidation, the database access
+ * limit, the reset-token sweeper, the outbox and token refresh/revocation. Scraped from /actuator/prometheus.
+ */
+@Configuration
+public class MetricsConfig {
+
+    //Response bodies are serialized by a timed converter (replaces Boot's default Jackson converter)
+    @Bean
+    public TimedJsonHttpMessageConverter timedJsonHttpMessageConverter(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        return new TimedJsonHttpMessageConverter(objectMapper, meterRegistry);
+    }
+
+    //User and bookmark list caches: hits, misses, evictions, size
+    @Bean
+    public MeterBinder cacheMetrics(UserCache userCache, BookmarkListCache bookmarkListCache) {
+        return registry -> {
+            FunctionCounter.builder("cache.hits", userCache, UserCache::getHitCount).tag("cache", "users").register(registry);
+            FunctionCounter.builder("cache.misses", userCache, UserCache::getMissCount).tag("cache", "users").register(registry);
+            FunctionCounter.builder("cache.evictions", userCache, UserCache::getEvictionCount).tag("cache", "users").register(registry);
+            Gauge.builder("cache.size", userCache, UserCache::size).tag("cache", "users").register(registry);
+
+            FunctionCounter.builder("cache.hits", bookmarkListCache, BookmarkListCache::getHitCount).tag("cache", "bookmark-lists").register(registry);
+            FunctionCounter.builder("cache.misses", bookmarkListCache, BookmarkListCache::getMissCount).tag("cache", "bookmark-lists").register(registry);
+            FunctionCounter.builder("cache.evictions", bookmarkListCache, BookmarkListCache::getEvictionCount).tag("cache", "bookmark-lists").register(registry);
+            Gauge.builder("cache.size", bookmarkListCache, BookmarkListCache::size).tag("cache", "bookmark-lists").register(registry);
+            Gauge.builder("cache.weight", bookmarkListCache, BookmarkListCache::getWeightedSize).tag("cache", "bookmark-lists")
+                    .baseUnit("bytes").register(registry);
+        };
+    }
+
+    //BCrypt pool: queue depth, busy threads, completed and rejected hashes
+    @Bean
+    public MeterBinder passwordHashingMetrics(PasswordHashingService hashing) {
+        return registry -> {
+            Gauge.builder("password.hashing.queue", hashing, PasswordHashingService::getQueueDepth).register(registry);
+            Gauge.builder("password.hashing.active", hashing, PasswordHashingService::getActiveCount).register(registry);
+            FunctionCounter.builder("password.hashing.completed", hashing, PasswordHashingService::getCompletedCount).register(registry);
+            FunctionCounter.builder("password.hashing.rejected", hashing, PasswordHashingService::getRejectedCount).register(registry);
+        };
+    }
+
+    //Adaptive concurrency limits per endpoint group: current limit, in flight, shed
+    @Bean
+    public MeterBinder concurrencyLimitMetrics(ConcurrencyLimitFilter filter) {
+        return registry -> {
+            for (Map.Entry<ConcurrencyLimitFilter.Group, AimdLimit> entry : filter.getLimits().entrySet()) {
+                String group = entry.getKey().getKey();
+                Gauge.builder("concurrency.limit", entry.getValue(), AimdLimit::getLimit).tag("group", group).register(registry);
+                Gauge.builder("concurrency.in-flight", entry.getValue(), AimdLimit::getInFlight).tag("group", group).register(registry);
+                FunctionCounter.builder("concurrency.shed", filter, f -> f.getShedCount(entry.getKey())).tag("group", group).register(registry);
+            }
+        };
+    }
+
+    //Cross-node invalidation: events received, full flushes after reconnects
+    @Bean
+    public MeterBinder cacheInvalidationMetrics(CacheInvalidationBus bus) {
+        return registry -> {
+            FunctionCounter.builder("cache.invalidation.received", bus, CacheInvalidationBus::getReceivedCount).register(registry);
+            FunctionCounter.builder("cache.invalidation.flushes", bus, CacheInvalidationBus::getFlushCount).register(registry);
+        };
+    }
+
+    //Expired reset tokens deleted by the sweeper
+    @Bean
+    public MeterBinder resetTokenSweeperMetrics(ResetTokenSweeper sweeper) {
+        return registry -> FunctionCounter.builder("password.reset.tokens.swept", sweeper, ResetTokenSweeper::getSweptCount)
+                .register(registry);
+    }
+
+    //Refresh tokens issued, rotated and caught being reused; revocation checks that reached the database
+    //(Bloom filter possible positives) and how many of those were real revocations, filter rebuilds and size
+    @Bean
+    public MeterBinder tokenRevocationMetrics(RefreshTokenService refreshTokens, TokenRevocationList revocations) {
+        return registry -> {
+            FunctionCounter.builder("jwt.refresh.issued", refreshTokens, RefreshTokenService::getIssuedCount).register(registry);
+            FunctionCounter.builder("jwt.refresh.rotated", refreshTokens, RefreshTokenService::getRotatedCount).register(registry);
+            FunctionCounter.builder("jwt.refresh.reuse", refreshTokens, RefreshTokenService::getReuseDetectedCount).register(registry);
+            FunctionCounter.builder("jwt.revocation.lookups", revocations, TokenRevocationList::getPossiblePositiveCount).register(registry);
+            FunctionCounter.builder("jwt.revocation.confirmed", revocations, TokenRevocationList::getConfirmedCount).register(registry);
+            FunctionCounter.builder("jwt.revocation.rebuilds", revocations, TokenRevocationList::getRebuildCount).register(registry);
+            Gauge.builder("jwt.revocation.filter.size", revocations, TokenRevocationList::getLoadedCount).register(registry);
+        };
+    }
+
+    //Outbox: delivery throughput and failures, plus backlog size and age (read from the table at scrape time)
+    //The delivery lag timer (enqueue to delivery) is recorded by the worker itself
+    @Bean
+    public MeterBinder outboxMetrics(Outbox outbox, OutboxWorker worker) {
+        return registry -> {
+            FunctionCounter.builder("outbox.delivered", worker, OutboxWorker::getDeliveredCount).register(registry);
+            FunctionCounter.builder("outbox.failed-attempts", worker, OutboxWorker::getFailedAttemptCount).register(registry);
+            FunctionCounter.builder("outbox.given-up", worker, OutboxWorker::getGivenUpCount).register(registry);
+            Gauge.builder("outbox.pending", outbox, Outbox::countPending).register(registry);
+            Gauge.builder("outbox.oldest.age", outbox, Outbox::oldestPendingAgeSeconds).baseUnit("seconds").register(registry);
+        };
+    }
+
+    //Database access limit (virtual-thread mode): connections checked out and callers waiting
+    @Bean
+    public MeterBinder databaseAccessLimitMetrics(DataSource dataSource) {
+        return registry -> {
+            ConcurrencyLimitedDataSource limited = unwrapLimited(dataSource);
+            if (limited != null) {
+                Gauge.builder("db.access-limit.active", limited, ConcurrencyLimitedDataSource::getActiveCount).register(registry);
+                Gauge.builder("db.access-limit.waiting", limited, ConcurrencyLimitedDataSource::getWaitingCount).register(registry);
+            }
+        };
+    }
+
+    //The limiter sits under the SQL inspection proxy (the wrappers are ordered); JDBC unwrapping sees through it
+    private static ConcurrencyLimitedDataSource unwrapLimited(DataSource dataSource) {
+        try {
+            return dataSource.isWrapperFor(ConcurrencyLimitedDataSource.class)
+                    ? dataSource.unwrap(ConcurrencyLimitedDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+}
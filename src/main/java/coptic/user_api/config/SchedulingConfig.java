@@ -0,0 +1,14 @@
+package coptic.user_api.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Turns on @Scheduled background jobs (expired reset-token sweeps, outbox delivery, token revocation filter rebuilds,
+ * expired refresh-token purges). They share Spring Boot's task scheduler (spring.task.scheduling.pool.size threads);
+ * each job keeps its runs bounded, and there is a thread per job so a slow mail provider cannot hold up the others.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
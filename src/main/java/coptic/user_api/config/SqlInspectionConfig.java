@@ -0,0 +1,63 @@
+package coptic.user_api.config;
+
+import coptic.user_api.sql.SqlStatementRecorder;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import javax.sql.DataSource;
+
+/**
+ * SQL inspection in place of spring.jpa.show-sql: the DataSource is wrapped in a statement proxy that hands every
+ * execution to the SqlStatementRecorder (timing, bind counts, slow and sampled logging, per-fingerprint totals).
+ */
+@Configuration
+public class SqlInspectionConfig {
+
+    //Applied after the database access limit, so the proxy wraps the limiter and the limiter wraps the pool
+    public static final int SQL_INSPECTION_ORDER = ExecutionModeConfig.DATABASE_ACCESS_LIMIT_ORDER + 1;
+
+    /**
+     * Wraps the DataSource in a datasource-proxy ProxyDataSource when inspection is on
+     * @param enabled Whether statements are inspected
+     * @param recorder Receives every execution (resolved when the DataSource is created)
+     * @return The post-processor
+     */
+    @Bean
+    public static SqlInspectionPostProcessor sqlInspection(@Value("${sql.inspection.enabled:true}") boolean enabled,
+                                                           ObjectProvider<SqlStatementRecorder> recorder) {
+        return new SqlInspectionPostProcessor(enabled, recorder);
+    }
+
+    //Ordered (and declared as such on the bean method) so Spring applies it after the database access limit
+    public static final class SqlInspectionPostProcessor implements BeanPostProcessor, Ordered {
+
+        private final boolean enabled;
+        private final ObjectProvider<SqlStatementRecorder> recorder;
+
+        SqlInspectionPostProcessor(boolean enabled, ObjectProvider<SqlStatementRecorder> recorder) {
+            this.enabled = enabled;
+            this.recorder = recorder;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (enabled && bean instanceof DataSource dataSource && !(bean instanceof ProxyDataSource)) {
+                return ProxyDataSourceBuilder.create(beanName, dataSource)
+                        .listener(recorder.getObject())
+                        .build();
+            }
+            return bean;
+        }
+
+        @Override
+        public int getOrder() {
+            return SQL_INSPECTION_ORDER;
+        }
+    }
+}
@@ -7,18 +7,36 @@ import org.springframework.web.bind.annotation.*;
 //Import HTTP response
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.context.request.WebRequest;
 
 //Import Bookmark model & service
 import coptic.user_api.models.Bookmark;
 import coptic.user_api.models.User;
+import coptic.user_api.services.BookmarkExportFormat;
+import coptic.user_api.services.BookmarkImportService;
 import coptic.user_api.services.BookmarkService;
 import coptic.user_api.services.UserService;
 
+//Authenticated caller (bookmark ownership)
+import coptic.user_api.security.AuthenticatedUser;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+
+//Import page DTO and lean view
+import coptic.user_api.dto.BookmarkPage;
+import coptic.user_api.dto.BookmarkView;
+import coptic.user_api.dto.ImportResult;
+
 //Import for list manipulation
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Collections;
 import java.util.Map;
-import java.util.Optional;
 
 //@RestController marks this as a controller that handles API requests
 //@RequestMapping all routes in this controller start with /bookmarks
@@ -33,10 +51,16 @@ public class BookmarkController {
     //Inject UserService dependency (for foreign key)
     private final UserService userService;
 
-    // Constructor, pass through BookmarkService as "bookmarkService" and UserService as "userService"
-    public BookmarkController(BookmarkService bookmarkService, UserService userService) {
+    //Inject BookmarkImportService dependency (bulk uploads)
+    private final BookmarkImportService bookmarkImportService;
+
+    // Constructor, pass through BookmarkService as "bookmarkService", UserService as "userService"
+    // and BookmarkImportService as "bookmarkImportService"
+    public BookmarkController(BookmarkService bookmarkService, UserService userService,
+                              BookmarkImportService bookmarkImportService) {
         this.bookmarkService = bookmarkService;
         this.userService = userService;
+        this.bookmarkImportService = bookmarkImportService;
     }
 
     /**
@@ -66,77 +90,287 @@ public class BookmarkController {
         return ResponseEntity.status(HttpStatus.CREATED).body("Bookmark added successfully!");
     }
 
+    /**
+     * Add many bookmarks for the caller in one request (one user lookup, one transaction, batched inserts)
+     * @param payload The list of bookmarks to add; an email, if sent, must be the caller's
+     * @param caller The authenticated user who will own the bookmarks
+     * @return ResponseEntity with status message
+     */
+    @PostMapping("/batch")
+    @SuppressWarnings("unchecked")
+    public ResponseEntity<String> addBookmarks(@RequestBody Map<String, Object> payload,
+                                               @AuthenticationPrincipal AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
+        }
+
+        //Older clients still send the owner's email; it can only name the caller
+        Object email = payload.get("email");
+        if (email != null && !caller.getEmail().equals(email)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Forbidden");
+        }
+
+        List<Map<String, Object>> items = (List<Map<String, Object>>) payload.get("bookmarks");
+        if (items == null || items.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("No bookmarks given");
+        }
+
+        User user = userService.findUserByEmail(caller.getEmail());
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("User not found");
+        }
+
+        List<Bookmark> bookmarks = new ArrayList<>(items.size());
+        for (Map<String, Object> item : items) {
+            String name = (String) item.get("name");
+            if (name == null || name.isBlank()) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Every bookmark needs a name");
+            }
+            bookmarks.add(new Bookmark(name, user,
+                    (String) item.get("copticText"),
+                    (String) item.get("transliteration"),
+                    (String) item.get("englishTranslation"),
+                    (String) item.get("arabicTranslation"),
+                    (String) item.get("notes")));
+        }
+
+        try {
+            int saved = bookmarkService.saveBookmarks(bookmarks);
+            return ResponseEntity.status(HttpStatus.CREATED).body(saved + " bookmarks added successfully!");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
 
     /**
      * Get all bookmarks for a specific user
+     * The response carries the user's bookmark version as a strong ETag; a request whose If-None-Match
+     * still matches gets 304 Not Modified after a single version lookup, without loading any bookmarks
      * @param email The email of the user whose bookmarks are fetched
-     * @return ResponseEntity with the list of bookmarks
+     * @param webRequest The current request (for the If-None-Match check)
+     * @return ResponseEntity with the list of bookmarks (lean views; the owning user is never serialized)
      */
      //GetMapping [GET] route
      //@PathVariable extracts a value directly from the URL path (ex: /user/email_here@example.com)
     @GetMapping("/user/{email}")
-    public ResponseEntity<List<Bookmark>> getUserBookmarks(@PathVariable String email) {
-        //Find user by email
-        User user = userService.findUserByEmail(email);
+    public ResponseEntity<List<BookmarkView>> getUserBookmarks(@PathVariable String email, WebRequest webRequest) {
+        //Read the version before the list: a change in between only makes the next poll refetch, never miss it
+        Long version = bookmarkService.getBookmarkVersion(email);
 
         //If no user, return empty list
-        if (user == null) {
+        if (version == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.emptyList());
         }
 
+        //Client already has this version: 304 with no body (status and ETag are set by checkNotModified)
+        String etag = "\"" + version + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+
         //Otherwise get list of bookmarks associated to user and return it as a response
-        List<Bookmark> bookmarks = bookmarkService.getBookmarksByUser(user);
-        return ResponseEntity.ok(bookmarks);
+        User user = userService.findUserByEmail(email);
+        if (user == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.emptyList());
+        }
+        List<BookmarkView> bookmarks = bookmarkService.getBookmarkViewsByUser(user.getId());
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(CacheControl.noCache()) // Always revalidate; revalidation is cheap
+                .body(bookmarks);
+    }
+
+    /**
+     * Get one page of the caller's bookmarks (keyset pagination)
+     * @param email The caller's email; any other user's email is refused
+     * @param limit Page size (capped server-side)
+     * @param after Cursor returned with the previous page; omit for the first page
+     * @param includeTotal Also return the total number of bookmarks
+     * @param caller The authenticated user whose bookmarks are fetched
+     * @return ResponseEntity with the page
+     */
+    @GetMapping("/user/{email}/page")
+    public ResponseEntity<?> getUserBookmarkPage(@PathVariable String email,
+                                                 @RequestParam(defaultValue = "50") int limit,
+                                                 @RequestParam(required = false) String after,
+                                                 @RequestParam(defaultValue = "false") boolean includeTotal,
+                                                 @AuthenticationPrincipal AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
+        }
+
+        //The email in the path only names the owner; it must be the caller
+        if (!caller.getEmail().equals(email)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Forbidden");
+        }
+
+        try {
+            BookmarkPage page = bookmarkService.getBookmarkPage(caller.getId(), after, limit, includeTotal);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid cursor");
+        }
     }
 
     /**
-     * Rename or update the content of an existing bookmark
+     * Export all of the caller's bookmarks as a download, streamed while it is read from the database
+     * @param format ndjson (one JSON object per line) or csv
+     * @param caller The authenticated user whose bookmarks are exported
+     * @return ResponseEntity streaming the export
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportBookmarks(@RequestParam(defaultValue = "ndjson") String format,
+                                                                 @AuthenticationPrincipal AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(text("Unauthorized"));
+        }
+
+        BookmarkExportFormat exportFormat = BookmarkExportFormat.fromParam(format);
+        if (exportFormat == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(text("Unsupported format"));
+        }
+
+        //Runs after the handler returns, on an async thread, writing rows as they arrive
+        StreamingResponseBody body = out -> bookmarkService.exportBookmarks(caller.getId(), exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(exportFormat.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"bookmarks." + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+
+    /**
+     * Import bookmarks for the caller from an NDJSON or CSV upload of any size (request body, UTF-8)
+     * Records are parsed as they arrive and committed in chunks; invalid records are skipped and reported
+     * @param format ndjson (one JSON object per line) or csv (header row; the export's own format is accepted)
+     * @param body The uploaded data
+     * @param caller The authenticated user who will own the bookmarks
+     * @return ResponseEntity with the accepted and rejected counts
+     * @throws IOException If the upload cannot be read
+     */
+    @PostMapping("/import")
+    public ResponseEntity<?> importBookmarks(@RequestParam(defaultValue = "ndjson") String format,
+                                             InputStream body,
+                                             @AuthenticationPrincipal AuthenticatedUser caller) throws IOException {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
+        }
+
+        BookmarkExportFormat importFormat = BookmarkExportFormat.fromParam(format);
+        if (importFormat == null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Unsupported format");
+        }
+
+        try {
+            ImportResult result = bookmarkImportService.importBookmarks(caller.getId(), importFormat, body);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    //Plain-text body for error responses of streaming endpoints
+    private static StreamingResponseBody text(String message) {
+        return out -> out.write(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Search the caller's bookmarks (name, Coptic text, transliteration, translations, notes)
+     * Coptic overlines and Arabic diacritics are ignored; results are ranked best first
+     * @param q The search words; all must match
+     * @param limit Page size (capped server-side)
+     * @param after Cursor returned with the previous page; omit for the first page
+     * @param caller The authenticated user whose bookmarks are searched
+     * @return ResponseEntity with the page of results
+     */
+    @GetMapping("/search")
+    public ResponseEntity<?> searchBookmarks(@RequestParam String q,
+                                             @RequestParam(defaultValue = "20") int limit,
+                                             @RequestParam(required = false) String after,
+                                             @AuthenticationPrincipal AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
+        }
+
+        try {
+            BookmarkPage page = bookmarkService.searchBookmarks(caller.getId(), q, after, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
+    }
+
+    /**
+     * Rename or update the content of an existing bookmark owned by the caller
      * @param id The ID of the bookmark to update
      * @param payload The new bookmark fields (name, text, translations, notes)
+     * @param caller The authenticated user, who must own the bookmark
      * @return ResponseEntity with status message
      */
     @PutMapping("/rename/{id}")
-    public ResponseEntity<String> renameBookmark(@PathVariable int id, @RequestBody Map<String, Object> payload) {
-        Optional<Bookmark> optionalBookmark = bookmarkService.getBookmarkById(id);
-        if (optionalBookmark.isEmpty()) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bookmark not found");
+    public ResponseEntity<String> renameBookmark(@PathVariable int id, @RequestBody Map<String, Object> payload,
+                                                 @AuthenticationPrincipal AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
         }
 
-        Bookmark bookmark = optionalBookmark.get();
-
         String newName = (String) payload.get("name");
-        String copticText = (String) payload.get("copticText");
-        String transliteration = (String) payload.get("transliteration");
-        String englishTranslation = (String) payload.get("englishTranslation");
-        String arabicTranslation = (String) payload.get("arabicTranslation");
-        String notes = (String) payload.get("notes");
+        if (newName == null || newName.isBlank()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Name cannot be empty");
+        }
 
-        bookmark.setName(newName);
-        bookmark.setCopticText(copticText);
-        bookmark.setTransliteration(transliteration);
-        bookmark.setEnglishTranslation(englishTranslation);
-        bookmark.setArabicTranslation(arabicTranslation);
-        bookmark.setNotes(notes);
+        Bookmark content = new Bookmark(newName, null,
+                (String) payload.get("copticText"),
+                (String) payload.get("transliteration"),
+                (String) payload.get("englishTranslation"),
+                (String) payload.get("arabicTranslation"),
+                (String) payload.get("notes"));
 
-        //Use updateBookmark
-        bookmarkService.updateBookmark(bookmark);
+        //Single UPDATE scoped to the caller; someone else's bookmark looks the same as a missing one
+        if (!bookmarkService.updateBookmark(id, caller.getId(), content)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bookmark not found");
+        }
+        return ResponseEntity.ok("Bookmark updated successfully");
+    }
 
+    /**
+     * Update only the fields that were sent on a bookmark owned by the caller
+     * @param id The ID of the bookmark to update
+     * @param payload Any of name, copticText, transliteration, englishTranslation, arabicTranslation, notes
+     * @param caller The authenticated user, who must own the bookmark
+     * @return ResponseEntity with status message
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<String> patchBookmark(@PathVariable int id, @RequestBody Map<String, Object> payload,
+                                                @AuthenticationPrincipal AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
+        }
+
+        try {
+            if (!bookmarkService.patchBookmark(id, caller.getId(), payload)) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bookmark not found");
+            }
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
         return ResponseEntity.ok("Bookmark updated successfully");
     }
 
     /**
-     * Delete a bookmark by its ID
+     * Delete a bookmark owned by the caller
      * @param id The ID of the bookmark to delete
+     * @param caller The authenticated user, who must own the bookmark
      * @return ResponseEntity with status message
      */
     @DeleteMapping("/delete/{id}")
-    public ResponseEntity<String> deleteBookmark(@PathVariable int id) {
-        Optional<Bookmark> optional = bookmarkService.getBookmarkById(id);
-        if (optional.isEmpty()) return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bookmark not found");
+    public ResponseEntity<String> deleteBookmark(@PathVariable int id, @AuthenticationPrincipal AuthenticatedUser caller) {
+        if (caller == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Unauthorized");
+        }
 
-        bookmarkService.deleteBookmarkById(id);
+        if (!bookmarkService.deleteBookmark(id, caller.getId())) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Bookmark not found");
+        }
         return ResponseEntity.ok("Bookmark deleted");
     }
-
-
 }
@@ -7,25 +7,28 @@ import org.springframework.web.bind.annotation.*;
 //Import HTTP response
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpHeaders;
 
 //Import User model & service
 import coptic.user_api.models.User;
 import coptic.user_api.services.UserService;
 import coptic.user_api.services.PasswordResetService;
+import coptic.user_api.services.PasswordHashingBusyException;
+import coptic.user_api.services.RefreshTokenService;
 
-//Import JWT class
-import coptic.user_api.security.JWT;
+//Import token pair DTO
+import coptic.user_api.dto.AuthTokens;
 
-import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 //@RestController marks this as a controller that handles API requests
 //@RequestMapping all routes in this controller start with /users
 @RestController
 @RequestMapping("/users")
 public class UserController {
-    //JWT
-    private final JWT jwt;
+    //Issues and rotates access/refresh token pairs
+    private final RefreshTokenService refreshTokenService;
 
     //Inject UserService dependency
     private final UserService userService;
@@ -34,71 +37,108 @@ public class UserController {
     private final PasswordResetService passwordResetService;
 
     //Constructor, pass through UserService as "userService"
-    //Pass through the JWT for authentication
-    public UserController(UserService userService, JWT jwt, PasswordResetService passwordResetService){
+    //Pass through the RefreshTokenService for authentication tokens
+    public UserController(UserService userService, RefreshTokenService refreshTokenService, PasswordResetService passwordResetService){
         this.userService = userService;
-        this.jwt = jwt;
+        this.refreshTokenService = refreshTokenService;
         this.passwordResetService = passwordResetService;
     }
 
     /**
      * User sign-up (creates a new user)
+     * The password is hashed on the hashing pool; the request thread is released in the meantime
      * @param user The user object received from the request
-     * @return ResponseEntity with status message
+     * @return Future ResponseEntity with status message
      */
     //@PostMapping [POST] route
     @PostMapping("/sign_up")
-    public ResponseEntity<?> signUp(@RequestBody User user) {
+    public CompletableFuture<ResponseEntity<?>> signUp(@RequestBody User user) {
 
         //Check if user's email exists
         boolean exists = userService.emailExists(user.getEmail());
 
         //If it does, raise conflict that the email already exist
         if (exists) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body("Email already exists!");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT).body("Email already exists!"));
         }
 
         //Otherwise, create the user
-        User createdUser = userService.createUser(user);
+        return userService.createUserAsync(user).thenApply(createdUser -> {
+            //For auto-login after sign-up, issue an access token and a refresh token
+            AuthTokens tokens = refreshTokenService.issue(createdUser);
 
-        //For auto-login after sign-up, generate JWT token
-        String token = jwt.generateToken(createdUser.getEmail());
-
-        //Return response with JWT
-        return ResponseEntity.status(HttpStatus.CREATED).body(Collections.singletonMap("token", token));
+            //Return response with the tokens
+            return ResponseEntity.status(HttpStatus.CREATED).body(tokens);
+        });
     }
 
     /**
      * User login (check if user exists)
+     * The password check runs on the hashing pool; the request thread is released in the meantime
      * @param user The user object with email & password
-     * @return ResponseEntity with status message
+     * @return Future ResponseEntity with status message
      */
     //@PostMapping [POST] route
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody User user){
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody User user){
 
         //Find user by email
         User foundUser = userService.findUserByEmail(user.getEmail());
 
-        //If no user found or password does not match, return unauthorized response
-        if (foundUser == null || !userService.checkPassword(user.getPassword(), foundUser.getPassword())) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid credentials!");
+        //If no user found, return unauthorized response
+        if (foundUser == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid credentials!"));
         }
 
-        //Generate JWT token
-        String token = jwt.generateToken(user.getEmail());
+        return userService.checkPasswordAsync(foundUser, user.getPassword()).thenApply(matches -> {
+            //If password does not match, return unauthorized response
+            if (!matches) {
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid credentials!");
+            }
+
+            //Issue an access token and a refresh token
+            AuthTokens tokens = refreshTokenService.issue(foundUser);
+
+            //Otherwise return successful response with the tokens
+            return ResponseEntity.ok().body(tokens);
+        });
+    }
+
+    /**
+     * Exchange a refresh token for a new access token and refresh token (the old refresh token stops working)
+     * @param payload Contains refreshToken
+     * @return ResponseEntity with the new tokens, or 401
+     */
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody Map<String, String> payload) {
+        AuthTokens tokens = refreshTokenService.refresh(payload.get("refreshToken"));
+
+        if (tokens == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid or expired refresh token");
+        }
 
-        //Otherwise return successful response with token
-        return ResponseEntity.ok().body(Collections.singletonMap("token", token));
+        return ResponseEntity.ok(tokens);
+    }
+
+    /**
+     * Log out: revokes the refresh token and the access tokens issued with it
+     * @param payload Contains refreshToken
+     * @return ResponseEntity with status message (the same whether or not the token was known)
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestBody Map<String, String> payload) {
+        refreshTokenService.logout(payload.get("refreshToken"));
+
+        return ResponseEntity.ok("Logged out");
     }
 
     /**
      * Change password for a logged-in user
      * @param payload Contains email, oldPassword, newPassword
-     * @return ResponseEntity with status message
+     * @return Future ResponseEntity with status message
      */
     @PutMapping("/change_password")
-    public ResponseEntity<?> changePassword(@RequestBody Map<String, String> payload) {
+    public CompletableFuture<ResponseEntity<?>> changePassword(@RequestBody Map<String, String> payload) {
         String email = payload.get("email");
         String oldPassword = payload.get("oldPassword");
         String newPassword = payload.get("newPassword");
@@ -106,56 +146,64 @@ public class UserController {
         //Check if user exists
         User user = userService.findUserByEmail(email);
         if (user == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
-        }
-
-        //Verify current password
-        if (!userService.checkPassword(oldPassword, user.getPassword())) {
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Incorrect old password");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found"));
         }
 
-        //Update password
-        user.setPassword(userService.encodePassword(newPassword));
-        userService.createUser(user); // Save updated user
-
-        return ResponseEntity.ok("Password changed successfully");
+        //Verify current password, then update it (also revokes tokens issued before the change)
+        return userService.checkPasswordAsync(oldPassword, user.getPassword()).thenCompose(matches -> {
+            if (!matches) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Incorrect old password"));
+            }
+            return userService.updatePasswordAsync(user, newPassword)
+                    .thenApply(updated -> updated
+                            ? ResponseEntity.ok("Password changed successfully")
+                            : ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found"));
+        });
     }
 
     /**
-     * Request a password reset link
+     * Request a password reset link (sent by email)
+     * The answer is the same whether or not the email is registered, so it can not be used to find accounts
      * @param payload Contains the email of the user
-     * @return The generated reset link (for now)
+     * @return ResponseEntity 202 with a generic message
      */
     @PostMapping("/request_reset")
     public ResponseEntity<?> requestReset(@RequestBody Map<String, String> payload) {
         String email = payload.get("email");
 
-        String link = passwordResetService.generateResetToken(email);
+        passwordResetService.generateResetToken(email);
 
-        if (link == null) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body("User not found");
-        }
-
-        //Placeholder
-        return ResponseEntity.ok(Collections.singletonMap("reset_link", link));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body("If this email is registered, a reset link has been sent");
     }
 
     /**
      * Handle reset using a token and new password
      * @param payload Contains token and newPassword
-     * @return success or failure
+     * @return Future success or failure
      */
     @PostMapping("/reset_password")
-    public ResponseEntity<?> resetPassword(@RequestBody Map<String, String> payload) {
+    public CompletableFuture<ResponseEntity<?>> resetPassword(@RequestBody Map<String, String> payload) {
         String token = payload.get("token");
         String newPassword = payload.get("newPassword");
 
-        boolean success = passwordResetService.resetPassword(token, newPassword);
+        return passwordResetService.resetPassword(token, newPassword).thenApply(success -> {
+            if (!success) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid or expired token");
+            }
 
-        if (!success) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid or expired token");
-        }
+            return ResponseEntity.ok("Password has been reset successfully");
+        });
+    }
 
-        return ResponseEntity.ok("Password has been reset successfully");
+    /**
+     * Hashing pool is saturated: refuse right away instead of queueing the request
+     * @param e The exception raised when the hashing queue is full
+     * @return 503 with a short Retry-After
+     */
+    @ExceptionHandler(PasswordHashingBusyException.class)
+    public ResponseEntity<String> hashingBusy(PasswordHashingBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body("Server busy, please try again");
     }
 }
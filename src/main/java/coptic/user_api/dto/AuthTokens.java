@@ -0,0 +1,26 @@
+//Package where this class belongs
+package coptic.user_api.dto;
+
+//Tokens returned by sign-up, login and refresh
+public class AuthTokens {
+
+    //Short-lived access token (JWT), sent as "Authorization: Bearer ..."
+    private final String token;
+
+    //Single-use refresh token, exchanged at /users/refresh for a new pair
+    private final String refreshToken;
+
+    /**
+     * Constructor to create a token pair
+     * @param token The access token
+     * @param refreshToken The refresh token
+     */
+    public AuthTokens(String token, String refreshToken) {
+        this.token = token;
+        this.refreshToken = refreshToken;
+    }
+
+    //GETTERS
+    public String getToken() { return token; }
+    public String getRefreshToken() { return refreshToken; }
+}
@@ -0,0 +1,34 @@
+//Package where this class belongs
+package coptic.user_api.dto;
+
+import java.util.List;
+
+//One page of a user's bookmarks, plus the cursor to fetch the next page
+public class BookmarkPage {
+
+    //Bookmarks on this page, in ascending ID order (best match first for search results)
+    private final List<BookmarkView> items;
+
+    //Opaque cursor for the next page; null on the last page
+    private final String nextCursor;
+
+    //Total number of bookmarks the user owns; null unless requested
+    private final Long total;
+
+    /**
+     * Constructor to create a page
+     * @param items Bookmarks on this page
+     * @param nextCursor Cursor for the next page, or null
+     * @param total Total bookmark count, or null
+     */
+    public BookmarkPage(List<BookmarkView> items, String nextCursor, Long total) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+    //GETTERS
+    public List<BookmarkView> getItems() { return items; }
+    public String getNextCursor() { return nextCursor; }
+    public Long getTotal() { return total; }
+}
@@ -0,0 +1,45 @@
+//Package where this class belongs
+package coptic.user_api.dto;
+
+//Read-only view of a bookmark: just the bookmark's own columns, no User
+//Built directly by JPQL constructor expressions, so it is never a managed entity
+public class BookmarkView {
+
+    private final int id;
+    private final String name;
+    private final String copticText;
+    private final String transliteration;
+    private final String englishTranslation;
+    private final String arabicTranslation;
+    private final String notes;
+
+    /**
+     * Constructor used by repository queries
+     * @param id Bookmark ID
+     * @param name Translation's name/title
+     * @param copticText Coptic text
+     * @param transliteration Transliteration of the Coptic text
+     * @param englishTranslation English translation of the Coptic text
+     * @param arabicTranslation Arabic translation of the Coptic text
+     * @param notes Notes added to the bookmark
+     */
+    public BookmarkView(int id, String name, String copticText, String transliteration,
+                        String englishTranslation, String arabicTranslation, String notes) {
+        this.id = id;
+        this.name = name;
+        this.copticText = copticText;
+        this.transliteration = transliteration;
+        this.englishTranslation = englishTranslation;
+        this.arabicTranslation = arabicTranslation;
+        this.notes = notes;
+    }
+
+    //GETTERS
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public String getCopticText() { return copticText; }
+    public String getTransliteration() { return transliteration; }
+    public String getEnglishTranslation() { return englishTranslation; }
+    public String getArabicTranslation() { return arabicTranslation; }
+    public String getNotes() { return notes; }
+}
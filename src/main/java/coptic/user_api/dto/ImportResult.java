@@ -0,0 +1,34 @@
+//Package where this class belongs
+package coptic.user_api.dto;
+
+import java.util.List;
+
+//Outcome of a bulk bookmark import
+public class ImportResult {
+
+    //Records written to the database
+    private final long accepted;
+
+    //Records skipped because they were malformed, invalid, or their chunk failed to commit
+    private final long rejected;
+
+    //Why records were rejected (first few only), e.g. "record 12: name is required"
+    private final List<String> errors;
+
+    /**
+     * Constructor to create a result
+     * @param accepted Number of records imported
+     * @param rejected Number of records rejected
+     * @param errors Reasons for the first rejections
+     */
+    public ImportResult(long accepted, long rejected, List<String> errors) {
+        this.accepted = accepted;
+        this.rejected = rejected;
+        this.errors = errors;
+    }
+
+    //GETTERS
+    public long getAccepted() { return accepted; }
+    public long getRejected() { return rejected; }
+    public List<String> getErrors() { return errors; }
+}
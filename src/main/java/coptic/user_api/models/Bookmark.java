@@ -4,15 +4,21 @@ package coptic.user_api.models;
 //JPA annotations for database mapping (@Entity, @Table, @Id, @Column, etc.)
 import jakarta.persistence.*;
 
+//Keep the owning user out of JSON
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 //Entire Class marked as a database entity (table)
 //Table name
 @Entity
 @Table(name = "bookmarks")
 public class Bookmark{
     //Id = Primary Key
-    //GeneratedValue = primary key generated automatically by the database; auto-increment ID
+    //GeneratedValue = primary key drawn from a database sequence
+    //Pooled: one sequence call reserves allocationSize IDs, so inserts can be sent to the database in JDBC batches
+    //(IDENTITY needs a round trip per row to learn its ID, which disables batching)
     @Id
-    @GeneratedValue(strategy=GenerationType.IDENTITY)
+    @GeneratedValue(strategy=GenerationType.SEQUENCE, generator = "bookmarks_seq")
+    @SequenceGenerator(name = "bookmarks_seq", sequenceName = "bookmarks_seq", allocationSize = 50)
     private int id;
 
     //Name
@@ -22,7 +28,9 @@ public class Bookmark{
     //UserID
     //Foreign key
     //it's an instantiation of the User entity
-    @ManyToOne
+    //Lazy: reading a bookmark never loads its user unless asked; never serialized (it holds the password hash)
+    @JsonIgnore
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false)
     private User user;
 
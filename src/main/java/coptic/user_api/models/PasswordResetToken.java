@@ -13,9 +13,9 @@ public class PasswordResetToken {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private int id;
 
-    //Unique token string (used in reset URL)
-    @Column(nullable = false, unique = true)
-    private String token;
+    //SHA-256 digest of the token sent in the reset URL (TokenDigest.sha256Bytes); the raw token is never stored
+    @Column(name = "token_hash", nullable = false, unique = true, length = 32)
+    private byte[] tokenHash;
 
     //User associated with the token (1:1 relationship)
     //Foreign key to users table
@@ -27,22 +27,25 @@ public class PasswordResetToken {
     @Column(nullable = false)
     private LocalDateTime expiration;
 
+    //Default Constructor required by JPA
+    protected PasswordResetToken() {}
+
     /**
      * Constructor to create a new PasswordResetToken object with provided values
-     * @param token Unique reset token string
+     * @param tokenHash Digest of the reset token
      * @param user User associated with the token
      * @param expiration Expiration date and time of the token
      */
-    public PasswordResetToken(String token, User user, LocalDateTime expiration) {
-        this.token = token;
+    public PasswordResetToken(byte[] tokenHash, User user, LocalDateTime expiration) {
+        this.tokenHash = tokenHash;
         this.user = user;
         this.expiration = expiration;
     }
 
     //GETTERS & SETTERS
     public int getId() { return id; }
-    public String getToken() { return token; }
-    public void setToken(String token) { this.token = token; }
+    public byte[] getTokenHash() { return tokenHash; }
+    public void setTokenHash(byte[] tokenHash) { this.tokenHash = tokenHash; }
 
     public User getUser() { return user; }
     public void setUser(User user) { this.user = user; }
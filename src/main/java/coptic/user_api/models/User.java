@@ -4,6 +4,8 @@ package coptic.user_api.models;
 //JPA annotations for database mapping (@Entity, @Table, @Id, @Column, etc.)
 import jakarta.persistence.*;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.ColumnDefault;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import java.util.Collection;
@@ -28,6 +30,19 @@ public class User implements UserDetails {
     @Column(name = "password", nullable = false)
     private String password;
 
+    //Token version; embedded in every JWT and bumped on password change/reset so older tokens stop working
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
+    //Bookmark version; bumped in the same transaction as every bookmark insert, update or delete, and served as the ETag
+    //of the user's bookmark list. Only ever written by UserRepository.bumpBookmarkVersion, never by saving the entity
+    @JsonIgnore
+    @ColumnDefault("0")
+    @Column(name = "bookmark_version", nullable = false, insertable = false, updatable = false)
+    private long bookmarkVersion;
+
     //Default Constructor required by JPA
     //Used when retrieving data
     public User() {}
@@ -55,6 +70,13 @@ public class User implements UserDetails {
     public String getPassword() { return password; }
     public void setPassword(String password) { this.password = password; }
 
+    //Token version
+    public int getTokenVersion() { return tokenVersion; }
+    public void setTokenVersion(int tokenVersion) { this.tokenVersion = tokenVersion; }
+
+    //Bookmark version (read-only)
+    public long getBookmarkVersion() { return bookmarkVersion; }
+
         @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return Collections.emptyList(); // No roles for now
@@ -0,0 +1,19 @@
+package coptic.user_api.outbox;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+//Local stand-in until a real mail provider is wired in: logs each delivery without its payload (reset links are secrets)
+@Component
+@ConditionalOnProperty(name = "outbox.sender", havingValue = "log", matchIfMissing = true)
+public class LoggingOutboxSender implements OutboxSender {
+
+    private static final Logger log = LoggerFactory.getLogger(LoggingOutboxSender.class);
+
+    @Override
+    public void send(OutboxMessage message) {
+        log.info("Delivered outbox message {} ({}) to {}", message.getId(), message.getKind(), message.getRecipient());
+    }
+}
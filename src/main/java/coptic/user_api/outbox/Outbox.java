@@ -0,0 +1,118 @@
+package coptic.user_api.outbox;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The outbox table (V7), over plain JDBC so that enqueueing joins whatever transaction the caller has open: a message
+ * is committed together with the change that caused it, or not at all.
+ * Workers claim due rows with a lease (UPDATE ... FOR UPDATE SKIP LOCKED ... RETURNING), in a statement of their own,
+ * so no lock is held while a message is being delivered and several workers never claim the same row. A row whose
+ * worker dies mid-delivery becomes due again when its lease runs out.
+ */
+@Component
+public class Outbox {
+
+    private static final String CLAIM_SQL =
+            "UPDATE outbox SET attempts = attempts + 1, next_attempt_at = now() + ? * interval '1 millisecond' "
+            + "WHERE id IN (SELECT id FROM outbox WHERE failed_at IS NULL AND next_attempt_at <= now() "
+            + "ORDER BY next_attempt_at LIMIT ? FOR UPDATE SKIP LOCKED) "
+            + "RETURNING id, kind, recipient, payload, created_at, attempts";
+
+    private static final RowMapper<OutboxMessage> MESSAGE = (rs, rowNum) -> new OutboxMessage(
+            rs.getLong("id"), rs.getString("kind"), rs.getString("recipient"), rs.getString("payload"),
+            rs.getTimestamp("created_at").toInstant(), rs.getInt("attempts"));
+
+    //Longest error message kept on a row (the column's width)
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public Outbox(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Writes a message, in the caller's transaction if there is one
+     * @param kind Message kind (OutboxMessage constants)
+     * @param recipient Email address
+     * @param payload Kind-specific content
+     */
+    public void enqueue(String kind, String recipient, String payload) {
+        jdbcTemplate.update("INSERT INTO outbox (kind, recipient, payload) VALUES (?, ?, ?)", kind, recipient, payload);
+    }
+
+    /**
+     * Claims due messages, oldest due first, and counts the attempt
+     * @param limit Most messages claimed
+     * @param leaseMillis How long the claim lasts before the messages are due again
+     * @return The claimed messages
+     */
+    public List<OutboxMessage> claim(int limit, long leaseMillis) {
+        return jdbcTemplate.query(CLAIM_SQL, MESSAGE, leaseMillis, limit);
+    }
+
+    /**
+     * Deletes delivered messages, in one statement
+     * @param ids Their IDs
+     */
+    public void delete(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.update(connection -> {
+            Array array = connection.createArrayOf("bigint", ids.toArray());
+            PreparedStatement statement = connection.prepareStatement("DELETE FROM outbox WHERE id = ANY(?)");
+            statement.setArray(1, array);
+            return statement;
+        });
+    }
+
+    /**
+     * Schedules another attempt after a failed delivery
+     * @param id The message's ID
+     * @param delayMillis Wait before the next attempt
+     * @param error Why delivery failed
+     */
+    public void retryLater(long id, long delayMillis, String error) {
+        jdbcTemplate.update("UPDATE outbox SET next_attempt_at = now() + ? * interval '1 millisecond', last_error = ? WHERE id = ?",
+                delayMillis, truncate(error), id);
+    }
+
+    /**
+     * Gives up on a message; it stays in the table, out of the workers' way, for inspection
+     * Its payload is cleared, since it may hold a secret (a reset token) that nothing will deliver any more
+     * @param id The message's ID
+     * @param error Why the last delivery failed
+     */
+    public void markFailed(long id, String error) {
+        jdbcTemplate.update("UPDATE outbox SET failed_at = now(), last_error = ?, payload = NULL WHERE id = ?",
+                truncate(error), id);
+    }
+
+    //Messages not yet delivered (failed ones excluded)
+    public long countPending() {
+        Long count = jdbcTemplate.queryForObject("SELECT count(*) FROM outbox WHERE failed_at IS NULL", Long.class);
+        return count != null ? count : 0;
+    }
+
+    //Age in seconds of the oldest message not yet delivered, 0 when there is none
+    public double oldestPendingAgeSeconds() {
+        Double age = jdbcTemplate.queryForObject(
+                "SELECT EXTRACT(EPOCH FROM now() - min(created_at)) FROM outbox WHERE failed_at IS NULL", Double.class);
+        return age != null ? age : 0;
+    }
+
+    private static String truncate(String error) {
+        if (error == null) {
+            return null;
+        }
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
@@ -0,0 +1,47 @@
+package coptic.user_api.outbox;
+
+import java.time.Instant;
+
+//One claimed outbox row, as handed to the OutboxSender
+public class OutboxMessage {
+
+    //Kind of the password reset email; its payload is the raw reset token, which the sender turns into the link
+    public static final String PASSWORD_RESET_EMAIL = "password-reset-email";
+
+    private final long id;
+
+    //What to send (decides how the payload is rendered), and to whom
+    private final String kind;
+    private final String recipient;
+    private final String payload;
+
+    //When the message was written, and how many deliveries have been started, this one included
+    private final Instant createdAt;
+    private final int attempts;
+
+    /**
+     * Constructor to create a message
+     * @param id Row ID
+     * @param kind Message kind
+     * @param recipient Email address
+     * @param payload Kind-specific content
+     * @param createdAt When it was enqueued
+     * @param attempts Delivery attempts so far, this one included
+     */
+    public OutboxMessage(long id, String kind, String recipient, String payload, Instant createdAt, int attempts) {
+        this.id = id;
+        this.kind = kind;
+        this.recipient = recipient;
+        this.payload = payload;
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+    }
+
+    //GETTERS
+    public long getId() { return id; }
+    public String getKind() { return kind; }
+    public String getRecipient() { return recipient; }
+    public String getPayload() { return payload; }
+    public Instant getCreatedAt() { return createdAt; }
+    public int getAttempts() { return attempts; }
+}
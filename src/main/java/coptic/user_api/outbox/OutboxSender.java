@@ -0,0 +1,15 @@
+package coptic.user_api.outbox;
+
+/**
+ * Delivers outbox messages (mail provider, SMTP...). Selected with outbox.sender; "log" is the local stand-in.
+ * Delivery is at least once: a message may be sent again if the node dies between sending and recording it.
+ */
+public interface OutboxSender {
+
+    /**
+     * Delivers one message
+     * @param message The message
+     * @throws Exception If delivery failed; the message is retried later with backoff
+     */
+    void send(OutboxMessage message) throws Exception;
+}
@@ -0,0 +1,155 @@
+package coptic.user_api.outbox;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Delivers outbox messages in the background, so requests never wait on the mail provider.
+ * Each poll claims batches of due messages until a batch comes back short (or the per-poll budget is spent), hands
+ * them to the OutboxSender one by one and deletes the delivered ones in one statement per batch. A failed delivery is
+ * retried after an exponentially growing delay; after max-attempts the message is marked failed and left alone.
+ */
+@Component
+public class OutboxWorker {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxWorker.class);
+
+    private final Outbox outbox;
+    private final OutboxSender sender;
+
+    private final boolean enabled;
+
+    //Messages per claim, and most claims per poll
+    private final int batchSize;
+    private final int maxBatchesPerPoll;
+
+    //A claim must outlast the delivery of a whole batch, or another worker may deliver the same messages again
+    private final long leaseMillis;
+
+    //Retry delay: initial, doubled after every failure, capped; and attempts before giving up
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final int maxAttempts;
+
+    //Time from enqueue to delivery
+    private final Timer deliveryLag;
+
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder failedAttempts = new LongAdder();
+    private final LongAdder givenUp = new LongAdder();
+
+    /**
+     * Creates the worker
+     * @param outbox The outbox table
+     * @param sender Delivers messages
+     * @param meterRegistry Where the delivery lag is recorded
+     * @param enabled Whether polls do anything
+     * @param batchSize Messages per claim
+     * @param maxBatchesPerPoll Most claims per poll
+     * @param leaseMillis How long claimed messages stay reserved for this worker
+     * @param initialBackoffMillis Delay before the first retry
+     * @param maxBackoffMillis Longest delay between retries
+     * @param maxAttempts Deliveries tried before a message is marked failed
+     */
+    public OutboxWorker(Outbox outbox, OutboxSender sender, MeterRegistry meterRegistry,
+                        @Value("${outbox.worker.enabled:true}") boolean enabled,
+                        @Value("${outbox.worker.batch-size:50}") int batchSize,
+                        @Value("${outbox.worker.max-batches-per-poll:20}") int maxBatchesPerPoll,
+                        @Value("${outbox.worker.lease-millis:60000}") long leaseMillis,
+                        @Value("${outbox.retry.initial-backoff-millis:1000}") long initialBackoffMillis,
+                        @Value("${outbox.retry.max-backoff-millis:600000}") long maxBackoffMillis,
+                        @Value("${outbox.retry.max-attempts:10}") int maxAttempts) {
+        if (batchSize < 1 || maxBatchesPerPoll < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("Outbox batch size, batches per poll and attempts must be positive");
+        }
+        this.outbox = outbox;
+        this.sender = sender;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxBatchesPerPoll = maxBatchesPerPoll;
+        this.leaseMillis = leaseMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.maxAttempts = maxAttempts;
+        this.deliveryLag = Timer.builder("outbox.delivery.lag")
+                .description("Time from enqueue to delivery of outbox messages")
+                .register(meterRegistry);
+    }
+
+    //Scheduled poll
+    @Scheduled(initialDelayString = "${outbox.worker.initial-delay-millis:5000}",
+               fixedDelayString = "${outbox.worker.poll-millis:500}")
+    public void poll() {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < maxBatchesPerPoll; i++) {
+            if (deliverBatch() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Claims and delivers one batch
+     * @return Number of messages claimed
+     */
+    public int deliverBatch() {
+        List<OutboxMessage> batch = outbox.claim(batchSize, leaseMillis);
+        List<Long> done = new ArrayList<>(batch.size());
+        try {
+            for (OutboxMessage message : batch) {
+                try {
+                    sender.send(message);
+                    done.add(message.getId());
+                    deliveryLag.record(Duration.between(message.getCreatedAt(), Instant.now()));
+                } catch (Exception e) {
+                    failed(message, e);
+                }
+            }
+        } finally {
+            //Record what went out even if a bookkeeping update failed halfway through the batch
+            outbox.delete(done);
+            delivered.add(done.size());
+        }
+        return batch.size();
+    }
+
+    private void failed(OutboxMessage message, Exception e) {
+        failedAttempts.increment();
+        String error = e.getClass().getSimpleName() + ": " + e.getMessage();
+        if (message.getAttempts() >= maxAttempts) {
+            givenUp.increment();
+            log.error("Giving up on outbox message {} ({}) after {} attempts: {}",
+                    message.getId(), message.getKind(), message.getAttempts(), error);
+            outbox.markFailed(message.getId(), error);
+        } else {
+            long delay = backoffMillis(message.getAttempts());
+            log.warn("Outbox message {} ({}) failed on attempt {}, retrying in {} ms: {}",
+                    message.getId(), message.getKind(), message.getAttempts(), delay, error);
+            outbox.retryLater(message.getId(), delay, error);
+        }
+    }
+
+    //Delay after the given number of failed attempts: initial, 2x, 4x... up to the cap
+    long backoffMillis(int attempts) {
+        int doublings = Math.min(Math.max(attempts - 1, 0), 30);
+        return Math.min(maxBackoffMillis, initialBackoffMillis << doublings);
+    }
+
+    //STATISTICS (since startup)
+    public long getDeliveredCount() { return delivered.sum(); }
+    public long getFailedAttemptCount() { return failedAttempts.sum(); }
+    public long getGivenUpCount() { return givenUp.sum(); }
+}
@@ -5,17 +5,29 @@ package coptic.user_api.repositories;
 import coptic.user_api.models.Bookmark;
 import coptic.user_api.models.User;
 
+// Import lean read projection
+import coptic.user_api.dto.BookmarkView;
+
 //Import JpaRepository, for built-in CRUD
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.data.domain.Limit;
 
 //Import Repository annotation to tell Spring this is a repository
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 //<Entity, Primary Key type>
 @Repository
-public interface BookmarkRepository extends JpaRepository<Bookmark, Integer> {
+public interface BookmarkRepository extends JpaRepository<Bookmark, Integer>, BookmarkRepositoryCustom {
 
     /**
      * Finds all bookmarks that belong to a specific user
@@ -23,4 +35,85 @@ public interface BookmarkRepository extends JpaRepository<Bookmark, Integer> {
      * @return A list of Bookmark objects that belong to the user
      */
     List<Bookmark> findByUser(User user);
+
+    /**
+     * Finds all bookmarks of a user as lean views (bookmark columns only; users table never joined)
+     * @param userId The ID of the user whose bookmarks we want to retrieve
+     * @return The user's bookmarks in ID order
+     */
+    @Query("SELECT new coptic.user_api.dto.BookmarkView(b.id, b.name, b.copticText, b.transliteration, "
+            + "b.englishTranslation, b.arabicTranslation, b.notes) "
+            + "FROM Bookmark b WHERE b.user.id = :userId ORDER BY b.id")
+    List<BookmarkView> findViewsByUserId(@Param("userId") int userId);
+
+    /**
+     * Streams all bookmarks of a user as lean views through a forward-only cursor
+     * Rows are fetched EXPORT_FETCH_SIZE at a time and nothing is added to the persistence context,
+     * so memory stays flat however many bookmarks the user owns
+     * Must be consumed inside a transaction (the Postgres driver only uses a cursor with auto-commit off) and closed
+     * @param userId The ID of the user whose bookmarks we want to export
+     * @return The user's bookmarks in ID order
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new coptic.user_api.dto.BookmarkView(b.id, b.name, b.copticText, b.transliteration, "
+            + "b.englishTranslation, b.arabicTranslation, b.notes) "
+            + "FROM Bookmark b WHERE b.user.id = :userId ORDER BY b.id")
+    Stream<BookmarkView> streamViewsByUserId(@Param("userId") int userId);
+
+    //Rows per round trip when streaming an export
+    String EXPORT_FETCH_SIZE = "500";
+
+    /**
+     * Keyset page: the user's bookmarks with an ID above the cursor, in ID order, as lean views
+     * Seeks straight to the cursor instead of skipping rows, so every page costs the same
+     * @param userId The ID of the user whose bookmarks we want to retrieve
+     * @param afterId Only bookmarks with a greater ID are returned (0 for the first page)
+     * @param limit Maximum number of bookmarks to return
+     * @return Up to limit bookmarks
+     */
+    @Query("SELECT new coptic.user_api.dto.BookmarkView(b.id, b.name, b.copticText, b.transliteration, "
+            + "b.englishTranslation, b.arabicTranslation, b.notes) "
+            + "FROM Bookmark b WHERE b.user.id = :userId AND b.id > :afterId ORDER BY b.id")
+    List<BookmarkView> findViewPageByUserId(@Param("userId") int userId, @Param("afterId") int afterId, Limit limit);
+
+    /**
+     * Counts the bookmarks that belong to a user
+     * @param userId The user's ID
+     * @return Number of bookmarks
+     */
+    long countByUserId(int userId);
+
+    /**
+     * Replaces the content of one bookmark in a single UPDATE, only if it belongs to the given user
+     * @param id The ID of the bookmark
+     * @param userId The ID of the user who must own it
+     * @return Number of rows updated (0 if the bookmark does not exist or belongs to someone else)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Bookmark b SET b.name = :name, b.copticText = :copticText, b.transliteration = :transliteration, "
+            + "b.englishTranslation = :englishTranslation, b.arabicTranslation = :arabicTranslation, b.notes = :notes "
+            + "WHERE b.id = :id AND b.user.id = :userId")
+    int updateByIdAndUserId(@Param("id") int id,
+                            @Param("userId") int userId,
+                            @Param("name") String name,
+                            @Param("copticText") String copticText,
+                            @Param("transliteration") String transliteration,
+                            @Param("englishTranslation") String englishTranslation,
+                            @Param("arabicTranslation") String arabicTranslation,
+                            @Param("notes") String notes);
+
+    /**
+     * Deletes one bookmark in a single DELETE, only if it belongs to the given user
+     * @param id The ID of the bookmark
+     * @param userId The ID of the user who must own it
+     * @return Number of rows deleted (0 if the bookmark does not exist or belongs to someone else)
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Bookmark b WHERE b.id = :id AND b.user.id = :userId")
+    int deleteByIdAndUserId(@Param("id") int id, @Param("userId") int userId);
 }
@@ -0,0 +1,30 @@
+// Package where this class belongs
+package coptic.user_api.repositories;
+
+import coptic.user_api.dto.BookmarkView;
+
+import java.util.List;
+import java.util.Map;
+
+//Hand-written queries mixed into BookmarkRepository (implemented by BookmarkRepositoryCustomImpl)
+public interface BookmarkRepositoryCustom {
+
+    /**
+     * Updates only the given columns of one bookmark, in a single UPDATE scoped to its owner
+     * @param id The ID of the bookmark
+     * @param userId The ID of the user who must own it
+     * @param fields Entity attribute names mapped to their new values (at least one)
+     * @return Number of rows updated (0 if the bookmark does not exist or belongs to someone else)
+     */
+    int patchByIdAndUserId(int id, int userId, Map<String, Object> fields);
+
+    /**
+     * Full-text search over a user's bookmarks using the search_vector column, ranked best first
+     * @param userId The ID of the user whose bookmarks are searched
+     * @param query The search words (websearch syntax; normalized the same way as the indexed text)
+     * @param offset Number of ranked results to skip
+     * @param limit Maximum number of results to return
+     * @return Matching bookmarks as lean views
+     */
+    List<BookmarkView> searchViews(int userId, String query, int offset, int limit);
+}
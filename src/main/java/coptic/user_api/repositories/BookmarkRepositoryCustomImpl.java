@@ -0,0 +1,65 @@
+// Package where this class belongs
+package coptic.user_api.repositories;
+
+import coptic.user_api.dto.BookmarkView;
+import coptic.user_api.models.Bookmark;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaUpdate;
+import jakarta.persistence.criteria.Root;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Map;
+
+//Builds the partial UPDATE with the Criteria API, so the SET clause holds exactly the columns that were sent
+public class BookmarkRepositoryCustomImpl implements BookmarkRepositoryCustom {
+
+    //Ranked full-text search; the GIN index on search_vector finds the matches, ts_rank orders them
+    private static final String SEARCH_SQL =
+            "SELECT b.id, b.name, b.coptic_text, b.transliteration, b.english_translation, b.arabic_translation, b.notes "
+            + "FROM bookmarks b, websearch_to_tsquery('simple', bookmark_search_normalize(:query)) q "
+            + "WHERE b.user_id = :userId AND b.search_vector @@ q "
+            + "ORDER BY ts_rank(b.search_vector, q) DESC, b.id "
+            + "LIMIT :limit OFFSET :offset";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int patchByIdAndUserId(int id, int userId, Map<String, Object> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Bookmark> update = cb.createCriteriaUpdate(Bookmark.class);
+        Root<Bookmark> bookmark = update.from(Bookmark.class);
+
+        fields.forEach((attribute, value) -> update.set(bookmark.get(attribute), value));
+        update.where(cb.equal(bookmark.get("id"), id),
+                cb.equal(bookmark.get("user").get("id"), userId));
+
+        return entityManager.createQuery(update).executeUpdate();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<BookmarkView> searchViews(int userId, String query, int offset, int limit) {
+        List<Object[]> rows = entityManager.createNativeQuery(SEARCH_SQL)
+                .setParameter("query", query)
+                .setParameter("userId", userId)
+                .setParameter("limit", limit)
+                .setParameter("offset", offset)
+                .getResultList();
+
+        return rows.stream()
+                .map(row -> new BookmarkView(((Number) row[0]).intValue(), (String) row[1], (String) row[2],
+                        (String) row[3], (String) row[4], (String) row[5], (String) row[6]))
+                .toList();
+    }
+}
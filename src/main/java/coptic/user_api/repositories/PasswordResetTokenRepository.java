@@ -3,25 +3,67 @@ package coptic.user_api.repositories;
 
 //Import model
 import coptic.user_api.models.PasswordResetToken;
-import coptic.user_api.models.User;
 
 //Import JPA + annotations
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+
+//Every operation is a single statement: tokens are never loaded as entities
 @Repository
 public interface PasswordResetTokenRepository extends JpaRepository<PasswordResetToken, Integer> {
 
     /**
-     * Finds a PasswordResetToken by its token string
-     * @param token The token string to search for
-     * @return The PasswordResetToken object if found, otherwise null
+     * Stores a user's reset token, replacing the previous one (a user has at most one, see uk_password_reset_tokens_user)
+     * @param userId The user's ID
+     * @param tokenHash Digest of the new token
+     * @param expiration When the new token expires
+     * @return Number of rows written (1)
+     */
+    @Modifying
+    @Transactional
+    @Query(value = "INSERT INTO password_reset_tokens (token_hash, user_id, expiration) VALUES (:tokenHash, :userId, :expiration) " +
+            "ON CONFLICT (user_id) DO UPDATE SET token_hash = EXCLUDED.token_hash, expiration = EXCLUDED.expiration",
+            nativeQuery = true)
+    int upsertForUser(@Param("userId") int userId, @Param("tokenHash") byte[] tokenHash,
+                      @Param("expiration") LocalDateTime expiration);
+
+    /**
+     * Finds the user a live token belongs to (served by the unique index on token_hash)
+     * @param tokenHash Digest of the token
+     * @param now Tokens expiring at or before this instant are ignored
+     * @return The user's ID, or null if the token is unknown or expired
+     */
+    @Query("SELECT t.user.id FROM PasswordResetToken t WHERE t.tokenHash = :tokenHash AND t.expiration > :now")
+    Integer findUserIdByTokenHash(@Param("tokenHash") byte[] tokenHash, @Param("now") LocalDateTime now);
+
+    /**
+     * Consumes a live token; of several concurrent callers with the same token only one deletes it
+     * @param tokenHash Digest of the token
+     * @param now Tokens expiring at or before this instant are not consumed
+     * @return 1 if this call consumed the token, 0 if it was already used or expired
      */
-    PasswordResetToken findByToken(String token);
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM PasswordResetToken t WHERE t.tokenHash = :tokenHash AND t.expiration > :now")
+    int deleteLiveByTokenHash(@Param("tokenHash") byte[] tokenHash, @Param("now") LocalDateTime now);
 
     /**
-     * Deletes all reset tokens associated with a user
-     * @param user The user whose tokens should be deleted
+     * Deletes one batch of expired tokens, oldest first (range scan on idx_password_reset_tokens_expiration)
+     * Rows locked by someone else (another node's sweeper, a reset in progress) are skipped, never waited on
+     * @param now Tokens that expired before this instant are deleted
+     * @param limit Most rows deleted
+     * @return Number of rows deleted
      */
-    void deleteByUser(User user);
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM password_reset_tokens WHERE id IN (SELECT id FROM password_reset_tokens " +
+            "WHERE expiration < :now ORDER BY expiration LIMIT :limit FOR UPDATE SKIP LOCKED)",
+            nativeQuery = true)
+    int deleteExpiredBatch(@Param("now") LocalDateTime now, @Param("limit") int limit);
 }
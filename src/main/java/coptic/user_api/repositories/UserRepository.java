@@ -6,9 +6,13 @@ import coptic.user_api.models.User;
 
 //Import JpaRepository, for built-in CRUD
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 //Import to state that it's a repository
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 //<Entity, Primary Key type>
 @Repository
@@ -26,4 +30,54 @@ public interface UserRepository extends JpaRepository<User, Integer> {
      * @return true if a user exists with this email, false otherwise
      */
     boolean existsByEmail(String email);
+
+    /**
+     * Reads only the token version of a user, without loading the entity
+     * @param id The user's ID
+     * @return The current token version, or null if the user does not exist
+     */
+    @Query("SELECT u.tokenVersion FROM User u WHERE u.id = :id")
+    Integer findTokenVersionById(@Param("id") int id);
+
+    /**
+     * Replaces a password hash only if it has not changed since it was read (used to upgrade hashes on login)
+     * @param id The user's ID
+     * @param currentHash The hash that was verified
+     * @param newHash The replacement hash
+     * @return Number of rows updated (0 if the password changed in the meantime)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :newHash WHERE u.id = :id AND u.password = :currentHash")
+    int updatePasswordHash(@Param("id") int id, @Param("currentHash") String currentHash, @Param("newHash") String newHash);
+
+    /**
+     * Sets a new password hash and revokes every token issued before, in one statement (used by password changes and
+     * resets, so a concurrent bump of the token version is never overwritten)
+     * @param id The user's ID
+     * @param newHash The new password hash
+     * @return Number of rows updated (0 if the user no longer exists)
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :newHash, u.tokenVersion = u.tokenVersion + 1 WHERE u.id = :id")
+    int resetPassword(@Param("id") int id, @Param("newHash") String newHash);
+
+    /**
+     * Reads only the bookmark version of a user, looked up by email (served by the unique email index)
+     * @param email The user's email
+     * @return The current bookmark version, or null if the user does not exist
+     */
+    @Query("SELECT u.bookmarkVersion FROM User u WHERE u.email = :email")
+    Long findBookmarkVersionByEmail(@Param("email") String email);
+
+    /**
+     * Increments a user's bookmark version; runs inside the transaction that changes the bookmarks
+     * @param id The user's ID
+     * @return Number of rows updated
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.bookmarkVersion = u.bookmarkVersion + 1 WHERE u.id = :id")
+    int bumpBookmarkVersion(@Param("id") int id);
 }
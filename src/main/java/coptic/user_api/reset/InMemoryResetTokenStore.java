@@ -0,0 +1,132 @@
+package coptic.user_api.reset;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokens held in memory, so reset spikes never touch the database: each entry expires on its own at the end of its
+ * TTL and the number of tokens is bounded (least recently used go first when full).
+ * Tokens live on this node only and are lost on restart: use it with a single instance, or with reset requests
+ * routed to the node that issued the link.
+ */
+@Component
+@ConditionalOnProperty(name = "password-reset.store", havingValue = "memory")
+public class InMemoryResetTokenStore implements ResetTokenStore {
+
+    //One stored token; compared by identity, so a replaced token never matches the user's current one
+    private static final class Entry {
+        private final int userId;
+        private final String key;
+        private final long expiresAtNanos;
+
+        private Entry(int userId, String key, long expiresAtNanos) {
+            this.userId = userId;
+            this.key = key;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    //Each entry lives until its own deadline, whatever is done with it in between
+    private static final Expiry<Object, Entry> UNTIL_DEADLINE = new Expiry<>() {
+        @Override
+        public long expireAfterCreate(Object key, Entry entry, long currentTime) {
+            return Math.max(0, entry.expiresAtNanos - currentTime);
+        }
+
+        @Override
+        public long expireAfterUpdate(Object key, Entry entry, long currentTime, long currentDuration) {
+            return Math.max(0, entry.expiresAtNanos - currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Object key, Entry entry, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    };
+
+    private final Clock clock;
+
+    //Token digest (hex) -> token, and user ID -> that user's current token
+    private final Cache<String, Entry> byToken;
+    private final Cache<Integer, Entry> byUser;
+
+    /**
+     * Creates the store
+     * @param maxTokens Most tokens held at once
+     */
+    @Autowired
+    public InMemoryResetTokenStore(@Value("${password-reset.memory.max-tokens:100000}") long maxTokens) {
+        this(maxTokens, Clock.systemUTC(), ForkJoinPool.commonPool());
+    }
+
+    InMemoryResetTokenStore(long maxTokens, Clock clock, Executor executor) {
+        this.clock = clock;
+        this.byToken = Caffeine.newBuilder()
+                .maximumSize(maxTokens)
+                .<String, Entry>expireAfter(UNTIL_DEADLINE)
+                .ticker(this::now)
+                .executor(executor)
+                .build();
+        this.byUser = Caffeine.newBuilder()
+                .maximumSize(maxTokens)
+                .<Integer, Entry>expireAfter(UNTIL_DEADLINE)
+                .ticker(this::now)
+                .executor(executor)
+                .build();
+    }
+
+    @Override
+    public void put(int userId, byte[] tokenHash, Duration ttl) {
+        Entry entry = new Entry(userId, HexFormat.of().formatHex(tokenHash), now() + ttl.toNanos());
+        Entry previous = byUser.asMap().put(userId, entry);
+        byToken.put(entry.key, entry);
+        if (previous != null) {
+            byToken.asMap().remove(previous.key, previous);
+        }
+    }
+
+    @Override
+    public Integer findUserId(byte[] tokenHash) {
+        Entry entry = byToken.getIfPresent(HexFormat.of().formatHex(tokenHash));
+        return entry != null && isCurrent(entry) ? entry.userId : null;
+    }
+
+    @Override
+    public boolean consume(byte[] tokenHash) {
+        Entry entry = byToken.asMap().remove(HexFormat.of().formatHex(tokenHash));
+        //Only the caller that removed the entry gets here with it, and only if it was still the user's live token
+        return entry != null && byUser.asMap().remove(entry.userId, entry) && entry.expiresAtNanos > now();
+    }
+
+    @Override
+    public int deleteExpired(int limit) {
+        //Expired entries are already invisible; this only lets Caffeine reclaim them now
+        byToken.cleanUp();
+        byUser.cleanUp();
+        return 0;
+    }
+
+    //STATISTICS
+    public long size() { return byUser.estimatedSize(); }
+
+    //Live, and not replaced by a newer token of the same user
+    private boolean isCurrent(Entry entry) {
+        return entry.expiresAtNanos > now() && byUser.getIfPresent(entry.userId) == entry;
+    }
+
+    private long now() {
+        return TimeUnit.MILLISECONDS.toNanos(clock.millis());
+    }
+}
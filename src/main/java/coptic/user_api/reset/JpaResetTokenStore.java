@@ -0,0 +1,51 @@
+package coptic.user_api.reset;
+
+import coptic.user_api.repositories.PasswordResetTokenRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+//Tokens in the password_reset_tokens table (V6): one single-statement query per operation, expired rows swept in batches
+@Component
+@ConditionalOnProperty(name = "password-reset.store", havingValue = "jpa", matchIfMissing = true)
+public class JpaResetTokenStore implements ResetTokenStore {
+
+    private final PasswordResetTokenRepository tokenRepo;
+
+    //Expirations are written and compared in this clock's local time, like the column (timestamp without time zone)
+    private final Clock clock;
+
+    @Autowired
+    public JpaResetTokenStore(PasswordResetTokenRepository tokenRepo) {
+        this(tokenRepo, Clock.systemDefaultZone());
+    }
+
+    JpaResetTokenStore(PasswordResetTokenRepository tokenRepo, Clock clock) {
+        this.tokenRepo = tokenRepo;
+        this.clock = clock;
+    }
+
+    @Override
+    public void put(int userId, byte[] tokenHash, Duration ttl) {
+        tokenRepo.upsertForUser(userId, tokenHash, LocalDateTime.now(clock).plus(ttl));
+    }
+
+    @Override
+    public Integer findUserId(byte[] tokenHash) {
+        return tokenRepo.findUserIdByTokenHash(tokenHash, LocalDateTime.now(clock));
+    }
+
+    @Override
+    public boolean consume(byte[] tokenHash) {
+        return tokenRepo.deleteLiveByTokenHash(tokenHash, LocalDateTime.now(clock)) > 0;
+    }
+
+    @Override
+    public int deleteExpired(int limit) {
+        return tokenRepo.deleteExpiredBatch(LocalDateTime.now(clock), limit);
+    }
+}
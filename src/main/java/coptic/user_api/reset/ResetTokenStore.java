@@ -0,0 +1,40 @@
+package coptic.user_api.reset;
+
+import java.time.Duration;
+
+/**
+ * Where live password reset tokens are kept, keyed by their SHA-256 digest (TokenDigest.sha256Bytes); raw tokens
+ * never reach a store. A user has at most one live token: storing a new one makes the previous one unusable.
+ * Selected with password-reset.store: "jpa" (the password_reset_tokens table, the default) or "memory".
+ */
+public interface ResetTokenStore {
+
+    /**
+     * Stores a user's token, replacing any previous one
+     * @param userId The user's ID
+     * @param tokenHash Digest of the token
+     * @param ttl How long the token stays usable
+     */
+    void put(int userId, byte[] tokenHash, Duration ttl);
+
+    /**
+     * Looks up the user of a live token
+     * @param tokenHash Digest of the token
+     * @return The user's ID, or null if the token is unknown, replaced or expired
+     */
+    Integer findUserId(byte[] tokenHash);
+
+    /**
+     * Uses up a live token; of several concurrent callers with the same token only one succeeds
+     * @param tokenHash Digest of the token
+     * @return true if this call consumed the token
+     */
+    boolean consume(byte[] tokenHash);
+
+    /**
+     * Removes up to one batch of expired tokens (stores that expire entries on their own have nothing to remove)
+     * @param limit Most tokens removed
+     * @return Number of tokens removed
+     */
+    int deleteExpired(int limit);
+}
@@ -0,0 +1,22 @@
+//Package where this class belongs
+package coptic.user_api.search;
+
+import coptic.user_api.dto.BookmarkView;
+
+import java.util.List;
+
+//Full-text search over one user's bookmarks
+//Text is compared after TextNormalizer folding; results are ranked best first
+public interface BookmarkSearchIndex {
+
+    /**
+     * Searches a user's bookmarks; every word of the query must match
+     * Name matches rank above text and translation matches, which rank above notes
+     * @param userId The ID of the user whose bookmarks are searched
+     * @param query The search words
+     * @param offset Number of ranked results to skip
+     * @param limit Maximum number of results to return
+     * @return Matching bookmarks, best match first (ties in ID order)
+     */
+    List<BookmarkView> search(int userId, String query, int offset, int limit);
+}
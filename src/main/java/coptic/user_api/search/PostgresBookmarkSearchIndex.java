@@ -0,0 +1,28 @@
+//Package where this class belongs
+package coptic.user_api.search;
+
+import coptic.user_api.dto.BookmarkView;
+import coptic.user_api.repositories.BookmarkRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+//Search backed by the bookmarks.search_vector tsvector column and its GIN index (V4 migration)
+//The column is generated by Postgres, so there is nothing to keep in sync on writes
+@Component
+public class PostgresBookmarkSearchIndex implements BookmarkSearchIndex {
+
+    private final BookmarkRepository bookmarkRepository;
+
+    @Autowired
+    public PostgresBookmarkSearchIndex(BookmarkRepository bookmarkRepository) {
+        this.bookmarkRepository = bookmarkRepository;
+    }
+
+    @Override
+    public List<BookmarkView> search(int userId, String query, int offset, int limit) {
+        return bookmarkRepository.searchViews(userId, query, offset, limit);
+    }
+}
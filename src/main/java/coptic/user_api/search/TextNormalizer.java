@@ -0,0 +1,62 @@
+//Package where this class belongs
+package coptic.user_api.search;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+//Folds Coptic, Arabic and Latin text to the form that is indexed and searched
+//Mirrors bookmark_search_normalize() (db/migration V4, case folding pinned in V10); change both together.
+//Case folding covers ASCII letters and Coptic capitals only, as lower() does under the C collation: other capitals
+//(accented Latin, Greek, Cyrillic) are kept as written, so they only match the same case
+public final class TextNormalizer {
+
+    //Marks that do not change what a word is:
+    //combining diacritics and overlines (U+0300-036F), Coptic combining marks (U+2CEF-2CF1),
+    //combining half marks used for supralinear strokes (U+FE24-FE26),
+    //Arabic harakat and Quranic marks (U+064B-065F, U+0670, U+06D6-06ED) and tatweel (U+0640)
+    private static final Pattern IGNORED_MARKS = Pattern.compile(
+            "[\\u0300-\\u036F\\u2CEF-\\u2CF1\\uFE24-\\uFE26\\u064B-\\u065F\\u0670\\u06D6-\\u06ED\\u0640]");
+
+    //Anything that is not a letter or digit separates words
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private TextNormalizer() {}
+
+    /**
+     * Normalizes text for indexing: Unicode NFC, ignored marks removed, ASCII and Coptic capitals lowercased
+     * @param text The text to normalize (may be null)
+     * @return The normalized text, empty for null
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFC);
+        char[] chars = IGNORED_MARKS.matcher(composed).replaceAll("").toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = fold(chars[i]);
+        }
+        return new String(chars);
+    }
+
+    //Same pairs as the translate() in bookmark_search_normalize(): every Coptic capital is its small letter minus one
+    private static char fold(char c) {
+        if (c >= 'A' && c <= 'Z') {
+            return (char) (c + ('a' - 'A'));
+        }
+        boolean copticCapital = (c >= '\u2C80' && c <= '\u2CE2' && c % 2 == 0)
+                || c == '\u2CEB' || c == '\u2CED' || c == '\u2CF2'
+                || (c >= '\u03E2' && c <= '\u03EE' && c % 2 == 0);
+        return copticCapital ? (char) (c + 1) : c;
+    }
+
+    /**
+     * Normalizes text and splits it into words
+     * @param text The text to tokenize (may be null)
+     * @return The normalized words, in order
+     */
+    public static String[] tokenize(String text) {
+        String normalized = normalize(text).trim();
+        return normalized.isEmpty() ? new String[0] : SEPARATORS.split(normalized);
+    }
+}
@@ -0,0 +1,80 @@
+package coptic.user_api.security;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Adaptive in-flight limit (additive increase, multiplicative decrease) driven by observed latency.
+ * A request that completes within the latency target while the limit is at least half used raises the limit by one;
+ * a slow or failed one cuts it by 10%. The limit therefore tracks how much concurrency the backend (mostly Postgres)
+ * can absorb right now, and requests beyond it are turned away instead of queueing.
+ */
+public class AimdLimit {
+
+    //Multiplicative decrease factor
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxLatencyNanos;
+
+    //Current limit; written under the monitor, read without it
+    private volatile int limit;
+
+    //Requests admitted and not yet finished
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Creates the limit
+     * @param initialLimit Starting limit
+     * @param minLimit Floor the limit never drops below
+     * @param maxLimit Ceiling the limit never grows above
+     * @param maxLatencyMillis Latency above which a request counts as a sign of overload
+     */
+    public AimdLimit(int initialLimit, int minLimit, int maxLimit, long maxLatencyMillis) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Need 1 <= min <= max");
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatencyMillis);
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Admits a request if the group is below its limit
+     * @return true if admitted (release must then be called exactly once), false if it should be shed
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Finishes an admitted request and adapts the limit
+     * @param latencyNanos How long the request took
+     * @param failed Whether it failed in a way that suggests overload (timeout, 5xx)
+     */
+    public void release(long latencyNanos, boolean failed) {
+        int wasInFlight = inFlight.getAndDecrement();
+        synchronized (this) {
+            if (failed || latencyNanos > maxLatencyNanos) {
+                limit = Math.max(minLimit, (int) (limit * BACKOFF));
+            } else if (wasInFlight * 2 >= limit) {
+                //Only grow when the limit is actually being used, so it cannot drift up while idle
+                limit = Math.min(maxLimit, limit + 1);
+            }
+        }
+    }
+
+    //Current limit and requests in flight
+    public int getLimit() { return limit; }
+    public int getInFlight() { return inFlight.get(); }
+}
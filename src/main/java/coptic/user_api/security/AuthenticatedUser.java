@@ -0,0 +1,46 @@
+package coptic.user_api.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import java.util.Collection;
+import java.util.Collections;
+
+//Lightweight principal built from verified JWT claims; carries no password and needs no database row
+public final class AuthenticatedUser implements UserDetails {
+
+    //User's ID and email, copied from the token
+    private final int id;
+    private final String email;
+
+    /**
+     * Creates a principal
+     * @param id The user's ID
+     * @param email The user's email
+     */
+    public AuthenticatedUser(int id, String email) {
+        this.id = id;
+        this.email = email;
+    }
+
+    //GETTERS
+    public int getId() { return id; }
+    public String getEmail() { return email; }
+
+    @Override
+    public Collection<? extends GrantedAuthority> getAuthorities() {
+        return Collections.emptyList(); // No roles for now
+    }
+
+    //Never exposes a password
+    @Override
+    public String getPassword() {
+        return null;
+    }
+
+    //Using email as username
+    @Override
+    public String getUsername() {
+        return email;
+    }
+}
@@ -0,0 +1,107 @@
+package coptic.user_api.security;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over 128-bit keys (token jtis, passed as the two halves of their UUID), so a check allocates nothing.
+ * Answers "definitely not added" or "possibly added"; the share of false "possibly" answers stays near the rate it was
+ * sized for as long as no more than the expected number of keys is added.
+ * Thread-safe: keys may be added while other threads check, and no added key is ever reported missing.
+ */
+public final class BloomFilter {
+
+    //Upper bound on the size of the bit array (128 MiB), whatever the expected number of keys
+    private static final long MAX_BITS = 1L << 30;
+
+    //Most bit positions probed per key
+    private static final int MAX_HASHES = 16;
+
+    //Keeps the probe stride apart from the start position; both depend on both halves of the key, since keys sharing
+    //one half would otherwise share a stride and overlap far more often than independent hashes do
+    private static final long STRIDE_SEED = 0x9e3779b97f4a7c15L;
+
+    private final AtomicLongArray words;
+
+    //Bit count is a power of two, so a position is a mask away from a hash
+    private final long bitMask;
+    private final int hashes;
+
+    private BloomFilter(long bits, int hashes) {
+        this.words = new AtomicLongArray((int) (bits >>> 6));
+        this.bitMask = bits - 1;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Creates an empty filter
+     * @param expectedKeys Number of keys it will hold
+     * @param falsePositiveRate Target share of wrong "possibly added" answers once it holds them, between 0 and 1
+     * @return The filter
+     */
+    public static BloomFilter create(long expectedKeys, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        long keys = Math.max(1, expectedKeys);
+        double optimalBits = -keys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bits = 64;
+        while (bits < optimalBits && bits < MAX_BITS) {
+            bits <<= 1;
+        }
+        int hashes = (int) Math.round((double) bits / keys * Math.log(2));
+        return new BloomFilter(bits, Math.max(1, Math.min(hashes, MAX_HASHES)));
+    }
+
+    /**
+     * Adds a key
+     * @param high Most significant 64 bits of the key
+     * @param low Least significant 64 bits of the key
+     */
+    public void put(long high, long low) {
+        long h1 = mix(low + mix(high));
+        long h2 = mix(h1 ^ high ^ STRIDE_SEED) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            int index = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long word;
+            while (((word = words.get(index)) & mask) == 0 && !words.compareAndSet(index, word, word | mask)) {
+                //Another bit of the same word was set meanwhile; retry with the new value
+            }
+        }
+    }
+
+    /**
+     * Checks a key
+     * @param high Most significant 64 bits of the key
+     * @param low Least significant 64 bits of the key
+     * @return False if the key was never added, true if it possibly was
+     */
+    public boolean mightContain(long high, long low) {
+        long h1 = mix(low + mix(high));
+        long h2 = mix(h1 ^ high ^ STRIDE_SEED) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //Size of the bit array
+    public long bitSize() { return bitMask + 1; }
+
+    //Bit positions probed per key
+    public int hashCount() { return hashes; }
+
+    //Murmur3 finalizer: spreads keys that are not uniformly random (hand-made or sequential IDs) over all bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,199 @@
+package coptic.user_api.security;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sheds load before it piles up in Tomcat and the connection pool: each endpoint group has an adaptive in-flight limit
+ * (AimdLimit), and a request arriving while its group is full gets 503 right away.
+ * Imports and exports are long and heavy, so they have a group of their own and are also turned away whenever bookmark
+ * reads are close to their limit; reads keep priority.
+ * Asynchronous requests (password hashing, streamed exports) hold their slot until the async work completes.
+ */
+@Component
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    //Endpoint groups, with their default settings: initial, min and max limit, and latency target in milliseconds
+    public enum Group {
+        AUTH("auth", 20, 2, 200, 1000),
+        BOOKMARK_READS("bookmark-reads", 50, 4, 500, 250),
+        BOOKMARK_WRITES("bookmark-writes", 20, 2, 200, 500),
+        BULK("bulk", 4, 1, 8, 600_000);
+
+        private final String key;
+        private final int initial;
+        private final int min;
+        private final int max;
+        private final long maxLatencyMillis;
+
+        Group(String key, int initial, int min, int max, long maxLatencyMillis) {
+            this.key = key;
+            this.initial = initial;
+            this.min = min;
+            this.max = max;
+            this.maxLatencyMillis = maxLatencyMillis;
+        }
+
+        public String getKey() { return key; }
+    }
+
+    private final boolean enabled;
+
+    //Bulk requests are shed once reads use this share of their limit
+    private final double bulkReadsHeadroom;
+
+    private final Map<Group, AimdLimit> limits = new EnumMap<>(Group.class);
+    private final Map<Group, LongAdder> shed = new EnumMap<>(Group.class);
+
+    /**
+     * Creates the filter; each group reads concurrency-limit.<group>.initial, .min, .max and .max-latency-millis
+     * @param environment Source of the settings
+     */
+    @Autowired
+    public ConcurrencyLimitFilter(Environment environment) {
+        this.enabled = environment.getProperty("concurrency-limit.enabled", Boolean.class, true);
+        this.bulkReadsHeadroom = environment.getProperty("concurrency-limit.bulk.reads-headroom", Double.class, 0.75);
+        for (Group group : Group.values()) {
+            String prefix = "concurrency-limit." + group.key + ".";
+            limits.put(group, new AimdLimit(
+                    environment.getProperty(prefix + "initial", Integer.class, group.initial),
+                    environment.getProperty(prefix + "min", Integer.class, group.min),
+                    environment.getProperty(prefix + "max", Integer.class, group.max),
+                    environment.getProperty(prefix + "max-latency-millis", Long.class, group.maxLatencyMillis)));
+            shed.put(group, new LongAdder());
+        }
+    }
+
+    ConcurrencyLimitFilter(Map<Group, AimdLimit> limits, double bulkReadsHeadroom) {
+        this.enabled = true;
+        this.bulkReadsHeadroom = bulkReadsHeadroom;
+        this.limits.putAll(limits);
+        for (Group group : Group.values()) {
+            shed.put(group, new LongAdder());
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || groupOf(request) == null;
+    }
+
+    /**
+     * Admits the request into its group or sheds it with 503, and feeds its latency back into the group's limit
+     * @param request The incoming HTTP request
+     * @param response The HTTP response
+     * @param chain The filter chain to continue the request
+     * @throws ServletException If servlet fails
+     * @throws IOException If input/output fails
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Group group = groupOf(request);
+        AimdLimit limit = limits.get(group);
+
+        if (group == Group.BULK && readsUnderPressure()) {
+            reject(group, response);
+            return;
+        }
+        if (!limit.tryAcquire()) {
+            reject(group, response);
+            return;
+        }
+
+        long start = System.nanoTime();
+        boolean async = false;
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                async = true;
+                request.getAsyncContext().addListener(new ReleaseOnComplete(limit, start, response));
+            }
+            failed = response.getStatus() >= 500;
+        } finally {
+            if (!async) {
+                limit.release(System.nanoTime() - start, failed);
+            }
+        }
+    }
+
+    //Endpoint group of a request, or null for routes that are not limited
+    static Group groupOf(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        if (path.startsWith("/users/")) {
+            return Group.AUTH;
+        }
+        if (path.equals("/bookmarks/export") || path.equals("/bookmarks/import")) {
+            return Group.BULK;
+        }
+        if (path.startsWith("/bookmarks/")) {
+            return "GET".equals(request.getMethod()) ? Group.BOOKMARK_READS : Group.BOOKMARK_WRITES;
+        }
+        return null;
+    }
+
+    private boolean readsUnderPressure() {
+        AimdLimit reads = limits.get(Group.BOOKMARK_READS);
+        return reads.getInFlight() >= reads.getLimit() * bulkReadsHeadroom;
+    }
+
+    private void reject(Group group, HttpServletResponse response) throws IOException {
+        shed.get(group).increment();
+        response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("Server busy, please try again");
+    }
+
+    //STATISTICS
+    public Map<Group, AimdLimit> getLimits() { return Collections.unmodifiableMap(limits); }
+    public long getShedCount(Group group) { return shed.get(group).sum(); }
+
+    //Frees an async request's slot once, when the async work is over; timeouts and errors count as overload
+    private static final class ReleaseOnComplete implements AsyncListener {
+        private final AimdLimit limit;
+        private final long start;
+        private final HttpServletResponse response;
+        private volatile boolean failed;
+
+        private ReleaseOnComplete(AimdLimit limit, long start, HttpServletResponse response) {
+            this.limit = limit;
+            this.start = start;
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            limit.release(System.nanoTime() - start, failed || response.getStatus() >= 500);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) { failed = true; }
+
+        @Override
+        public void onError(AsyncEvent event) { failed = true; }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            //Re-register for the next async cycle, if any
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -4,7 +4,6 @@ import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
-import coptic.user_api.repositories.UserRepository;
 import coptic.user_api.models.User;
 
 import java.util.Optional;
@@ -12,19 +11,19 @@ import java.util.Optional;
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
-    private final UserRepository userRepository;
+    private final UserCache userCache;
 
     /**
-     * Constructor to inject UserRepository for user lookup
-     * @param userRepository The UserRepository used to retrieve users by email
+     * Constructor to inject the user cache for user lookup
+     * @param userCache The cache (backed by UserRepository) used to retrieve users by email
      */
-    public CustomUserDetailsService(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public CustomUserDetailsService(UserCache userCache) {
+        this.userCache = userCache;
     }
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        Optional<User> user = Optional.ofNullable(userRepository.findByEmail(username));
+        Optional<User> user = Optional.ofNullable(userCache.findByEmail(username));
         if (user.isEmpty()) {
             throw new UsernameNotFoundException("User not found: " + username);
         }
@@ -1,62 +1,106 @@
 package coptic.user_api.security;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import coptic.user_api.models.User;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.spec.SecretKeySpec;
 import javax.crypto.SecretKey;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Date;
-import java.util.function.Function;
+import java.util.UUID;
 import java.util.Base64;
 
 @Component
 public class JWT {
 
+    //Claim names for the user's ID and token version (used to authenticate without a database lookup)
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String TOKEN_VERSION_CLAIM = "ver";
+
+    //Lifetime of access tokens issued to users; sessions last longer through refresh tokens (RefreshTokenService)
+    static final Duration DEFAULT_ACCESS_TOKEN_TTL = Duration.ofMinutes(15);
+
     //Read the secret key from application.properties
     private final SecretKey SECRET_KEY;
 
+    //Parser bound to the secret key; immutable and thread-safe, so it is built once and shared
+    private final JwtParser parser;
+
+    private final Duration accessTokenTtl;
+
+    /**
+     * Initializes the JWT utility with a secret key and the default access token lifetime
+     * @param secret The Base64-encoded secret string used for signing JWT tokens
+     */
+    public JWT(String secret) {
+        this(secret, DEFAULT_ACCESS_TOKEN_TTL.toSeconds());
+    }
+
     /**
      * Initializes the JWT utility with a secret key from application properties
      * @param secret The Base64-encoded secret string used for signing JWT tokens
+     * @param accessTokenTtlSeconds Lifetime of the tokens issued to users
      */
-    public JWT(@Value("${jwt.secret}") String secret) {
+    @Autowired
+    public JWT(@Value("${jwt.secret}") String secret,
+               @Value("${jwt.access-token.ttl-seconds:900}") long accessTokenTtlSeconds) {
+        if (accessTokenTtlSeconds < 1) {
+            throw new IllegalArgumentException("Access token lifetime must be positive");
+        }
         byte[] keyBytes = Base64.getDecoder().decode(secret);
         this.SECRET_KEY = new SecretKeySpec(keyBytes, "HmacSHA256");
+        this.parser = Jwts.parserBuilder().setSigningKey(SECRET_KEY).build();
+        this.accessTokenTtl = Duration.ofSeconds(accessTokenTtlSeconds);
     }
 
-    //Generate token
-    public String generateToken(String email) {
+    /**
+     * Generate a short-lived access token carrying the user's ID and token version, so requests can be authenticated
+     * from the token alone, and a random jti by which it can be revoked
+     * @param user The user the token is issued to
+     * @return The signed token
+     */
+    public String generateToken(User user) {
+        return generateToken(user, UUID.randomUUID(), Instant.now());
+    }
+
+    /**
+     * Generate a short-lived access token with a given jti and issue time
+     * @param user The user the token is issued to
+     * @param jti The token's ID (what TokenRevocationList revokes)
+     * @param issuedAt Issue time; the token expires one access token lifetime later
+     * @return The signed token
+     */
+    public String generateToken(User user, UUID jti, Instant issuedAt) {
         return Jwts.builder()
-                .setSubject(email)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 10)) // 10 hours expiry
+                .setId(jti.toString())
+                .setSubject(user.getEmail())
+                .claim(USER_ID_CLAIM, user.getId())
+                .claim(TOKEN_VERSION_CLAIM, user.getTokenVersion())
+                .setIssuedAt(Date.from(issuedAt))
+                .setExpiration(Date.from(issuedAt.plus(accessTokenTtl)))
                 .signWith(SECRET_KEY, SignatureAlgorithm.HS256)
                 .compact();
     }
 
-    //Extract email from token
-    public String extractEmail(String token) {
-        return extractClaim(token, Claims::getSubject);
-    }
-
-    //Validate token
-    public boolean validateToken(String token, String userEmail) {
-        return userEmail.equals(extractEmail(token)) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractClaim(token, Claims::getExpiration).before(new Date());
+    //Lifetime of the access tokens issued to users
+    public Duration getAccessTokenTtl() {
+        return accessTokenTtl;
     }
 
-    private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
-        final Claims claims = Jwts.parserBuilder()
-                .setSigningKey(SECRET_KEY)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
-        return claimsResolver.apply(claims);
+    /**
+     * Parses the token and verifies its signature and expiry in a single pass
+     * @param token The compact JWT string
+     * @return The verified claims
+     * @throws io.jsonwebtoken.JwtException If the token is malformed, tampered with or expired
+     */
+    public Claims parseClaims(String token) {
+        return parser.parseClaimsJws(token).getBody();
     }
 }
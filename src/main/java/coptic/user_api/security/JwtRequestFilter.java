@@ -4,24 +4,57 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import coptic.user_api.models.User;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
 
     @Autowired
-    private JWT jwt;
+    private JwtVerifier jwtVerifier;
 
     @Autowired
     private UserDetailsService userDetailsService;
 
+    @Autowired
+    private TokenVersionCache tokenVersionCache;
+
+    @Autowired
+    private TokenRevocationList revocationList;
+
+    //Timer jwt.filter, tagged by phase: verify (parse + signature), version_check (stateless) or user_load;
+    //registered once, so timing a request does no meter lookup
+    private final Timer verifyTimer;
+    private final Timer versionCheckTimer;
+    private final Timer userLoadTimer;
+
+    //Stateless mode: build the principal from the token claims instead of loading the user on every request
+    @Value("${jwt.stateless:true}")
+    private boolean stateless;
+
+    /**
+     * Creates the filter and registers its timers
+     * @param meterRegistry Where the jwt.filter timers are registered
+     */
+    @Autowired
+    public JwtRequestFilter(MeterRegistry meterRegistry) {
+        this.verifyTimer = meterRegistry.timer("jwt.filter", "phase", "verify");
+        this.versionCheckTimer = meterRegistry.timer("jwt.filter", "phase", "version_check");
+        this.userLoadTimer = meterRegistry.timer("jwt.filter", "phase", "user_load");
+    }
+
     /**
      * Intercepts requests to extract and validate JWT, then sets authentication if valid
      * @param request The incoming HTTP request
@@ -37,27 +70,76 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         //Extract JWT token from the request header
         String authorizationHeader = request.getHeader("Authorization");
 
-        String email = null;
-        String token = null;
-
         //Check if Authorization header exists and starts with "Bearer "
-        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
-            token = authorizationHeader.substring(7); // Remove "Bearer " prefix
-            email = jwt.extractEmail(token); // Extract email from the token
-        }
+        if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            String token = authorizationHeader.substring(7); // Remove "Bearer " prefix
 
-        //Validate token and authenticate user
-        if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+            //Parse and verify the token once (or reuse an earlier verification of the same token)
+            long start = System.nanoTime();
+            VerifiedToken verified = jwtVerifier.verify(token);
+            record(verifyTimer, start);
 
-            if (jwt.validateToken(token, userDetails.getUsername())) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+            //Authenticate user if the token checks out and was not revoked (logout, refresh token reuse)
+            if (verified != null && verified.getEmail() != null && !isRevoked(verified)) {
+                authenticate(verified);
             }
         }
 
         //Continue the request
         chain.doFilter(request, response);
     }
+
+    //Resolve the principal for a verified token and store it in the security context
+    private void authenticate(VerifiedToken verified) {
+        long start = System.nanoTime();
+        boolean fromClaims = stateless && verified.isSelfContained();
+        UserDetails principal = fromClaims ? principalFromClaims(verified) : principalFromDatabase(verified);
+        record(fromClaims ? versionCheckTimer : userLoadTimer, start);
+
+        if (principal != null) {
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                    principal, null, principal.getAuthorities());
+            SecurityContextHolder.getContext().setAuthentication(authToken);
+        }
+    }
+
+    //Bloom filter first; only possible positives cost a database lookup
+    private boolean isRevoked(VerifiedToken verified) {
+        return verified.hasJti() && revocationList.isRevoked(verified.getJtiHigh(), verified.getJtiLow());
+    }
+
+    private static void record(Timer timer, long startNanos) {
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    //Stateless path: no user row is loaded, only the (cached) token version is compared
+    private UserDetails principalFromClaims(VerifiedToken verified) {
+        if (!tokenVersionCache.isCurrent(verified.getUserId(), verified.getTokenVersion())) {
+            return null; // Password changed or reset since the token was issued
+        }
+        return new AuthenticatedUser(verified.getUserId(), verified.getEmail());
+    }
+
+    //Legacy path for tokens without ID/version claims (or when stateless mode is off): load the user by email
+    private UserDetails principalFromDatabase(VerifiedToken verified) {
+        UserDetails userDetails;
+        try {
+            userDetails = userDetailsService.loadUserByUsername(verified.getEmail());
+        } catch (UsernameNotFoundException e) {
+            return null; // Token outlived its account
+        }
+
+        if (!userDetails.getUsername().equals(verified.getEmail())) {
+            return null;
+        }
+        if (userDetails instanceof User user) {
+            //Versioned tokens must still match the stored version
+            if (verified.getTokenVersion() != null && verified.getTokenVersion() != user.getTokenVersion()) {
+                return null;
+            }
+            return new AuthenticatedUser(user.getId(), user.getEmail());
+        }
+        return userDetails;
+    }
 }
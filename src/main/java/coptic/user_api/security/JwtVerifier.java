@@ -0,0 +1,90 @@
+package coptic.user_api.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.JwtException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Verifies bearer tokens once and remembers the result.
+ * Tokens are keyed by their SHA-256 digest (the raw token is never held), and each entry is dropped when its exp claim passes.
+ */
+@Component
+public class JwtVerifier {
+
+    //JWT utility holding the shared parser
+    private final JWT jwt;
+
+    //Digest of token -> verified claims, bounded in size and expiring with the token itself
+    private final Cache<String, VerifiedToken> verifiedTokens;
+
+    /**
+     * Creates the verifier with a bounded cache
+     * @param jwt The JWT utility used to parse and check signatures
+     * @param maxSize Maximum number of verified tokens to remember
+     */
+    public JwtVerifier(JWT jwt, @Value("${jwt.cache.max-size:10000}") long maxSize) {
+        this.jwt = jwt;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new UntilTokenExpiry())
+                .build();
+    }
+
+    /**
+     * Verifies a token, parsing it only if it has not been seen before
+     * @param token The compact JWT string from the Authorization header
+     * @return The verified claims, or null if the token is invalid or expired
+     */
+    public VerifiedToken verify(String token) {
+        String key = TokenDigest.sha256(token);
+        long now = System.currentTimeMillis();
+
+        VerifiedToken cached = verifiedTokens.getIfPresent(key);
+        if (cached != null) {
+            //The cache expires entries on its own schedule; never hand out one that is past exp
+            return cached.isExpired(now) ? null : cached;
+        }
+
+        VerifiedToken verified;
+        try {
+            verified = VerifiedToken.from(jwt.parseClaims(token));
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+
+        if (verified == null || verified.isExpired(now)) {
+            return null;
+        }
+        verifiedTokens.put(key, verified);
+        return verified;
+    }
+
+    //Number of tokens currently remembered (approximate)
+    public long cachedTokenCount() {
+        return verifiedTokens.estimatedSize();
+    }
+
+    //Each entry lives exactly until the exp claim of its token
+    private static final class UntilTokenExpiry implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            long remainingMillis = value.getExpiresAt() - System.currentTimeMillis();
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package coptic.user_api.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Picks a BCrypt work factor for the current host.
+ * Each extra unit of strength doubles the cost, so strengths are tried upwards until one exceeds the latency target.
+ */
+public final class PasswordHashCalibrator {
+
+    private static final Logger log = LoggerFactory.getLogger(PasswordHashCalibrator.class);
+
+    //Password used only for timing
+    private static final String SAMPLE_PASSWORD = "calibration-sample-password";
+
+    private PasswordHashCalibrator() {}
+
+    /**
+     * Finds the highest strength whose hash time stays within the target
+     * @param targetMillis Latency target for a single hash
+     * @param minStrength Lowest strength allowed, used even if it misses the target
+     * @param maxStrength Highest strength allowed
+     * @return The chosen BCrypt strength
+     */
+    public static int calibrate(long targetMillis, int minStrength, int maxStrength) {
+        //Warm up so JIT compilation is not counted against the first strength
+        new BCryptPasswordEncoder(minStrength).encode(SAMPLE_PASSWORD);
+
+        int chosen = minStrength;
+        for (int strength = minStrength; strength <= maxStrength; strength++) {
+            long millis = timeHash(strength);
+            log.debug("BCrypt strength {} took {} ms", strength, millis);
+            if (millis > targetMillis) {
+                break;
+            }
+            chosen = strength;
+        }
+
+        log.info("Password hashing calibrated to BCrypt strength {} (target {} ms)", chosen, targetMillis);
+        return chosen;
+    }
+
+    //Time one hash at the given strength
+    private static long timeHash(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long start = System.nanoTime();
+        encoder.encode(SAMPLE_PASSWORD);
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,236 @@
+package coptic.user_api.security;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits the credential routes (each costs a BCrypt hash or a database write) before the request gets anywhere
+ * near the password encoder: one token bucket per client IP and, where the body names an account, one per email.
+ * Refused requests get 429 with Retry-After. Limits are set per route as "capacity/seconds"; blank turns a limit off.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    //Credential payloads are tiny; only this much of a body is read to find the email
+    static final int MAX_BODY_BYTES = 16 * 1024;
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    //Limits of one route
+    private static final class Route {
+        private final String name;
+        private final TokenBucketLimiter.Limit perIp;
+        private final TokenBucketLimiter.Limit perEmail;
+
+        private Route(String name, String perIp, String perEmail) {
+            this.name = name;
+            this.perIp = TokenBucketLimiter.Limit.parse(perIp);
+            this.perEmail = TokenBucketLimiter.Limit.parse(perEmail);
+        }
+    }
+
+    private final boolean enabled;
+    private final TokenBucketLimiter limiter;
+
+    //"METHOD path" -> limits
+    private final Map<String, Route> routes = new HashMap<>();
+
+    /**
+     * Creates the filter
+     * @param enabled Whether anything is limited
+     * @param maxKeys Most buckets (IPs and emails, all routes together) kept in memory
+     */
+    @Autowired
+    public RateLimitFilter(@Value("${rate-limit.enabled:true}") boolean enabled,
+                           @Value("${rate-limit.max-keys:100000}") long maxKeys,
+                           @Value("${rate-limit.login.per-ip:20/60}") String loginPerIp,
+                           @Value("${rate-limit.login.per-email:5/60}") String loginPerEmail,
+                           @Value("${rate-limit.sign-up.per-ip:5/60}") String signUpPerIp,
+                           @Value("${rate-limit.request-reset.per-ip:5/60}") String requestResetPerIp,
+                           @Value("${rate-limit.request-reset.per-email:3/900}") String requestResetPerEmail,
+                           @Value("${rate-limit.change-password.per-ip:10/60}") String changePasswordPerIp,
+                           @Value("${rate-limit.change-password.per-email:5/300}") String changePasswordPerEmail,
+                           @Value("${rate-limit.reset-password.per-ip:10/60}") String resetPasswordPerIp,
+                           @Value("${rate-limit.refresh.per-ip:30/60}") String refreshPerIp) {
+        this(enabled, new TokenBucketLimiter(maxKeys));
+        addRoute("POST /users/login", new Route("login", loginPerIp, loginPerEmail));
+        addRoute("POST /users/sign_up", new Route("sign-up", signUpPerIp, null));
+        addRoute("POST /users/request_reset", new Route("request-reset", requestResetPerIp, requestResetPerEmail));
+        addRoute("PUT /users/change_password", new Route("change-password", changePasswordPerIp, changePasswordPerEmail));
+        addRoute("POST /users/reset_password", new Route("reset-password", resetPasswordPerIp, null));
+        addRoute("POST /users/refresh", new Route("refresh", refreshPerIp, null));
+    }
+
+    RateLimitFilter(boolean enabled, TokenBucketLimiter limiter) {
+        this.enabled = enabled;
+        this.limiter = limiter;
+    }
+
+    void addRoute(String methodAndPath, String name, String perIp, String perEmail) {
+        addRoute(methodAndPath, new Route(name, perIp, perEmail));
+    }
+
+    private void addRoute(String methodAndPath, Route route) {
+        if (route.perIp != null || route.perEmail != null) {
+            routes.put(methodAndPath, route);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !routes.containsKey(request.getMethod() + " " + request.getRequestURI());
+    }
+
+    /**
+     * Charges the client IP, then the email from the body, and refuses the request if either bucket is empty
+     * The body is read once and replayed to the controller
+     * @param request The incoming HTTP request
+     * @param response The HTTP response
+     * @param chain The filter chain to continue the request
+     * @throws ServletException If servlet fails
+     * @throws IOException If input/output fails
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Route route = routes.get(request.getMethod() + " " + request.getRequestURI());
+
+        //Per IP first: it needs no body, so floods are refused without parsing anything
+        if (route.perIp != null) {
+            long waitNanos = limiter.tryAcquire(route.name + "|ip|" + request.getRemoteAddr(), route.perIp);
+            if (waitNanos > 0) {
+                reject(response, waitNanos);
+                return;
+            }
+        }
+
+        if (route.perEmail != null) {
+            byte[] body = request.getInputStream().readNBytes(MAX_BODY_BYTES);
+            String email = emailOf(body);
+            if (email != null) {
+                long waitNanos = limiter.tryAcquire(route.name + "|email|" + UserCache.normalize(email), route.perEmail);
+                if (waitNanos > 0) {
+                    reject(response, waitNanos);
+                    return;
+                }
+            }
+            request = new ReplayedBodyRequest(request, body);
+        }
+
+        chain.doFilter(request, response);
+    }
+
+    //The "email" field of a JSON body, or null if there is none (the controller deals with bad bodies)
+    static String emailOf(byte[] body) {
+        try {
+            JsonNode email = JSON.readTree(body).get("email");
+            return email != null && email.isTextual() ? email.asText() : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write("Too many requests, please try again later");
+    }
+
+    //Hands the controller the bytes the filter already read, followed by whatever is left of the body
+    private static final class ReplayedBodyRequest extends HttpServletRequestWrapper {
+        private final byte[] head;
+        private ServletInputStream stream;
+
+        private ReplayedBodyRequest(HttpServletRequest request, byte[] head) {
+            super(request);
+            this.head = head;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (stream != null) {
+                return stream;
+            }
+            ServletInputStream rest = super.getInputStream();
+            ByteArrayInputStream replay = new ByteArrayInputStream(head);
+            stream = new ServletInputStream() {
+                @Override
+                public int read() throws IOException {
+                    int b = replay.read();
+                    return b >= 0 ? b : rest.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) throws IOException {
+                    int n = replay.read(buffer, offset, length);
+                    return n > 0 ? n : rest.read(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isFinished() { return replay.available() == 0 && rest.isFinished(); }
+
+                @Override
+                public boolean isReady() { return replay.available() > 0 || rest.isReady(); }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    if (listener == null) {
+                        throw new NullPointerException("ReadListener is null");
+                    }
+                    //Servlet contract: non-blocking reads are only allowed in async mode
+                    if (!isAsyncStarted()) {
+                        throw new IllegalStateException("Non-blocking reads need an async request");
+                    }
+                    if (!rest.isFinished()) {
+                        //Body longer than the part read here: the container signals the remainder; the buffered
+                        //bytes are served first by read(), and isReady() already counts them
+                        rest.setReadListener(listener);
+                        return;
+                    }
+                    //Whole body already buffered: nothing will arrive from the container, so signal it all now
+                    try {
+                        if (replay.available() > 0) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException | RuntimeException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+            return stream;
+        }
+
+        @Override
+        public BufferedReader getReader() throws IOException {
+            String encoding = getCharacterEncoding();
+            return new BufferedReader(new InputStreamReader(getInputStream(),
+                    encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -1,42 +1,96 @@
 package coptic.user_api.security;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.actuate.autoconfigure.web.server.ManagementPortType;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.config.annotation.authentication.configuration.AuthenticationConfiguration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
+import java.util.Map;
+
 @Configuration
 public class SecurityConfig {
 
     @Autowired
     private JwtRequestFilter jwtRequestFilter;
 
+    @Autowired
+    private RateLimitFilter rateLimitFilter;
+
+    @Autowired
+    private ConcurrencyLimitFilter concurrencyLimitFilter;
+
+    /**
+     * Security rules for the API port and the management (actuator) port
+     * @param http The HTTP security builder
+     * @param environment Used to check that actuator has a port of its own
+     * @return The filter chain
+     * @throws Exception If the chain cannot be built
+     * @throws IllegalArgumentException If management.server.port is the API port
+     */
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http, Environment environment) throws Exception {
+        //Actuator endpoints are served without a token, so they may only listen on the internal management port
+        if (ManagementPortType.get(environment) == ManagementPortType.SAME) {
+            throw new IllegalArgumentException("management.server.port must be set and differ from server.port");
+        }
+
         http
                 .cors()
                 .and()
                 .csrf(csrf -> csrf.disable())
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/users/sign_up", "/users/login", "/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
+                        .requestMatchers("/users/sign_up", "/users/login", "/users/refresh", "/users/logout", "/v3/api-docs/**", "/swagger-ui/**", "/swagger-ui.html").permitAll()
+                        //Health, metrics scrapes and the SQL report (statement text and timings): operators reach them on the
+                        //internal management port, and these matchers match nothing on the API port
+                        .requestMatchers(EndpointRequest.to("health", "prometheus", "sqlstats")).permitAll()
                         .anyRequest().authenticated()
                 )
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
-                .addFilterBefore(jwtRequestFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtRequestFilter, UsernamePasswordAuthenticationFilter.class)
+                //Credential routes are rate limited before anything else looks at them
+                .addFilterBefore(rateLimitFilter, JwtRequestFilter.class)
+                //Then load shedding: a request over its group's in-flight limit gets 503 before doing any work
+                .addFilterAfter(concurrencyLimitFilter, RateLimitFilter.class);
 
         return http.build();
     }
 
+    /**
+     * Password encoder that stores hashes with an id prefix (e.g. {bcrypt}) so the algorithm or cost can change later
+     * Hashes are checked by UserService, which rehashes any that are out of date on the next successful login
+     * @param fixedStrength BCrypt strength to use as is; 0 means calibrate on this host
+     * @param targetMillis Latency target for one hash when calibrating
+     * @param minStrength Lowest strength calibration may pick
+     * @param maxStrength Highest strength calibration may pick
+     * @return The delegating encoder
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(); //Encrypts passwords
+    public PasswordEncoder passwordEncoder(@Value("${password.hash.strength:0}") int fixedStrength,
+                                           @Value("${password.hash.target-millis:250}") long targetMillis,
+                                           @Value("${password.hash.min-strength:10}") int minStrength,
+                                           @Value("${password.hash.max-strength:16}") int maxStrength) {
+        int strength = fixedStrength > 0
+                ? fixedStrength
+                : PasswordHashCalibrator.calibrate(targetMillis, minStrength, maxStrength);
+
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder("bcrypt",
+                Map.of("bcrypt", new BCryptPasswordEncoder(strength))); //Encrypts passwords
+
+        //Hashes stored before ids were added have no prefix; they are plain BCrypt
+        encoder.setDefaultPasswordEncoderForMatches(new BCryptPasswordEncoder());
+        return encoder;
     }
 
     /**
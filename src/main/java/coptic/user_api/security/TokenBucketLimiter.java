@@ -0,0 +1,134 @@
+package coptic.user_api.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets keyed by string (client IP, email...), without locks.
+ * Each bucket is a single AtomicLong holding its "theoretical arrival time" (GCRA): taking a token pushes it forward by
+ * one refill interval, and a request is refused when that would put it more than a full bucket ahead of now.
+ * This is exactly a token bucket of the same capacity and rate, updated with one CAS.
+ * Buckets live in a size-bounded Caffeine map and are dropped once idle long enough to have refilled completely, which
+ * loses nothing; only size eviction under a flood of distinct keys can hand a key a fresh bucket early.
+ */
+public class TokenBucketLimiter {
+
+    /**
+     * Capacity and refill rate of a bucket
+     */
+    public static final class Limit {
+        private final int capacity;
+        private final long intervalNanos;
+
+        /**
+         * @param capacity Most requests allowed in a burst
+         * @param periodSeconds Time for an empty bucket to refill completely
+         */
+        public Limit(int capacity, long periodSeconds) {
+            if (capacity < 1 || periodSeconds < 1) {
+                throw new IllegalArgumentException("Capacity and period must be positive");
+            }
+            this.capacity = capacity;
+            this.intervalNanos = TimeUnit.SECONDS.toNanos(periodSeconds) / capacity;
+        }
+
+        /**
+         * Parses "capacity/seconds", e.g. "5/60" for 5 requests per minute
+         * @param spec The limit, or blank for none
+         * @return The limit, or null if blank
+         * @throws IllegalArgumentException If malformed
+         */
+        public static Limit parse(String spec) {
+            if (spec == null || spec.isBlank()) {
+                return null;
+            }
+            String[] parts = spec.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Rate limit must look like capacity/seconds: " + spec);
+            }
+            return new Limit(Integer.parseInt(parts[0].trim()), Long.parseLong(parts[1].trim()));
+        }
+
+        //Time for an empty bucket to become full
+        long burstNanos() { return intervalNanos * capacity; }
+    }
+
+    //Bucket state; the limit is kept so the expiry policy knows when the bucket is full again
+    private static final class Bucket {
+        private final AtomicLong arrival;
+        private final long burstNanos;
+
+        private Bucket(long now, long burstNanos) {
+            this.arrival = new AtomicLong(now);
+            this.burstNanos = burstNanos;
+        }
+    }
+
+    private final Cache<String, Bucket> buckets;
+    private final LongSupplier clock;
+
+    /**
+     * Creates the limiter
+     * @param maxKeys Most buckets kept at once
+     */
+    public TokenBucketLimiter(long maxKeys) {
+        this(maxKeys, System::nanoTime);
+    }
+
+    TokenBucketLimiter(long maxKeys, LongSupplier clock) {
+        this.clock = clock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .ticker(clock::getAsLong)
+                .expireAfter(new Expiry<String, Bucket>() {
+                    @Override
+                    public long expireAfterCreate(String key, Bucket bucket, long currentTime) {
+                        return bucket.burstNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Bucket bucket, long currentTime, long currentDuration) {
+                        return bucket.burstNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Bucket bucket, long currentTime, long currentDuration) {
+                        return bucket.burstNanos;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Takes one token from a key's bucket
+     * @param key Whose bucket (callers prefix it with the route and kind of key)
+     * @param limit The bucket's capacity and rate
+     * @return 0 if the request may go ahead, otherwise how many nanoseconds until a token is available
+     */
+    public long tryAcquire(String key, Limit limit) {
+        long now = clock.getAsLong();
+        long burst = limit.burstNanos();
+        Bucket bucket = buckets.get(key, k -> new Bucket(now, burst));
+
+        while (true) {
+            long arrival = bucket.arrival.get();
+            //A bucket idle for a while is full, not more than full
+            long next = Math.max(arrival, now) + limit.intervalNanos;
+            long ahead = next - now;
+            if (ahead > burst) {
+                return ahead - burst;
+            }
+            if (bucket.arrival.compareAndSet(arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    //Approximate number of buckets held
+    public long size() { return buckets.estimatedSize(); }
+}
@@ -0,0 +1,36 @@
+package coptic.user_api.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+//Fixed-width SHA-256 digests of tokens, used wherever a token has to be looked up without keeping the raw value around
+public final class TokenDigest {
+
+    private TokenDigest() {}
+
+    /**
+     * Hashes a token with SHA-256
+     * @param token The raw token string
+     * @return The digest as 64 lowercase hex characters
+     */
+    public static String sha256(String token) {
+        return HexFormat.of().formatHex(sha256Bytes(token));
+    }
+
+    /**
+     * Hashes a token with SHA-256, for storage in a binary column
+     * @param token The raw token string
+     * @return The 32-byte digest
+     */
+    public static byte[] sha256Bytes(String token) {
+        try {
+            //MessageDigest instances are not thread-safe, so each call gets its own
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            //Every JVM is required to ship SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package coptic.user_api.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Access tokens revoked before their exp claim, by jti (revoked_access_tokens, V8).
+ * Every authenticated request is checked, so the check goes to an in-memory Bloom filter of the live revoked jtis
+ * first: a "definitely not revoked" answer costs a few memory reads and no allocation, and only possible positives
+ * (real revocations, plus about false-positive-rate of the rest) are looked up in the table.
+ * The filter is rebuilt from the table every rebuild-millis, sized to what it holds, which also drops jtis whose
+ * tokens have expired meanwhile. Revocations made on this node go into the current filter right away; those made on
+ * other nodes are seen from the next rebuild on. Until the first rebuild every check goes to the table.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    private static final String PURGE_SQL =
+            "DELETE FROM revoked_access_tokens WHERE jti IN (SELECT jti FROM revoked_access_tokens "
+            + "WHERE expires_at < now() LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final double falsePositiveRate;
+
+    //Smallest number of jtis a filter is sized for, so local revocations between rebuilds keep the rate down
+    private final int minCapacity;
+
+    //Expired rows deleted per rebuild
+    private final int purgeBatchSize;
+
+    //How long local revocations are re-added to new filters: a rebuild may read the table before they commit
+    private final long recentWindowMillis;
+
+    //Current filter, replaced whole by each rebuild; null until the first one
+    private volatile BloomFilter filter;
+
+    //Revocations made on this node -> when (epoch milliseconds)
+    private final Map<UUID, Long> recent = new ConcurrentHashMap<>();
+
+    private final LongAdder possiblePositives = new LongAdder();
+    private final LongAdder confirmed = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private volatile long loaded;
+
+    /**
+     * Creates the revocation list
+     * @param jdbcTemplate Access to revoked_access_tokens
+     * @param falsePositiveRate Target share of unrevoked tokens that still need a table lookup
+     * @param minCapacity Smallest number of jtis a filter is sized for
+     * @param purgeBatchSize Expired rows deleted per rebuild
+     * @param rebuildMillis Interval between rebuilds
+     */
+    public TokenRevocationList(JdbcTemplate jdbcTemplate,
+                               @Value("${jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate,
+                               @Value("${jwt.revocation.min-capacity:10000}") int minCapacity,
+                               @Value("${jwt.revocation.purge-batch-size:1000}") int purgeBatchSize,
+                               @Value("${jwt.revocation.rebuild-millis:30000}") long rebuildMillis) {
+        if (minCapacity < 1 || purgeBatchSize < 1) {
+            throw new IllegalArgumentException("Revocation filter capacity and purge batch size must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.falsePositiveRate = falsePositiveRate;
+        this.minCapacity = minCapacity;
+        this.purgeBatchSize = purgeBatchSize;
+        this.recentWindowMillis = 2 * rebuildMillis;
+        //Fail at startup on a bad rate rather than at the first rebuild
+        BloomFilter.create(1, falsePositiveRate);
+    }
+
+    /**
+     * Revokes an access token, in the caller's transaction if there is one
+     * @param jti The token's jti
+     * @param expiresAt When the token expires anyway (the row is kept until then)
+     */
+    public void revoke(UUID jti, Instant expiresAt) {
+        jdbcTemplate.update("INSERT INTO revoked_access_tokens (jti, expires_at) VALUES (?, ?) ON CONFLICT (jti) DO NOTHING",
+                jti, Timestamp.from(expiresAt));
+        //Recorded before the filter is read, so a rebuild swapping filters meanwhile re-adds it to the new one
+        recent.put(jti, System.currentTimeMillis());
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+        }
+    }
+
+    /**
+     * Checks whether an access token was revoked
+     * @param jtiHigh Most significant 64 bits of the token's jti
+     * @param jtiLow Least significant 64 bits of the token's jti
+     * @return True if it was
+     */
+    public boolean isRevoked(long jtiHigh, long jtiLow) {
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(jtiHigh, jtiLow)) {
+            return false;
+        }
+        possiblePositives.increment();
+        Boolean revoked = jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM revoked_access_tokens WHERE jti = ?)", Boolean.class, new UUID(jtiHigh, jtiLow));
+        if (Boolean.TRUE.equals(revoked)) {
+            confirmed.increment();
+            return true;
+        }
+        return false;
+    }
+
+    //Scheduled rebuild (the first one at startup)
+    @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-millis:30000}")
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            //The previous filter stays in use; it only misses revocations from other nodes until a rebuild succeeds
+            log.warn("Could not rebuild the token revocation filter: {}", e.toString());
+        }
+    }
+
+    /**
+     * Deletes a batch of expired rows, then replaces the filter with one built from the live rows
+     * @return Number of jtis loaded
+     */
+    public long rebuild() {
+        jdbcTemplate.update(PURGE_SQL, purgeBatchSize);
+
+        Long live = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM revoked_access_tokens WHERE expires_at >= now()", Long.class);
+        //Headroom for rows committed between the count and the scan, and for local revocations until the next rebuild
+        long expected = Math.max(minCapacity, 2 * (live != null ? live : 0));
+        BloomFilter next = BloomFilter.create(expected, falsePositiveRate);
+        long[] count = new long[1];
+        jdbcTemplate.query("SELECT jti FROM revoked_access_tokens WHERE expires_at >= now()", rs -> {
+            UUID jti = rs.getObject(1, UUID.class);
+            next.put(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+            count[0]++;
+        });
+
+        //Local revocations the scan may have missed, before and after the swap (see revoke)
+        long cutoff = System.currentTimeMillis() - recentWindowMillis;
+        recent.values().removeIf(at -> at < cutoff);
+        addRecent(next);
+        filter = next;
+        addRecent(next);
+
+        loaded = count[0];
+        rebuilds.increment();
+        log.debug("Rebuilt token revocation filter: {} jtis, {} bits, {} hashes", count[0], next.bitSize(), next.hashCount());
+        return count[0];
+    }
+
+    private void addRecent(BloomFilter target) {
+        for (UUID jti : recent.keySet()) {
+            target.put(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+        }
+    }
+
+    //STATISTICS (since startup)
+    public long getPossiblePositiveCount() { return possiblePositives.sum(); }
+    public long getConfirmedCount() { return confirmed.sum(); }
+    public long getRebuildCount() { return rebuilds.sum(); }
+    public long getLoadedCount() { return loaded; }
+}
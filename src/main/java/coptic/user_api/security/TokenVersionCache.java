@@ -0,0 +1,59 @@
+package coptic.user_api.security;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import coptic.user_api.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Short-lived cache of each user's current token version.
+ * Lets the JWT filter reject tokens issued before a password change/reset with at most one small query per user per TTL.
+ */
+@Component
+public class TokenVersionCache {
+
+    //User ID -> current token version (absent if the user no longer exists)
+    private final LoadingCache<Integer, Integer> versions;
+
+    /**
+     * Creates the cache
+     * @param userRepository Repository used to read token versions
+     * @param ttlSeconds How long a version is trusted before it is read again (bounds staleness on other nodes)
+     * @param maxSize Maximum number of users to remember
+     */
+    public TokenVersionCache(UserRepository userRepository,
+                             @Value("${jwt.version-cache.ttl-seconds:30}") long ttlSeconds,
+                             @Value("${jwt.version-cache.max-size:10000}") long maxSize) {
+        this.versions = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build(userRepository::findTokenVersionById);
+    }
+
+    /**
+     * Checks that a token version is still the user's current one
+     * @param userId The user ID claim
+     * @param tokenVersion The token version claim
+     * @return true if the user exists and the version matches
+     */
+    public boolean isCurrent(int userId, int tokenVersion) {
+        Integer current = versions.get(userId);
+        return current != null && current == tokenVersion;
+    }
+
+    /**
+     * Forgets a user's cached version; called after it changes
+     * @param userId The user's ID
+     */
+    public void evict(int userId) {
+        versions.invalidate(userId);
+    }
+
+    //Forgets every cached version; called when invalidation events from other nodes may have been missed
+    public void evictAll() {
+        versions.invalidateAll();
+    }
+}
@@ -0,0 +1,195 @@
+package coptic.user_api.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import coptic.user_api.models.User;
+import coptic.user_api.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of user rows in front of UserRepository lookups by email and by ID.
+ * Entries expire after a TTL and are evicted by size; every write path (sign-up, password change, password reset,
+ * hash upgrade) invalidates the user once its change is committed.
+ * Entries are immutable snapshots of the row, and every lookup gets its own detached User built from one, so nothing a
+ * caller does to its copy reaches the cache. A load that was already running when an invalidation came in may have read
+ * the old row; it is not kept (see discardIfInvalidated), so a lookup after the invalidation never sees it.
+ * Writes on other nodes reach this one through the invalidation bus, or at worst after the TTL.
+ */
+@Component
+public class UserCache {
+
+    //Repository behind the cache
+    private final UserRepository userRepository;
+
+    //Immutable copy of the columns a lookup needs
+    private static final class Snapshot {
+        private final int id;
+        private final String email;
+        private final String password;
+        private final int tokenVersion;
+
+        private Snapshot(User user) {
+            this.id = user.getId();
+            this.email = user.getEmail();
+            this.password = user.getPassword();
+            this.tokenVersion = user.getTokenVersion();
+        }
+
+        //A fresh detached User, owned by the caller
+        private User toUser() {
+            User user = new User(email, password);
+            user.setId(id);
+            user.setTokenVersion(tokenVersion);
+            return user;
+        }
+    }
+
+    //User ID -> snapshot; the single home of cached users, so invalidating an ID is enough
+    private final Cache<Integer, Snapshot> usersById;
+
+    //Normalized email -> user ID (an account's email never changes, so this index cannot go stale)
+    private final Cache<String, Integer> idsByEmail;
+
+    //Bumped by every invalidation; a load that sees it change was possibly stale and is dropped
+    private final AtomicLong generation = new AtomicLong();
+
+    //Lookups answered from memory / from the database
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates the cache
+     * @param userRepository Repository used on a miss
+     * @param ttlSeconds How long a user is served from memory (bounds staleness after writes on other nodes)
+     * @param maxSize Maximum number of users to remember
+     */
+    public UserCache(UserRepository userRepository,
+                     @Value("${users.cache.ttl-seconds:60}") long ttlSeconds,
+                     @Value("${users.cache.max-size:10000}") long maxSize) {
+        this.userRepository = userRepository;
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        this.idsByEmail = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * Finds a user by email, from memory when possible
+     * @param email The email to search for (matched exactly, like UserRepository.findByEmail)
+     * @return The User object if found, otherwise null
+     */
+    public User findByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String key = normalize(email);
+        Integer id = idsByEmail.getIfPresent(key);
+        if (id != null) {
+            Snapshot cached = usersById.getIfPresent(id);
+            //Emails differing only in case are distinct accounts in the database; only an exact match is a hit
+            if (cached != null && cached.email.equals(email)) {
+                hits.increment();
+                return cached.toUser();
+            }
+        }
+
+        misses.increment();
+        long startGeneration = generation.get();
+        User user = userRepository.findByEmail(email);
+        if (user == null) {
+            return null;
+        }
+        Snapshot loaded = new Snapshot(user);
+        //Keeps an entry a concurrent lookup may have stored meanwhile
+        Snapshot cached = usersById.get(loaded.id, userId -> loaded);
+        idsByEmail.put(normalize(loaded.email), loaded.id);
+        discardIfInvalidated(cached, startGeneration);
+        return loaded.toUser();
+    }
+
+    /**
+     * Finds a user by ID, from memory when possible
+     * @param id The user's ID
+     * @return The User object if found, otherwise null
+     */
+    public User findById(int id) {
+        Snapshot cached = usersById.getIfPresent(id);
+        if (cached != null) {
+            hits.increment();
+            return cached.toUser();
+        }
+        misses.increment();
+        long startGeneration = generation.get();
+        //One load per ID at a time; concurrent lookups of the same user wait for it
+        Snapshot loaded = usersById.get(id, userId -> userRepository.findById(userId).map(Snapshot::new).orElse(null));
+        if (loaded == null) {
+            return null;
+        }
+        idsByEmail.put(normalize(loaded.email), loaded.id);
+        discardIfInvalidated(loaded, startGeneration);
+        return loaded.toUser();
+    }
+
+    /**
+     * Forgets a user; called after anything in the user's row changes
+     * @param userId The user's ID
+     */
+    public void invalidate(int userId) {
+        generation.incrementAndGet();
+        usersById.invalidate(userId);
+    }
+
+    /**
+     * Forgets whatever is cached under an email; called when an account is created
+     * @param email The email
+     */
+    public void invalidate(String email) {
+        generation.incrementAndGet();
+        Integer id = idsByEmail.getIfPresent(normalize(email));
+        idsByEmail.invalidate(normalize(email));
+        if (id != null) {
+            usersById.invalidate(id);
+        }
+    }
+
+    //Forgets every user; called when invalidation events from other nodes may have been missed
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        usersById.invalidateAll();
+        idsByEmail.invalidateAll();
+    }
+
+    //STATISTICS (since startup)
+    public long getHitCount() { return hits.sum(); }
+    public long getMissCount() { return misses.sum(); }
+
+    //Users dropped for size or age (explicit invalidations are not counted)
+    public long getEvictionCount() { return usersById.stats().evictionCount(); }
+
+    //Approximate number of cached users
+    public long size() { return usersById.estimatedSize(); }
+
+    //An invalidation since the load started may have raced it (the load read the row before the write committed and
+    //stored it after the invalidation ran); drop the entry, only if it is still the one this load saw
+    private void discardIfInvalidated(Snapshot loaded, long startGeneration) {
+        if (generation.get() != startGeneration) {
+            usersById.asMap().remove(loaded.id, loaded);
+        }
+    }
+
+    //Emails are compared case-insensitively and without surrounding spaces for the cache key
+    static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
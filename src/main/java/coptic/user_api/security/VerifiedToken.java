@@ -0,0 +1,107 @@
+package coptic.user_api.security;
+
+import io.jsonwebtoken.Claims;
+
+import java.util.Date;
+import java.util.UUID;
+
+//Immutable snapshot of the claims of a token whose signature has already been checked
+public final class VerifiedToken {
+
+    //Subject of the token (the user's email)
+    private final String email;
+
+    //User ID and token version; null for tokens issued before these claims existed
+    private final Integer userId;
+    private final Integer tokenVersion;
+
+    //jti as the two halves of its UUID, so revocation checks allocate nothing; hasJti is false for older tokens
+    private final boolean hasJti;
+    private final long jtiHigh;
+    private final long jtiLow;
+
+    //Expiry as epoch milliseconds
+    private final long expiresAt;
+
+    /**
+     * Creates a verified token snapshot without user ID/version claims
+     * @param email The subject (email) of the token
+     * @param expiresAt Expiry time in epoch milliseconds
+     */
+    public VerifiedToken(String email, long expiresAt) {
+        this(email, null, null, expiresAt);
+    }
+
+    /**
+     * Creates a verified token snapshot
+     * @param email The subject (email) of the token
+     * @param userId The user's ID claim, or null
+     * @param tokenVersion The token version claim, or null
+     * @param expiresAt Expiry time in epoch milliseconds
+     */
+    public VerifiedToken(String email, Integer userId, Integer tokenVersion, long expiresAt) {
+        this(email, userId, tokenVersion, null, expiresAt);
+    }
+
+    /**
+     * Creates a verified token snapshot with a jti
+     * @param email The subject (email) of the token
+     * @param userId The user's ID claim, or null
+     * @param tokenVersion The token version claim, or null
+     * @param jti The jti claim, or null
+     * @param expiresAt Expiry time in epoch milliseconds
+     */
+    public VerifiedToken(String email, Integer userId, Integer tokenVersion, UUID jti, long expiresAt) {
+        this.email = email;
+        this.userId = userId;
+        this.tokenVersion = tokenVersion;
+        this.hasJti = jti != null;
+        this.jtiHigh = jti != null ? jti.getMostSignificantBits() : 0;
+        this.jtiLow = jti != null ? jti.getLeastSignificantBits() : 0;
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * Copies the claims the filter needs out of a parsed token
+     * @param claims Claims returned by a successful signature check
+     * @return The snapshot, or null if the token has no expiry (such tokens are never cached)
+     */
+    static VerifiedToken from(Claims claims) {
+        Date expiration = claims.getExpiration();
+        if (expiration == null) return null;
+        return new VerifiedToken(claims.getSubject(),
+                claims.get(JWT.USER_ID_CLAIM, Integer.class),
+                claims.get(JWT.TOKEN_VERSION_CLAIM, Integer.class),
+                parseJti(claims.getId()),
+                expiration.getTime());
+    }
+
+    //Only UUID jtis (the ones JWT issues) can be revoked
+    private static UUID parseJti(String id) {
+        if (id == null) return null;
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    //GETTERS
+    public String getEmail() { return email; }
+    public Integer getUserId() { return userId; }
+    public Integer getTokenVersion() { return tokenVersion; }
+    public long getExpiresAt() { return expiresAt; }
+    public boolean hasJti() { return hasJti; }
+    public long getJtiHigh() { return jtiHigh; }
+    public long getJtiLow() { return jtiLow; }
+
+    //True if the token carries everything needed to authenticate without loading the user
+    public boolean isSelfContained() {
+        return userId != null && tokenVersion != null;
+    }
+
+    //True once the exp claim has passed
+    public boolean isExpired(long nowMillis) {
+        return nowMillis >= expiresAt;
+    }
+}
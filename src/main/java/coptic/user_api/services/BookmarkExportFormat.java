@@ -0,0 +1,40 @@
+//Package where this class belongs
+package coptic.user_api.services;
+
+import org.springframework.http.MediaType;
+
+//Formats offered by GET /bookmarks/export
+public enum BookmarkExportFormat {
+
+    //One JSON object per line
+    NDJSON("ndjson", MediaType.parseMediaType("application/x-ndjson")),
+
+    //Header row, then one row per bookmark (RFC 4180 quoting)
+    CSV("csv", MediaType.parseMediaType("text/csv;charset=UTF-8"));
+
+    private final String extension;
+    private final MediaType mediaType;
+
+    BookmarkExportFormat(String extension, MediaType mediaType) {
+        this.extension = extension;
+        this.mediaType = mediaType;
+    }
+
+    //GETTERS
+    public String getExtension() { return extension; }
+    public MediaType getMediaType() { return mediaType; }
+
+    /**
+     * Resolves the format from its request parameter value (case-insensitive)
+     * @param value "ndjson" or "csv"
+     * @return The format, or null if unsupported
+     */
+    public static BookmarkExportFormat fromParam(String value) {
+        for (BookmarkExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
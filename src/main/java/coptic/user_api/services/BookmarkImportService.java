@@ -0,0 +1,166 @@
+//Package where this class belongs
+package coptic.user_api.services;
+
+//Import the Bookmark model AND User model (since there's foreign keys)
+import coptic.user_api.models.Bookmark;
+import coptic.user_api.models.User;
+
+//Import user cache (to resolve the owner once)
+import coptic.user_api.security.UserCache;
+
+//Import result DTO
+import coptic.user_api.dto.ImportResult;
+
+//Automated dependency injection
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+
+//Import to state that it's a Service
+import org.springframework.stereotype.Service;
+
+//Streaming I/O
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Service
+public class BookmarkImportService {
+
+    //Longest value a bookmark column holds
+    static final int MAX_FIELD_LENGTH = 255;
+
+    //Rejection reasons kept in the result; the counts stay exact beyond this
+    static final int MAX_REPORTED_ERRORS = 100;
+
+    //Writes each chunk in its own transaction (batched inserts, one version bump)
+    private final BookmarkService bookmarkService;
+
+    //Resolves the owner
+    private final UserCache userCache;
+
+    //Records per committed chunk
+    private final int chunkSize;
+
+    //Constructor
+    //A chunk is written with one BookmarkService.saveBookmarks call, so it may not exceed bookmarks.batch.max-items;
+    //a larger chunk size is refused at startup rather than failing every import
+    @Autowired
+    public BookmarkImportService(BookmarkService bookmarkService,
+                                 UserCache userCache,
+                                 @Value("${bookmarks.import.chunk-size:500}") int chunkSize,
+                                 @Value("${bookmarks.batch.max-items:1000}") int maxBatchItems) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("bookmarks.import.chunk-size must be positive");
+        }
+        if (chunkSize > maxBatchItems) {
+            throw new IllegalArgumentException("bookmarks.import.chunk-size (" + chunkSize
+                    + ") must not exceed bookmarks.batch.max-items (" + maxBatchItems + ")");
+        }
+        this.bookmarkService = bookmarkService;
+        this.userCache = userCache;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports bookmarks from an NDJSON or CSV stream of any size
+     * Records are parsed one at a time and written in chunks of chunk-size, each committed on its own,
+     * so memory is bounded by one chunk and a failure only loses the chunk it happened in
+     * @param userId The ID of the user who will own the bookmarks
+     * @param format NDJSON (one object per line) or CSV (header row, same columns as the export)
+     * @param in The uploaded data (UTF-8)
+     * @return How many records were accepted and rejected, with the first rejection reasons
+     * @throws IllegalArgumentException If the user does not exist
+     * @throws IOException If the upload stream fails
+     */
+    public ImportResult importBookmarks(int userId, BookmarkExportFormat format, InputStream in) throws IOException {
+        User owner = userCache.findById(userId);
+        if (owner == null) {
+            throw new IllegalArgumentException("User not found");
+        }
+
+        ImportRecordReader records = ImportRecordReader.of(format, new InputStreamReader(in, StandardCharsets.UTF_8));
+        List<Bookmark> chunk = new ArrayList<>(chunkSize);
+        List<String> errors = new ArrayList<>();
+        long accepted = 0;
+        long rejected = 0;
+        int chunkFirstRecord = 0;
+        int lastRecord = 0;
+
+        while (true) {
+            Map<String, String> record;
+            try {
+                record = records.next();
+            } catch (ImportRecordReader.InvalidRecordException e) {
+                rejected++;
+                report(errors, "record " + records.getRecordNumber() + ": " + e.getMessage());
+                continue;
+            }
+            if (record == null) {
+                break;
+            }
+
+            String problem = validate(record);
+            if (problem != null) {
+                rejected++;
+                report(errors, "record " + records.getRecordNumber() + ": " + problem);
+                continue;
+            }
+
+            if (chunk.isEmpty()) {
+                chunkFirstRecord = records.getRecordNumber();
+            }
+            lastRecord = records.getRecordNumber();
+            chunk.add(new Bookmark(record.get("name"), owner, record.get("copticText"), record.get("transliteration"),
+                    record.get("englishTranslation"), record.get("arabicTranslation"), record.get("notes")));
+            if (chunk.size() == chunkSize) {
+                int saved = commit(chunk, chunkFirstRecord, lastRecord, errors);
+                accepted += saved;
+                rejected += chunk.size() - saved;
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            int saved = commit(chunk, chunkFirstRecord, lastRecord, errors);
+            accepted += saved;
+            rejected += chunk.size() - saved;
+        }
+        return new ImportResult(accepted, rejected, errors);
+    }
+
+    //Commit one chunk; if the database refuses it, count the whole chunk as rejected and carry on
+    private int commit(List<Bookmark> chunk, int firstRecord, int lastRecord, List<String> errors) {
+        try {
+            return bookmarkService.saveBookmarks(chunk);
+        } catch (DataAccessException e) {
+            report(errors, "records " + firstRecord + "-" + lastRecord + ": could not be saved");
+            return 0;
+        }
+    }
+
+    //Reason the record cannot be imported, or null if it is valid
+    static String validate(Map<String, String> record) {
+        String name = record.get("name");
+        if (name == null || name.isBlank()) {
+            return "name is required";
+        }
+        for (String field : new String[]{"name", "copticText", "transliteration", "englishTranslation", "arabicTranslation", "notes"}) {
+            String value = record.get(field);
+            if (value != null && value.length() > MAX_FIELD_LENGTH) {
+                return field + " is longer than " + MAX_FIELD_LENGTH + " characters";
+            }
+        }
+        return null;
+    }
+
+    private static void report(List<String> errors, String error) {
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(error);
+        }
+    }
+}
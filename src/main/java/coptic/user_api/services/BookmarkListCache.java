@@ -0,0 +1,134 @@
+package coptic.user_api.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import coptic.user_api.dto.BookmarkView;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Bounded cache of each user's full bookmark list, held as immutable lists of lean views (never managed entities).
+ * The bound is the estimated size of the cached text, so a few users with huge collections cannot crowd out everyone
+ * else; the least recently used lists go first.
+ * A list is loaded under Caffeine's per-key lock and dropped only once the writing transaction has ended, so a reader
+ * either waits for the drop or reloads after it: once a write returns, no reader on this node sees the old list.
+ */
+@Component
+public class BookmarkListCache {
+
+    //Rough JVM costs used by the weigher: list + entry, each view object, each String object
+    private static final int LIST_OVERHEAD = 64;
+    private static final int VIEW_OVERHEAD = 48;
+    private static final int STRING_OVERHEAD = 40;
+
+    //Off = every read goes to the database
+    private final boolean enabled;
+
+    //User ID -> that user's bookmarks, in ID order
+    private final Cache<Integer, List<BookmarkView>> lists;
+
+    /**
+     * Creates the cache
+     * @param enabled Whether lists are cached at all
+     * @param maxBytes Upper bound on the estimated size of all cached lists
+     * @param ttlSeconds How long a list is served from memory (bounds staleness after writes on other nodes)
+     */
+    public BookmarkListCache(@Value("${bookmarks.cache.enabled:true}") boolean enabled,
+                             @Value("${bookmarks.cache.max-bytes:67108864}") long maxBytes,
+                             @Value("${bookmarks.cache.ttl-seconds:300}") long ttlSeconds) {
+        this.enabled = enabled;
+        this.lists = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((Integer userId, List<BookmarkView> views) -> weigh(views))
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns a user's bookmarks from memory, loading them on a miss
+     * Concurrent misses for the same user share one load
+     * @param userId The user's ID
+     * @param loader Reads the user's bookmarks from the database
+     * @return An unmodifiable list of the user's bookmarks
+     */
+    public List<BookmarkView> get(int userId, IntFunction<List<BookmarkView>> loader) {
+        if (!enabled) {
+            return loader.apply(userId);
+        }
+        return lists.get(userId, id -> List.copyOf(loader.apply(id)));
+    }
+
+    /**
+     * Drops a user's list once the current transaction ends (immediately when there is none)
+     * Dropping before the commit would let a concurrent reader cache the pre-write rows again
+     * @param userId The ID of the user whose bookmarks changed
+     */
+    public void invalidateAfterTransaction(int userId) {
+        if (!enabled) {
+            return;
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            lists.invalidate(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                //Also on rollback: cheap, and keeps a list loaded mid-transaction from outliving it
+                lists.invalidate(userId);
+            }
+        });
+    }
+
+    /**
+     * Drops a user's list now
+     * @param userId The user's ID
+     */
+    public void invalidate(int userId) {
+        lists.invalidate(userId);
+    }
+
+    //Drops every list; called when invalidation events from other nodes may have been missed
+    public void invalidateAll() {
+        lists.invalidateAll();
+    }
+
+    //STATISTICS (since startup)
+    public boolean isEnabled() { return enabled; }
+    public long getHitCount() { return lists.stats().hitCount(); }
+    public long getMissCount() { return lists.stats().missCount(); }
+
+    //Lists dropped for size or age (explicit invalidations are not counted)
+    public long getEvictionCount() { return lists.stats().evictionCount(); }
+
+    //Approximate number of cached lists and their estimated size in bytes
+    public long size() { return lists.estimatedSize(); }
+    public long getWeightedSize() {
+        return lists.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    //Runs pending evictions now instead of on the next access
+    void cleanUp() { lists.cleanUp(); }
+
+    //Estimated heap footprint of a list; Strings are counted as UTF-16
+    static int weigh(List<BookmarkView> views) {
+        long bytes = LIST_OVERHEAD;
+        for (BookmarkView view : views) {
+            bytes += VIEW_OVERHEAD
+                    + chars(view.getName()) + chars(view.getCopticText()) + chars(view.getTransliteration())
+                    + chars(view.getEnglishTranslation()) + chars(view.getArabicTranslation()) + chars(view.getNotes());
+        }
+        return (int) Math.min(bytes, Integer.MAX_VALUE);
+    }
+
+    private static long chars(String value) {
+        return value == null ? 0 : STRING_OVERHEAD + 2L * value.length();
+    }
+}
@@ -5,19 +5,52 @@ package coptic.user_api.services;
 import coptic.user_api.models.Bookmark;
 import coptic.user_api.models.User;
 
-//Import Bookmark repository
+//Import Bookmark repository, and User repository for the per-user bookmark version
 import coptic.user_api.repositories.BookmarkRepository;
+import coptic.user_api.repositories.UserRepository;
+
+//Import page DTO and lean view
+import coptic.user_api.dto.BookmarkPage;
+import coptic.user_api.dto.BookmarkView;
 
 //Automated dependency injection
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+
+//Full-text search
+import coptic.user_api.search.BookmarkSearchIndex;
+
+//Tells the other nodes to drop their copy of a user's bookmark list
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.cache.CacheRegion;
+
+//Persistence context, flushed and cleared between insert batches
+import jakarta.persistence.EntityManager;
 
 //Import to state that it's a Service
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+//JSON lines for exports
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+//Streaming I/O for exports
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.stream.Stream;
+
 //List utilities
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 public class BookmarkService {
@@ -25,11 +58,66 @@ public class BookmarkService {
     //Inject BookmarkRepository, for database operations
     private final BookmarkRepository bookmarkRepository;
 
+    //Bookmark fields a client may change with a partial update (entity attribute names)
+    private static final Set<String> PATCHABLE_FIELDS = Set.of(
+            "name", "copticText", "transliteration", "englishTranslation", "arabicTranslation", "notes");
+
+    //Bumps and reads the per-user bookmark version (ETag of the bookmark list)
+    private final UserRepository userRepository;
+
+    //Shared persistence context, used to bound memory during batch inserts
+    private final EntityManager entityManager;
+
+    //Ranked full-text search over a user's bookmarks
+    private final BookmarkSearchIndex searchIndex;
+
+    //Per-user bookmark lists kept in memory; every mutation below drops the owner's list when its transaction ends
+    private final BookmarkListCache listCache;
+
+    //Same invalidation for the other nodes, sent when the transaction commits
+    private final CacheInvalidationBus invalidationBus;
+
+    //Largest page a client may ask for
+    private final int maxPageSize;
+
+    //Serializes one bookmark per NDJSON line
+    private static final ObjectWriter JSON_LINE = new ObjectMapper().writerFor(BookmarkView.class);
+
+    //CSV header, in column order
+    private static final String CSV_HEADER = "id,name,copticText,transliteration,englishTranslation,arabicTranslation,notes";
+
+    //Longest search query accepted
+    private static final int MAX_QUERY_LENGTH = 200;
+
+    //Deepest a search can be paged: every page re-ranks and skips the results before it, so the cost of a page grows
+    //with its offset; results past this are not served (refine the query instead)
+    static final int MAX_SEARCH_RESULTS = 1000;
+
+    //Rows per JDBC batch (matches hibernate.jdbc.batch_size) and the most bookmarks accepted in one request
+    private final int batchSize;
+    private final int maxBatchItems;
+
     //Constructor
     //Pass BookmarkRepository into BookmarkService; allowing to use bookmarkRepository without creating it (new BookmarkRepository())
     @Autowired
-    public BookmarkService(BookmarkRepository bookmarkRepository) {
+    public BookmarkService(BookmarkRepository bookmarkRepository,
+                           UserRepository userRepository,
+                           EntityManager entityManager,
+                           BookmarkSearchIndex searchIndex,
+                           BookmarkListCache listCache,
+                           CacheInvalidationBus invalidationBus,
+                           @Value("${bookmarks.page.max-limit:100}") int maxPageSize,
+                           @Value("${bookmarks.batch.size:50}") int batchSize,
+                           @Value("${bookmarks.batch.max-items:1000}") int maxBatchItems) {
         this.bookmarkRepository = bookmarkRepository;
+        this.userRepository = userRepository;
+        this.entityManager = entityManager;
+        this.searchIndex = searchIndex;
+        this.listCache = listCache;
+        this.invalidationBus = invalidationBus;
+        this.maxPageSize = maxPageSize;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxBatchItems = maxBatchItems;
     }
 
     /**
@@ -37,8 +125,40 @@ public class BookmarkService {
      * @param bookmark The bookmark object to save
      * @return The saved Bookmark object
      */
+    @Transactional
     public Bookmark saveBookmark(Bookmark bookmark) {
-        return bookmarkRepository.save(bookmark);
+        Bookmark saved = bookmarkRepository.save(bookmark);
+        bookmarksChanged(bookmark.getUser().getId());
+        return saved;
+    }
+
+    /**
+     * Saves many bookmarks in one transaction, inserting them in JDBC batches
+     * @param bookmarks The bookmarks to insert (already linked to their user)
+     * @return The number of bookmarks saved
+     * @throws IllegalArgumentException If more than max-items bookmarks are given
+     */
+    @Transactional
+    public int saveBookmarks(List<Bookmark> bookmarks) {
+        if (bookmarks.size() > maxBatchItems) {
+            throw new IllegalArgumentException("At most " + maxBatchItems + " bookmarks per batch");
+        }
+
+        Set<Integer> owners = new HashSet<>();
+        for (int i = 0; i < bookmarks.size(); i++) {
+            bookmarkRepository.save(bookmarks.get(i));
+            owners.add(bookmarks.get(i).getUser().getId());
+
+            //Send each full batch and detach it, so the persistence context stays small on large imports
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+
+        //One version bump per owner for the whole batch
+        owners.forEach(this::bookmarksChanged);
+        return bookmarks.size();
     }
 
     /**
@@ -50,6 +170,135 @@ public class BookmarkService {
         return bookmarkRepository.findByUser(user);
     }
 
+    /**
+     * Finds all bookmarks for a given user as lean views (no User, no managed entities)
+     * Served from the per-user list cache when enabled
+     * @param userId The ID of the user whose bookmarks are being retrieved
+     * @return An unmodifiable list of views of the user's bookmarks
+     */
+    public List<BookmarkView> getBookmarkViewsByUser(int userId) {
+        return listCache.get(userId, bookmarkRepository::findViewsByUserId);
+    }
+
+    /**
+     * Finds one page of a user's bookmarks using keyset pagination
+     * @param userId The ID of the user whose bookmarks are being retrieved
+     * @param after Cursor from the previous page, or null for the first page
+     * @param limit Requested page size (clamped to 1..max-limit)
+     * @param includeTotal Whether to also count all of the user's bookmarks
+     * @return The page, with a cursor for the next one if more bookmarks remain
+     * @throws IllegalArgumentException If the cursor is malformed
+     */
+    public BookmarkPage getBookmarkPage(int userId, String after, int limit, boolean includeTotal) {
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        int afterId = after == null || after.isEmpty() ? 0 : decodeCursor(after);
+
+        //Fetch one extra row to learn whether another page exists without a count query
+        List<BookmarkView> rows = bookmarkRepository.findViewPageByUserId(userId, afterId, Limit.of(pageSize + 1));
+        boolean hasMore = rows.size() > pageSize;
+        List<BookmarkView> items = hasMore ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = hasMore ? encodeCursor(items.get(items.size() - 1).getId()) : null;
+        Long total = includeTotal ? bookmarkRepository.countByUserId(userId) : null;
+        return new BookmarkPage(items, nextCursor, total);
+    }
+
+    /**
+     * Searches a user's bookmarks (name, Coptic text, transliteration, translations and notes), best match first
+     * @param userId The ID of the user whose bookmarks are searched
+     * @param query The search words; all must match
+     * @param after Cursor from the previous page of results, or null for the first page
+     * @param limit Requested page size (clamped to 1..max-limit)
+     * @return The page of results, with a cursor for the next one if more results remain within the first
+     *         MAX_SEARCH_RESULTS
+     * @throws IllegalArgumentException If the query is empty or too long, or the cursor is malformed or too deep
+     */
+    public BookmarkPage searchBookmarks(int userId, String query, String after, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Query cannot be empty");
+        }
+        if (query.length() > MAX_QUERY_LENGTH) {
+            throw new IllegalArgumentException("Query is too long");
+        }
+        int pageSize = Math.max(1, Math.min(limit, maxPageSize));
+        int offset = after == null || after.isEmpty() ? 0 : decodeCursor(after);
+        if (offset < 0 || offset >= MAX_SEARCH_RESULTS) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+
+        //Ranked results have no stable key to seek from, so the cursor is the number of results already returned
+        pageSize = Math.min(pageSize, MAX_SEARCH_RESULTS - offset);
+        List<BookmarkView> rows = searchIndex.search(userId, query.trim(), offset, pageSize + 1);
+        boolean hasMore = rows.size() > pageSize && offset + pageSize < MAX_SEARCH_RESULTS;
+        List<BookmarkView> items = rows.size() > pageSize ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = hasMore ? encodeCursor(offset + pageSize) : null;
+        return new BookmarkPage(items, nextCursor, null);
+    }
+
+    /**
+     * Writes all of a user's bookmarks to the stream as they are read from the database
+     * Rows come from a forward-only cursor as lean views, so memory does not grow with the number of bookmarks
+     * @param userId The ID of the user whose bookmarks are exported
+     * @param format NDJSON or CSV
+     * @param out Where to write (not closed)
+     * @throws IOException If the client goes away or the stream fails
+     */
+    @Transactional(readOnly = true)
+    public void exportBookmarks(int userId, BookmarkExportFormat format, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        if (format == BookmarkExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write("\r\n");
+        }
+
+        try (Stream<BookmarkView> rows = bookmarkRepository.streamViewsByUserId(userId)) {
+            for (BookmarkView view : (Iterable<BookmarkView>) rows::iterator) {
+                if (format == BookmarkExportFormat.CSV) {
+                    writeCsvRow(writer, view);
+                } else {
+                    writer.write(JSON_LINE.writeValueAsString(view));
+                    writer.write('\n');
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    private static void writeCsvRow(Writer writer, BookmarkView view) throws IOException {
+        writer.write(Integer.toString(view.getId()));
+        for (String field : new String[]{view.getName(), view.getCopticText(), view.getTransliteration(),
+                view.getEnglishTranslation(), view.getArabicTranslation(), view.getNotes()}) {
+            writer.write(',');
+            writer.write(csvField(field));
+        }
+        writer.write("\r\n");
+    }
+
+    //Quote a CSV field when it holds a separator, quote or line break (RFC 4180); null becomes an empty field
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    //Cursor is the last bookmark ID of the page, Base64url-encoded so clients treat it as opaque
+    static String encodeCursor(int lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Integer.toString(lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static int decodeCursor(String cursor) {
+        try {
+            return Integer.parseInt(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) { // NumberFormatException is an IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
     /**
      * Retrieves a bookmark by its ID
      * @param id The ID of the bookmark
@@ -60,17 +309,81 @@ public class BookmarkService {
     }
 
     /**
-     * Deletes a bookmark by its ID
-     * @param id The ID of the bookmark to delete
+     * Replaces the content of a bookmark, if it belongs to the given user (one UPDATE, no read)
+     * @param id The ID of the bookmark
+     * @param userId The ID of the caller, who must own the bookmark
+     * @param content Bookmark holding the new name, text, translations and notes
+     * @return True if the bookmark was updated, false if it does not exist or belongs to someone else
      */
-    public void deleteBookmarkById(int id) {
-        bookmarkRepository.deleteById(id);
+    @Transactional
+    public boolean updateBookmark(int id, int userId, Bookmark content) {
+        int updated = bookmarkRepository.updateByIdAndUserId(id, userId, content.getName(), content.getCopticText(),
+                content.getTransliteration(), content.getEnglishTranslation(), content.getArabicTranslation(),
+                content.getNotes());
+        return bumpIfChanged(userId, updated);
     }
 
+    /**
+     * Updates only the given fields of a bookmark, if it belongs to the given user (one UPDATE, no read)
+     * @param id The ID of the bookmark
+     * @param userId The ID of the caller, who must own the bookmark
+     * @param changes Field names (name, copticText, transliteration, englishTranslation, arabicTranslation, notes) and new values
+     * @return True if the bookmark was updated, false if it does not exist or belongs to someone else
+     * @throws IllegalArgumentException If no fields, an unknown field, or an empty name is given
+     */
     @Transactional
-    public Bookmark updateBookmark(Bookmark updatedBookmark) {
-        Bookmark saved = bookmarkRepository.save(updatedBookmark);
-        bookmarkRepository.flush(); //force update to DB now
-        return saved;
+    public boolean patchBookmark(int id, int userId, Map<String, Object> changes) {
+        if (changes.isEmpty()) {
+            throw new IllegalArgumentException("No fields to update");
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (!PATCHABLE_FIELDS.contains(change.getKey())) {
+                throw new IllegalArgumentException("Unknown field: " + change.getKey());
+            }
+            if (change.getValue() != null && !(change.getValue() instanceof String)) {
+                throw new IllegalArgumentException("Field " + change.getKey() + " must be a string");
+            }
+        }
+        if (changes.containsKey("name") && (changes.get("name") == null || ((String) changes.get("name")).isBlank())) {
+            throw new IllegalArgumentException("Name cannot be empty");
+        }
+        return bumpIfChanged(userId, bookmarkRepository.patchByIdAndUserId(id, userId, changes));
+    }
+
+    /**
+     * Deletes a bookmark, if it belongs to the given user (one DELETE, no read)
+     * @param id The ID of the bookmark to delete
+     * @param userId The ID of the caller, who must own the bookmark
+     * @return True if the bookmark was deleted, false if it does not exist or belongs to someone else
+     */
+    @Transactional
+    public boolean deleteBookmark(int id, int userId) {
+        return bumpIfChanged(userId, bookmarkRepository.deleteByIdAndUserId(id, userId));
+    }
+
+    /**
+     * Reads a user's bookmark version without loading the user or any bookmarks
+     * The version changes whenever one of the user's bookmarks is added, updated or deleted
+     * @param email The user's email
+     * @return The bookmark version, or null if there is no such user
+     */
+    public Long getBookmarkVersion(String email) {
+        return userRepository.findBookmarkVersionByEmail(email);
+    }
+
+    //Bump the owner's bookmark version if the statement changed a row; same transaction as the change
+    private boolean bumpIfChanged(int userId, int rowsAffected) {
+        if (rowsAffected == 0) {
+            return false;
+        }
+        bookmarksChanged(userId);
+        return true;
+    }
+
+    //Bump the owner's bookmark version and drop their cached list once the transaction ends, here and on the other nodes
+    private void bookmarksChanged(int userId) {
+        userRepository.bumpBookmarkVersion(userId);
+        listCache.invalidateAfterTransaction(userId);
+        invalidationBus.publish(CacheRegion.BOOKMARKS, userId);
     }
 }
@@ -0,0 +1,227 @@
+//Package where this class belongs
+package coptic.user_api.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//Reads bookmark records one at a time from an uploaded NDJSON or CSV stream
+//Holds at most one record in memory; a malformed record is reported and skipped, and reading resumes at the next one
+abstract class ImportRecordReader {
+
+    //Longest record accepted, in characters; longer records are skipped
+    static final int MAX_RECORD_CHARS = 64 * 1024;
+
+    //Thrown for a record that cannot be parsed; the reader is already positioned at the next record
+    static class InvalidRecordException extends Exception {
+        InvalidRecordException(String message) {
+            super(message);
+        }
+    }
+
+    protected final Reader reader;
+    private int recordNumber;
+
+    protected ImportRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Creates a reader for the given format
+     * @param format NDJSON or CSV
+     * @param reader The character stream (buffered here if it is not already)
+     * @return The record reader
+     */
+    static ImportRecordReader of(BookmarkExportFormat format, Reader reader) {
+        Reader buffered = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+        return format == BookmarkExportFormat.CSV ? new Csv(buffered) : new Ndjson(buffered);
+    }
+
+    /**
+     * Reads the next record
+     * @return Field names mapped to values (values may be null), or null at the end of the stream
+     * @throws InvalidRecordException If the record is malformed (it is skipped)
+     * @throws IOException If the stream fails
+     */
+    final Map<String, String> next() throws InvalidRecordException, IOException {
+        recordNumber++;
+        return readRecord();
+    }
+
+    //1-based number of the record last returned (or rejected)
+    final int getRecordNumber() { return recordNumber; }
+
+    protected abstract Map<String, String> readRecord() throws InvalidRecordException, IOException;
+
+    //One JSON object per line; blank lines are ignored
+    private static final class Ndjson extends ImportRecordReader {
+
+        private static final ObjectMapper MAPPER = new ObjectMapper();
+
+        Ndjson(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected Map<String, String> readRecord() throws InvalidRecordException, IOException {
+            String line;
+            do {
+                line = readLine();
+                if (line == null) {
+                    return null;
+                }
+            } while (line.isBlank());
+
+            JsonNode node;
+            try {
+                node = MAPPER.readTree(line);
+            } catch (JsonProcessingException e) {
+                throw new InvalidRecordException("invalid JSON");
+            }
+            if (node == null || !node.isObject()) {
+                throw new InvalidRecordException("not a JSON object");
+            }
+
+            Map<String, String> record = new HashMap<>();
+            for (Map.Entry<String, JsonNode> field : node.properties()) {
+                JsonNode value = field.getValue();
+                if (value.isNull()) {
+                    record.put(field.getKey(), null);
+                } else if (value.isValueNode()) {
+                    record.put(field.getKey(), value.asText());
+                } else {
+                    throw new InvalidRecordException(field.getKey() + " must be a string");
+                }
+            }
+            return record;
+        }
+
+        //Next line without its terminator, or null at the end; an overlong line is skipped and rejected
+        private String readLine() throws InvalidRecordException, IOException {
+            StringBuilder line = new StringBuilder();
+            boolean tooLong = false;
+            int c;
+            while ((c = reader.read()) != -1 && c != '\n') {
+                if (line.length() < MAX_RECORD_CHARS) {
+                    line.append((char) c);
+                } else {
+                    tooLong = true;
+                }
+            }
+            if (c == -1 && line.length() == 0 && !tooLong) {
+                return null;
+            }
+            if (tooLong) {
+                throw new InvalidRecordException("record longer than " + MAX_RECORD_CHARS + " characters");
+            }
+            int end = line.length();
+            if (end > 0 && line.charAt(end - 1) == '\r') {
+                line.setLength(end - 1);
+            }
+            return line.toString();
+        }
+    }
+
+    //RFC 4180 CSV with a header row naming the columns (the export's header is accepted as is)
+    private static final class Csv extends ImportRecordReader {
+
+        private List<String> header;
+
+        Csv(Reader reader) {
+            super(reader);
+        }
+
+        @Override
+        protected Map<String, String> readRecord() throws InvalidRecordException, IOException {
+            if (header == null) {
+                header = readFields();
+                if (header == null) {
+                    return null;
+                }
+            }
+
+            List<String> fields;
+            do {
+                fields = readFields();
+                if (fields == null) {
+                    return null;
+                }
+            } while (fields.size() == 1 && fields.get(0).isEmpty()); // Blank line
+
+            if (fields.size() != header.size()) {
+                throw new InvalidRecordException("expected " + header.size() + " fields, found " + fields.size());
+            }
+            Map<String, String> record = new HashMap<>();
+            for (int i = 0; i < fields.size(); i++) {
+                record.put(header.get(i), fields.get(i).isEmpty() ? null : fields.get(i));
+            }
+            return record;
+        }
+
+        //Fields of the next record, or null at the end; quoted fields may hold separators, quotes and line breaks
+        private List<String> readFields() throws InvalidRecordException, IOException {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            int length = 0;
+            boolean quoted = false;
+            boolean tooLong = false;
+            int c = reader.read();
+            if (c == -1) {
+                return null;
+            }
+
+            while (c != -1) {
+                if (++length > MAX_RECORD_CHARS) {
+                    tooLong = true;
+                }
+                if (quoted) {
+                    if (c == '"') {
+                        reader.mark(1);
+                        int nextChar = reader.read();
+                        if (nextChar == '"') {
+                            if (!tooLong) {
+                                field.append('"'); // Escaped quote
+                            }
+                        } else {
+                            quoted = false;
+                            if (nextChar != -1) {
+                                reader.reset();
+                            }
+                        }
+                    } else if (!tooLong) {
+                        field.append((char) c);
+                    }
+                } else if (c == '"' && field.length() == 0) {
+                    quoted = true;
+                } else if (c == ',') {
+                    if (!tooLong) {
+                        fields.add(field.toString());
+                    }
+                    field.setLength(0);
+                } else if (c == '\n') {
+                    break;
+                } else if (c != '\r' && !tooLong) {
+                    field.append((char) c);
+                }
+                c = reader.read();
+            }
+
+            if (tooLong) {
+                throw new InvalidRecordException("record longer than " + MAX_RECORD_CHARS + " characters");
+            }
+            if (quoted) {
+                throw new InvalidRecordException("unterminated quoted field");
+            }
+            fields.add(field.toString());
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package coptic.user_api.services;
+
+//Thrown when the password hashing queue is full; controllers answer it with 503 right away
+public class PasswordHashingBusyException extends RuntimeException {
+
+    public PasswordHashingBusyException() {
+        super("Password hashing queue is full");
+    }
+}
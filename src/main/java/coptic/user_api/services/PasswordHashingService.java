@@ -0,0 +1,110 @@
+//Package where this class belongs
+package coptic.user_api.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs password hashing (BCrypt encode/matches) on its own bounded pool, off the Tomcat request threads.
+ * When the queue is full new work is refused immediately instead of queueing behind slow hashes.
+ */
+@Service
+public class PasswordHashingService {
+
+    //Fixed-size pool with a bounded queue; AbortPolicy makes a full queue throw instead of blocking the caller
+    private final ThreadPoolExecutor executor;
+
+    //Counters for reporting
+    private final LongAdder completedHashes = new LongAdder();
+    private final LongAdder totalHashNanos = new LongAdder();
+    private final LongAdder rejectedHashes = new LongAdder();
+
+    /**
+     * Creates the hashing pool
+     * @param threads Number of hashing threads; 0 means one per available CPU
+     * @param queueCapacity Maximum number of hashes waiting for a thread
+     */
+    public PasswordHashingService(@Value("${password.hashing.threads:0}") int threads,
+                                  @Value("${password.hashing.queue-capacity:64}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new HashingThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Schedules a hashing task on the hashing pool
+     * @param task The work to run (anything that calls the PasswordEncoder)
+     * @return A future completed on the hashing thread with the task's result
+     * @throws PasswordHashingBusyException If the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(() -> timed(task), executor);
+        } catch (RejectedExecutionException e) {
+            rejectedHashes.increment();
+            throw new PasswordHashingBusyException();
+        }
+    }
+
+    //Runs a task and records how long it took
+    private <T> T timed(Supplier<T> task) {
+        long start = System.nanoTime();
+        try {
+            return task.get();
+        } finally {
+            totalHashNanos.add(System.nanoTime() - start);
+            completedHashes.increment();
+        }
+    }
+
+    //STATS
+    //Hashes waiting for a thread
+    public int getQueueDepth() { return executor.getQueue().size(); }
+
+    //Hashes currently running
+    public int getActiveCount() { return executor.getActiveCount(); }
+
+    //Hashes finished since startup
+    public long getCompletedCount() { return completedHashes.sum(); }
+
+    //Hashes refused because the queue was full
+    public long getRejectedCount() { return rejectedHashes.sum(); }
+
+    //Total time spent hashing, in nanoseconds
+    public long getTotalHashNanos() { return totalHashNanos.sum(); }
+
+    //Mean time per hash in milliseconds (0 before the first hash)
+    public double getAverageHashMillis() {
+        long count = completedHashes.sum();
+        return count == 0 ? 0 : totalHashNanos.sum() / (count * 1_000_000.0);
+    }
+
+    //Let queued hashes finish on shutdown
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    //Names the hashing threads so they are easy to spot in thread dumps
+    private static final class HashingThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "password-hash-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
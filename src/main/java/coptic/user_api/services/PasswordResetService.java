@@ -3,79 +3,145 @@ package coptic.user_api.services;
 
 //Imports
 import coptic.user_api.models.User;
-import coptic.user_api.models.PasswordResetToken;
-import coptic.user_api.repositories.PasswordResetTokenRepository;
 import coptic.user_api.repositories.UserRepository;
+import coptic.user_api.reset.ResetTokenStore;
+import coptic.user_api.security.TokenDigest;
+import coptic.user_api.security.TokenVersionCache;
+import coptic.user_api.security.UserCache;
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.cache.CacheRegion;
+import coptic.user_api.outbox.Outbox;
+import coptic.user_api.outbox.OutboxMessage;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.LocalDateTime;
+import java.time.Duration;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 public class PasswordResetService {
 
-    //Repositories
-    private final PasswordResetTokenRepository tokenRepo;
+    //How long a reset link stays usable
+    static final Duration TOKEN_TTL = Duration.ofMinutes(30);
+
+    //Live reset tokens (database table or memory, see password-reset.store)
+    private final ResetTokenStore tokenStore;
+
+    //Repository
     private final UserRepository userRepo;
 
     //Password encoder for secure hashing
     private final PasswordEncoder passwordEncoder;
 
-    //Constructor for dependency injection of PasswordResetTokenRepository, UserRepository, and PasswordEncoder
+    //Token version cache, evicted so tokens issued before the reset stop working
+    private final TokenVersionCache tokenVersionCache;
+
+    //Hashing pool, so the new password is not hashed on a request thread
+    private final PasswordHashingService passwordHashingService;
+
+    //User cache, invalidated so the old password hash is not served after the reset
+    private final UserCache userCache;
+
+    //Invalidation bus, so the other nodes drop the user and their token version too
+    private final CacheInvalidationBus invalidationBus;
+
+    //Outbox, so the reset email is sent in the background rather than on the request thread
+    private final Outbox outbox;
+
+    //Transaction template, so the new password and its invalidation event commit or roll back together
+    private final TransactionTemplate transactionTemplate;
+
+    //Spring Boot's task executor, where the update runs once the hash is ready (the hashing pool only hashes)
+    private final Executor ioExecutor;
+
+    //Constructor for dependency injection of the token store, repository, PasswordEncoder, caches, PasswordHashingService,
+    //the invalidation bus, the outbox, the transaction template and the task executor
     @Autowired
-    public PasswordResetService(PasswordResetTokenRepository tokenRepo, UserRepository userRepo, PasswordEncoder passwordEncoder) {
-        this.tokenRepo = tokenRepo;
+    public PasswordResetService(ResetTokenStore tokenStore, UserRepository userRepo, PasswordEncoder passwordEncoder,
+                                TokenVersionCache tokenVersionCache, PasswordHashingService passwordHashingService,
+                                UserCache userCache, CacheInvalidationBus invalidationBus, Outbox outbox,
+                                TransactionTemplate transactionTemplate,
+                                @Qualifier("applicationTaskExecutor") Executor ioExecutor) {
+        this.tokenStore = tokenStore;
         this.userRepo = userRepo;
         this.passwordEncoder = passwordEncoder;
+        this.tokenVersionCache = tokenVersionCache;
+        this.passwordHashingService = passwordHashingService;
+        this.userCache = userCache;
+        this.invalidationBus = invalidationBus;
+        this.outbox = outbox;
+        this.transactionTemplate = transactionTemplate;
+        this.ioExecutor = ioExecutor;
     }
 
     /**
-     * Generate a token and "send" email
+     * Generate a token and queue the reset email
+     * The token replaces any previous one; only its digest is stored. The email goes into the outbox in the same
+     * transaction as the token, and OutboxWorker delivers it later; the token only ever leaves through that email
      * @param email User's email
-     * @return The reset link (for mock purposes)
+     * @return true if the email belongs to a user (and a reset email was queued), false otherwise
      */
-    public String generateResetToken(String email) {
+    @Transactional
+    public boolean generateResetToken(String email) {
         User user = userRepo.findByEmail(email);
-        if (user == null) return null;
-
-        //Clean old tokens
-        tokenRepo.deleteByUser(user);
+        if (user == null) return false;
 
         //Generate new token
         String token = UUID.randomUUID().toString();
-        LocalDateTime expiration = LocalDateTime.now().plusMinutes(30);
+        tokenStore.put(user.getId(), TokenDigest.sha256Bytes(token), TOKEN_TTL);
 
-        PasswordResetToken resetToken = new PasswordResetToken(token, user, expiration);
-        tokenRepo.save(resetToken);
+        //The sender only needs the token to render the link; the row is deleted once delivered
+        outbox.enqueue(OutboxMessage.PASSWORD_RESET_EMAIL, user.getEmail(), token);
 
-        //Placeholder
-        return "http://localhost:3000/reset-password?token=" + token;
+        return true;
     }
 
     /**
-     * Validate token and update password
+     * Validate token and update password; the new password is hashed on the hashing pool, the rest runs on the task executor
+     * The token is consumed once the hash is ready, so a link works only once even when used
+     * twice concurrently; the user row is then updated with one statement, in the same transaction as the event
+     * telling the other nodes (if publishing fails, nothing is changed)
      * @param token Token received
      * @param newPassword New raw password
-     * @return true if success, false if invalid or expired
+     * @return Future of true if success, false if invalid, expired or already used
+     * @throws PasswordHashingBusyException If the hashing queue is full
      */
-    public boolean resetPassword(String token, String newPassword) {
-        PasswordResetToken resetToken = tokenRepo.findByToken(token);
-
-        if (resetToken == null || resetToken.getExpiration().isBefore(LocalDateTime.now())) {
-            return false;
+    public CompletableFuture<Boolean> resetPassword(String token, String newPassword) {
+        if (token == null) {
+            return CompletableFuture.completedFuture(false);
         }
+        byte[] tokenHash = TokenDigest.sha256Bytes(token);
+        Integer userId = tokenStore.findUserId(tokenHash);
 
-        User user = resetToken.getUser();
-        user.setPassword(passwordEncoder.encode(newPassword)); // secure hash
-
-        userRepo.save(user);
-
-        //Cleanup
-        tokenRepo.delete(resetToken);
+        if (userId == null) {
+            return CompletableFuture.completedFuture(false);
+        }
 
-        return true;
+        return passwordHashingService.submit(() -> passwordEncoder.encode(newPassword)) // secure hash
+                .thenApplyAsync(hash -> {
+                    Boolean reset = transactionTemplate.execute(status -> {
+                        if (!tokenStore.consume(tokenHash)) {
+                            return false; //used by a concurrent reset, or expired while hashing
+                        }
+
+                        //New hash and token version + 1 (revokes existing tokens); pg_notify is delivered on commit
+                        userRepo.resetPassword(userId, hash);
+                        invalidationBus.publish(CacheRegion.USER, userId);
+                        return true;
+                    });
+                    if (!Boolean.TRUE.equals(reset)) {
+                        return false;
+                    }
+                    tokenVersionCache.evict(userId);
+                    userCache.invalidate(userId);
+                    return true;
+                }, ioExecutor);
     }
 }
@@ -0,0 +1,260 @@
+//Package
+package coptic.user_api.services;
+
+//Imports
+import coptic.user_api.dto.AuthTokens;
+import coptic.user_api.models.User;
+import coptic.user_api.repositories.UserRepository;
+import coptic.user_api.security.JWT;
+import coptic.user_api.security.TokenDigest;
+import coptic.user_api.security.TokenRevocationList;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Issues access/refresh token pairs and rotates them (refresh_tokens, V8).
+ * A refresh token is 32 random bytes, stored only as its SHA-256 digest and usable once: a refresh marks it used and
+ * issues its successor in the same family. A used or revoked token presented again means it was copied, so the whole
+ * family is revoked, including the access tokens issued with it (TokenRevocationList). Tokens issued before a password
+ * change or reset (older token version) are refused the same way.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int TOKEN_BYTES = 32;
+
+    //Most purge statements per run; a larger backlog is finished by later runs
+    private static final int MAX_PURGE_BATCHES = 100;
+
+    private static final String PURGE_SQL =
+            "DELETE FROM refresh_tokens WHERE id IN (SELECT id FROM refresh_tokens "
+            + "WHERE expires_at < now() LIMIT ? FOR UPDATE SKIP LOCKED)";
+
+    //Columns of a refresh token row a refresh needs
+    private static final class Row {
+        private final long id;
+        private final int userId;
+        private final UUID familyId;
+        private final int tokenVersion;
+        private final Instant expiresAt;
+        private final boolean spent;
+
+        private Row(long id, int userId, UUID familyId, int tokenVersion, Instant expiresAt, boolean spent) {
+            this.id = id;
+            this.userId = userId;
+            this.familyId = familyId;
+            this.tokenVersion = tokenVersion;
+            this.expiresAt = expiresAt;
+            this.spent = spent;
+        }
+    }
+
+    //Access token issued with a refresh token: its jti and issue time
+    private static final class IssuedAccess {
+        private final UUID jti;
+        private final Instant issuedAt;
+
+        private IssuedAccess(UUID jti, Instant issuedAt) {
+            this.jti = jti;
+            this.issuedAt = issuedAt;
+        }
+    }
+
+    private static final RowMapper<Row> ROW = (rs, rowNum) -> new Row(
+            rs.getLong("id"), rs.getInt("user_id"), rs.getObject("family_id", UUID.class), rs.getInt("token_version"),
+            rs.getTimestamp("expires_at").toInstant(),
+            rs.getTimestamp("used_at") != null || rs.getTimestamp("revoked_at") != null);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JWT jwt;
+    private final UserRepository userRepo;
+    private final TokenRevocationList revocationList;
+
+    //Lifetime of each refresh token (a session stays alive as long as it is refreshed within it)
+    private final Duration refreshTokenTtl;
+
+    //Expired rows deleted per purge statement
+    private final int purgeBatchSize;
+
+    private final LongAdder issued = new LongAdder();
+    private final LongAdder rotated = new LongAdder();
+    private final LongAdder reuseDetected = new LongAdder();
+
+    /**
+     * Creates the service
+     * @param jdbcTemplate Access to refresh_tokens
+     * @param jwt Signs access tokens
+     * @param userRepo Current email and token version of users
+     * @param revocationList Where access tokens of revoked families go
+     * @param refreshTokenTtlDays Lifetime of each refresh token
+     * @param purgeBatchSize Expired rows deleted per purge statement
+     */
+    public RefreshTokenService(JdbcTemplate jdbcTemplate, JWT jwt, UserRepository userRepo,
+                               TokenRevocationList revocationList,
+                               @Value("${jwt.refresh-token.ttl-days:30}") long refreshTokenTtlDays,
+                               @Value("${jwt.refresh-token.purge-batch-size:1000}") int purgeBatchSize) {
+        if (refreshTokenTtlDays < 1 || purgeBatchSize < 1) {
+            throw new IllegalArgumentException("Refresh token lifetime and purge batch size must be positive");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.jwt = jwt;
+        this.userRepo = userRepo;
+        this.revocationList = revocationList;
+        this.refreshTokenTtl = Duration.ofDays(refreshTokenTtlDays);
+        this.purgeBatchSize = purgeBatchSize;
+    }
+
+    /**
+     * Starts a session: issues an access token and the first refresh token of a new family
+     * @param user The user who signed up or logged in
+     * @return The token pair
+     */
+    public AuthTokens issue(User user) {
+        return issue(user, UUID.randomUUID());
+    }
+
+    /**
+     * Exchanges a refresh token for a new pair; the presented token can not be used again
+     * @param refreshToken The raw refresh token
+     * @return The new pair, or null if the token is unknown, expired, already used, revoked or outdated
+     */
+    @Transactional
+    public AuthTokens refresh(String refreshToken) {
+        Row row = lockRow(refreshToken);
+        if (row == null) {
+            return null;
+        }
+        if (row.spent) {
+            //Someone else holds a copy of this token (or of its successor): end the session for both
+            reuseDetected.increment();
+            log.warn("Refresh token reused for user {}, revoking its session", row.userId);
+            revokeFamily(row.familyId);
+            return null;
+        }
+        if (!row.expiresAt.isAfter(Instant.now())) {
+            return null;
+        }
+
+        User user = userRepo.findById(row.userId).orElse(null);
+        if (user == null || user.getTokenVersion() != row.tokenVersion) {
+            //Password changed or reset since the session started
+            revokeFamily(row.familyId);
+            return null;
+        }
+
+        jdbcTemplate.update("UPDATE refresh_tokens SET used_at = now() WHERE id = ?", row.id);
+        rotated.increment();
+        return issue(user, row.familyId);
+    }
+
+    /**
+     * Ends a session: revokes the refresh token's family and the access tokens issued with it
+     * @param refreshToken The raw refresh token
+     * @return True if the token was known
+     */
+    @Transactional
+    public boolean logout(String refreshToken) {
+        Row row = lockRow(refreshToken);
+        if (row == null) {
+            return false;
+        }
+        revokeFamily(row.familyId);
+        return true;
+    }
+
+    //Scheduled purge of expired refresh tokens
+    @Scheduled(initialDelayString = "${jwt.refresh-token.purge-initial-delay-millis:60000}",
+               fixedDelayString = "${jwt.refresh-token.purge-interval-millis:600000}")
+    public void scheduledPurge() {
+        purgeExpired();
+    }
+
+    /**
+     * Deletes expired refresh tokens batch by batch, until a batch comes back short
+     * @return Number of tokens deleted
+     */
+    public int purgeExpired() {
+        int total = 0;
+        for (int i = 0; i < MAX_PURGE_BATCHES; i++) {
+            int deleted = jdbcTemplate.update(PURGE_SQL, purgeBatchSize);
+            total += deleted;
+            if (deleted < purgeBatchSize) {
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Deleted {} expired refresh tokens", total);
+        }
+        return total;
+    }
+
+    //Issue an access token and a refresh token in the given family
+    private AuthTokens issue(User user, UUID familyId) {
+        UUID jti = UUID.randomUUID();
+        Instant now = Instant.now();
+        String accessToken = jwt.generateToken(user, jti, now);
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        jdbcTemplate.update("INSERT INTO refresh_tokens (token_hash, user_id, family_id, token_version, access_jti, issued_at, expires_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?)",
+                TokenDigest.sha256Bytes(refreshToken), user.getId(), familyId, user.getTokenVersion(), jti,
+                Timestamp.from(now), Timestamp.from(now.plus(refreshTokenTtl)));
+        issued.increment();
+        return new AuthTokens(accessToken, refreshToken);
+    }
+
+    //Look up a refresh token by digest and lock its row against a concurrent refresh
+    private Row lockRow(String refreshToken) {
+        if (refreshToken == null || refreshToken.isBlank()) {
+            return null;
+        }
+        List<Row> rows = jdbcTemplate.query(
+                "SELECT id, user_id, family_id, token_version, expires_at, used_at, revoked_at FROM refresh_tokens "
+                + "WHERE token_hash = ? FOR UPDATE", ROW, TokenDigest.sha256Bytes(refreshToken));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    //Revoke every token of a family; access tokens issued with it that have not expired yet go to the revocation list
+    private void revokeFamily(UUID familyId) {
+        Duration accessTtl = jwt.getAccessTokenTtl();
+        Instant now = Instant.now();
+        List<IssuedAccess> revoked = jdbcTemplate.query(
+                "UPDATE refresh_tokens SET revoked_at = now() WHERE family_id = ? AND revoked_at IS NULL "
+                + "RETURNING access_jti, issued_at",
+                (rs, rowNum) -> new IssuedAccess(rs.getObject("access_jti", UUID.class), rs.getTimestamp("issued_at").toInstant()),
+                familyId);
+        for (IssuedAccess access : revoked) {
+            Instant expiresAt = access.issuedAt.plus(accessTtl);
+            if (expiresAt.isAfter(now)) {
+                revocationList.revoke(access.jti, expiresAt);
+            }
+        }
+    }
+
+    //STATISTICS (since startup)
+    public long getIssuedCount() { return issued.sum(); }
+    public long getRotatedCount() { return rotated.sum(); }
+    public long getReuseDetectedCount() { return reuseDetected.sum(); }
+}
@@ -0,0 +1,85 @@
+package coptic.user_api.services;
+
+import coptic.user_api.reset.ResetTokenStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Periodically deletes expired password reset tokens, which would otherwise stay forever when a link is never used.
+ * Rows go in bounded batches, each its own short transaction, so a backlog of millions never becomes one huge delete
+ * holding locks and bloating WAL; a run stops after a fixed number of batches and the next run carries on.
+ * Batches skip rows locked by others, so sweepers on several nodes can run at the same time.
+ * With the in-memory token store, entries expire on their own and a run only lets the cache reclaim them.
+ */
+@Component
+public class ResetTokenSweeper {
+
+    private static final Logger log = LoggerFactory.getLogger(ResetTokenSweeper.class);
+
+    private final ResetTokenStore tokenStore;
+
+    private final boolean enabled;
+
+    //Rows per delete, and most deletes per run
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    private final LongAdder swept = new LongAdder();
+
+    /**
+     * Creates the sweeper
+     * @param tokenStore Where tokens are kept
+     * @param enabled Whether scheduled runs do anything
+     * @param batchSize Rows deleted per statement
+     * @param maxBatchesPerRun Most statements per run
+     */
+    public ResetTokenSweeper(ResetTokenStore tokenStore,
+                             @Value("${password-reset.sweeper.enabled:true}") boolean enabled,
+                             @Value("${password-reset.sweeper.batch-size:1000}") int batchSize,
+                             @Value("${password-reset.sweeper.max-batches-per-run:100}") int maxBatchesPerRun) {
+        if (batchSize < 1 || maxBatchesPerRun < 1) {
+            throw new IllegalArgumentException("Sweeper batch size and batches per run must be positive");
+        }
+        this.tokenStore = tokenStore;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    //Scheduled run
+    @Scheduled(initialDelayString = "${password-reset.sweeper.initial-delay-millis:60000}",
+               fixedDelayString = "${password-reset.sweeper.interval-millis:600000}")
+    public void sweep() {
+        if (enabled) {
+            sweepExpired();
+        }
+    }
+
+    /**
+     * Deletes expired tokens batch by batch, until a batch comes back short
+     * @return Number of tokens deleted
+     */
+    public int sweepExpired() {
+        int total = 0;
+        for (int i = 0; i < maxBatchesPerRun; i++) {
+            int deleted = tokenStore.deleteExpired(batchSize);
+            total += deleted;
+            if (deleted < batchSize) {
+                break;
+            }
+        }
+        swept.add(total);
+        if (total > 0) {
+            log.info("Deleted {} expired password reset tokens", total);
+        }
+        return total;
+    }
+
+    //STATISTICS (since startup)
+    public long getSweptCount() { return swept.sum(); }
+}
@@ -7,8 +7,24 @@ import coptic.user_api.models.User;
 //Import User repository
 import coptic.user_api.repositories.UserRepository;
 
+//Import token version cache and user cache (invalidated when a password changes)
+import coptic.user_api.security.TokenVersionCache;
+import coptic.user_api.security.UserCache;
+
+//Tells the other nodes to drop their cached copy of a changed user
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.cache.CacheRegion;
+
 //Automated dependency injection
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+//Password changes commit together with their invalidation event
+import org.springframework.transaction.support.TransactionTemplate;
+
+//Logging
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 //Import to state that it's a Service
 import org.springframework.stereotype.Service;
@@ -16,21 +32,75 @@ import org.springframework.stereotype.Service;
 //Import for password hashing
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+//Timer password.hash, tagged by operation (encode, check)
+import io.micrometer.core.instrument.MeterRegistry;
+
+//Async results for work done on the hashing pool
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Service
 public class UserService {
 
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
+    //Outcome of a password check done on the hashing pool: whether it matched, and a fresh hash to store if the old
+    //one is outdated (null otherwise)
+    private static final class PasswordCheck {
+        private final boolean matches;
+        private final String upgradedHash;
+
+        private PasswordCheck(boolean matches, String upgradedHash) {
+            this.matches = matches;
+            this.upgradedHash = upgradedHash;
+        }
+    }
+
     //Inject UserRepository, for database operations
     private final UserRepository userRepository;
 
     //Inject password encoder (BCrypt)
     private final PasswordEncoder passwordEncoder;
 
+    //Inject token version cache (so revoked tokens are rejected right away on this node)
+    private final TokenVersionCache tokenVersionCache;
+
+    //Inject hashing pool (keeps BCrypt off the request threads)
+    private final PasswordHashingService passwordHashingService;
+
+    //Inject user cache (answers repeated lookups from memory)
+    private final UserCache userCache;
+
+    //Inject invalidation bus (the other nodes' user and token version caches)
+    private final CacheInvalidationBus invalidationBus;
+
+    //Inject meter registry (how long hashing takes, apart from queueing on the pool)
+    private final MeterRegistry meterRegistry;
+
+    //Inject transaction template (password update and its invalidation event commit or roll back together)
+    private final TransactionTemplate transactionTemplate;
+
+    //Inject Spring Boot's task executor: database work that follows a hash runs there, so the (small, CPU-sized)
+    //hashing pool never waits on a connection
+    private final Executor ioExecutor;
+
     //Constructor
     //Pass UserRepository into UserService; allowing to use userRepository without creating it (new userRepository())
     @Autowired
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, TokenVersionCache tokenVersionCache,
+                       PasswordHashingService passwordHashingService, UserCache userCache,
+                       CacheInvalidationBus invalidationBus, MeterRegistry meterRegistry,
+                       TransactionTemplate transactionTemplate,
+                       @Qualifier("applicationTaskExecutor") Executor ioExecutor) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
+        this.tokenVersionCache = tokenVersionCache;
+        this.passwordHashingService = passwordHashingService;
+        this.userCache = userCache;
+        this.invalidationBus = invalidationBus;
+        this.meterRegistry = meterRegistry;
+        this.transactionTemplate = transactionTemplate;
+        this.ioExecutor = ioExecutor;
     }
 
     /**
@@ -40,17 +110,81 @@ public class UserService {
      */
     public User createUser(User user) {
         //Hash the raw password before saving
-        user.setPassword(passwordEncoder.encode(user.getPassword()));
-        return userRepository.save(user);
+        user.setPassword(encodePassword(user.getPassword()));
+        User saved = userRepository.save(user);
+        userCache.invalidate(saved.getEmail());
+        return saved;
     }
 
     /**
-     * Find a user by email (used for login)
+     * Create a new user with the password hashed on the hashing pool; the user is saved on the task executor
+     * @param user The user object to save (holding the raw password)
+     * @return Future of the saved User object
+     * @throws PasswordHashingBusyException If the hashing queue is full
+     */
+    public CompletableFuture<User> createUserAsync(User user) {
+        String rawPassword = user.getPassword();
+        return passwordHashingService.submit(() -> encodePassword(rawPassword))
+                .thenApplyAsync(hash -> {
+                    user.setPassword(hash);
+                    User saved = userRepository.save(user);
+                    userCache.invalidate(saved.getEmail());
+                    return saved;
+                }, ioExecutor);
+    }
+
+    /**
+     * Change a user's password and invalidate every token issued before the change
+     * The row is updated with one statement (new hash, token version + 1), never by saving the possibly outdated
+     * copy the caller holds, so a version bump made meanwhile elsewhere is not lost. The update and the event telling
+     * the other nodes commit in one transaction: if publishing fails, the password is not changed either
+     * @param user The user whose password changes
+     * @param rawPassword The new plaintext password
+     * @return true if the password was changed, false if the user no longer exists
+     */
+    public boolean updatePassword(User user, String rawPassword) {
+        return storePassword(user.getId(), encodePassword(rawPassword));
+    }
+
+    /**
+     * Same as updatePassword, with the hashing done on the hashing pool and the update on the task executor
+     * @param user The user whose password changes
+     * @param rawPassword The new plaintext password
+     * @return Future of true if the password was changed, false if the user no longer exists
+     * @throws PasswordHashingBusyException If the hashing queue is full
+     */
+    public CompletableFuture<Boolean> updatePasswordAsync(User user, String rawPassword) {
+        int userId = user.getId();
+        return passwordHashingService.submit(() -> encodePassword(rawPassword))
+                .thenApplyAsync(hash -> storePassword(userId, hash), ioExecutor);
+    }
+
+    //Store a new password hash and bump the token version, then drop the cached row and version
+    private boolean storePassword(int userId, String hash) {
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                if (userRepository.resetPassword(userId, hash) == 0) {
+                    return false;
+                }
+                //pg_notify on the same connection: delivered on commit, dropped on rollback
+                invalidationBus.publish(CacheRegion.USER, userId);
+                return true;
+            }));
+        } finally {
+            //After commit (or rollback): drop this node's cached row and version whether or not the update went through
+            tokenVersionCache.evict(userId);
+            userCache.invalidate(userId);
+        }
+    }
+
+    /**
+     * Find a user by email (used for login and by every endpoint that takes an email)
+     * Served from the user cache when possible; the returned user is the caller's own copy
      * @param email The email to search for
      * @return The User object if found, otherwise null
      */
     public User findUserByEmail(String email) {
-        return userRepository.findByEmail(email);
+        return userCache.findByEmail(email);
     }
 
     /**
@@ -69,7 +203,69 @@ public class UserService {
      * @return true if they match, false otherwise
      */
     public boolean checkPassword(String rawPassword, String storedPassword) {
-        return passwordEncoder.matches(rawPassword, storedPassword);
+        return meterRegistry.timer("password.hash", "operation", "check")
+                .record(() -> passwordEncoder.matches(rawPassword, storedPassword));
+    }
+
+    /**
+     * Check a user's password and, if it matches but the stored hash uses an outdated algorithm or cost, store a fresh hash
+     * @param user The user logging in
+     * @param rawPassword The plaintext password input
+     * @return true if the password matches, false otherwise
+     */
+    public boolean checkPassword(User user, String rawPassword) {
+        return finishCheck(user.getId(), user.getPassword(), hashCheck(rawPassword, user.getPassword()));
+    }
+
+    /**
+     * Same as checkPassword(User, String), with the hashing done on the hashing pool; the outdated hash (if any) is
+     * replaced on the task executor, which also completes the future, so callers may continue with database work
+     * @param user The user logging in
+     * @param rawPassword The plaintext password input
+     * @return Future of true if the password matches, false otherwise
+     * @throws PasswordHashingBusyException If the hashing queue is full
+     */
+    public CompletableFuture<Boolean> checkPasswordAsync(User user, String rawPassword) {
+        int userId = user.getId();
+        String storedPassword = user.getPassword();
+        return passwordHashingService.submit(() -> hashCheck(rawPassword, storedPassword))
+                .thenApplyAsync(check -> finishCheck(userId, storedPassword, check), ioExecutor);
+    }
+
+    //CPU part of a password check: the match, and a fresh hash when the stored one is outdated
+    private PasswordCheck hashCheck(String rawPassword, String storedPassword) {
+        if (!checkPassword(rawPassword, storedPassword)) {
+            return new PasswordCheck(false, null);
+        }
+        String upgraded = passwordEncoder.upgradeEncoding(storedPassword) ? encodePassword(rawPassword) : null;
+        return new PasswordCheck(true, upgraded);
+    }
+
+    //Database part of a password check: store the fresh hash, if any
+    private boolean finishCheck(int userId, String storedPassword, PasswordCheck check) {
+        //Transparent rehash; the conditional update leaves a concurrently changed password alone
+        if (check.upgradedHash != null && userRepository.updatePasswordHash(userId, storedPassword, check.upgradedHash) == 1) {
+            userCache.invalidate(userId);
+            try {
+                invalidationBus.publish(CacheRegion.USER, userId);
+            } catch (RuntimeException e) {
+                //The login succeeded and the new hash is committed; other nodes' copies still verify the same
+                //password, and they pick up the new hash after their cache TTL
+                log.warn("Could not publish hash upgrade of user {}: {}", userId, e.toString());
+            }
+        }
+        return check.matches;
+    }
+
+    /**
+     * Same as checkPassword, run on the hashing pool
+     * @param rawPassword The plaintext password input
+     * @param storedPassword The hashed password from the database
+     * @return Future of true if they match, false otherwise
+     * @throws PasswordHashingBusyException If the hashing queue is full
+     */
+    public CompletableFuture<Boolean> checkPasswordAsync(String rawPassword, String storedPassword) {
+        return passwordHashingService.submit(() -> checkPassword(rawPassword, storedPassword));
     }
 
     /**
@@ -78,6 +274,7 @@ public class UserService {
      * @return The hashed version of the password
      */
     public String encodePassword(String rawPassword) {
-        return passwordEncoder.encode(rawPassword);
+        return meterRegistry.timer("password.hash", "operation", "encode")
+                .record(() -> passwordEncoder.encode(rawPassword));
     }
 }
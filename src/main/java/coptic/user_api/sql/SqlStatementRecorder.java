@@ -0,0 +1,215 @@
+package coptic.user_api.sql;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.ttddyy.dsproxy.ExecutionInfo;
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.listener.QueryExecutionListener;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Inspects every JDBC statement on its way through the DataSource proxy (SqlInspectionConfig): times it, counts its
+ * bind parameters and adds both to the totals of its fingerprint, the SQL with literals and IN lists folded away.
+ * Statements over the slow threshold are logged at WARN and a random sample of the rest at INFO, through the bounded
+ * async appender set up in logback-spring.xml. The SQL is logged with its placeholders, never the bound values
+ * (password hashes, reset tokens).
+ * The number of fingerprints kept is bounded; once full, statements of a new shape are counted under OTHER.
+ */
+@Component
+public class SqlStatementRecorder implements QueryExecutionListener {
+
+    private static final Logger log = LoggerFactory.getLogger(SqlStatementRecorder.class);
+
+    //Fingerprint that takes every new statement shape once the table is full
+    static final String OTHER = "(other)";
+
+    //Fingerprints are cut to this length; a longer statement is recognizable by its start
+    static final int MAX_FINGERPRINT_LENGTH = 1000;
+
+    //Where beforeQuery leaves the start time for afterQuery (the proxy's own elapsed time is in whole milliseconds)
+    private static final String START_NANOS = "sql.start-nanos";
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w$.])\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    //Running totals of one fingerprint
+    private static final class StatementStats {
+        private final String fingerprint;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder slow = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final LongAdder binds = new LongAdder();
+
+        private StatementStats(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private void add(long nanos, int bindCount, boolean isSlow, boolean isFailed) {
+            count.increment();
+            totalNanos.add(nanos);
+            binds.add(bindCount);
+            if (nanos > maxNanos.get()) {
+                maxNanos.accumulateAndGet(nanos, Math::max);
+            }
+            if (isSlow) {
+                slow.increment();
+            }
+            if (isFailed) {
+                failed.increment();
+            }
+        }
+
+        private StatementSummary summary() {
+            return new StatementSummary(fingerprint, count.sum(), slow.sum(), failed.sum(),
+                    totalNanos.sum(), maxNanos.get(), binds.sum());
+        }
+    }
+
+    private final long slowThresholdNanos;
+    private final double sampleRate;
+    private final int maxFingerprints;
+    private final DoubleSupplier random;
+
+    //Raw SQL -> fingerprint; the application sends the same few strings over and over, so each is normalized once
+    private final Cache<String, String> fingerprints;
+
+    //Fingerprint -> totals
+    private final ConcurrentHashMap<String, StatementStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Creates the recorder
+     * @param slowThresholdMillis Statements taking at least this long are logged as slow
+     * @param sampleRate Share of the other statements that is logged (0 = none, 1 = all)
+     * @param maxFingerprints Most distinct statement shapes tracked
+     */
+    @Autowired
+    public SqlStatementRecorder(@Value("${sql.inspection.slow-threshold-millis:200}") long slowThresholdMillis,
+                                @Value("${sql.inspection.sample-rate:0}") double sampleRate,
+                                @Value("${sql.inspection.max-fingerprints:500}") int maxFingerprints) {
+        this(slowThresholdMillis, sampleRate, maxFingerprints, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    SqlStatementRecorder(long slowThresholdMillis, double sampleRate, int maxFingerprints, DoubleSupplier random) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("SQL sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+        this.sampleRate = sampleRate;
+        this.maxFingerprints = maxFingerprints;
+        this.random = random;
+        this.fingerprints = Caffeine.newBuilder().maximumSize(4L * maxFingerprints).build();
+    }
+
+    @Override
+    public void beforeQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        execInfo.addCustomValue(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void afterQuery(ExecutionInfo execInfo, List<QueryInfo> queryInfoList) {
+        Long start = execInfo.getCustomValue(START_NANOS, Long.class);
+        long nanos = start != null ? System.nanoTime() - start : TimeUnit.MILLISECONDS.toNanos(execInfo.getElapsedTime());
+        //A plain Statement batch runs several statements in one call; each gets an equal share of the time
+        long share = nanos / Math.max(1, queryInfoList.size());
+        for (QueryInfo query : queryInfoList) {
+            record(query.getQuery(), share, bindCount(query), !execInfo.isSuccess());
+        }
+    }
+
+    /**
+     * Adds one execution to its fingerprint's totals and logs it if slow or sampled
+     * @param sql The statement as sent to the driver
+     * @param nanos How long it took
+     * @param binds How many parameters were bound
+     * @param failed Whether it threw
+     */
+    void record(String sql, long nanos, int binds, boolean failed) {
+        boolean slow = nanos >= slowThresholdNanos;
+        statsFor(fingerprints.get(sql, SqlStatementRecorder::fingerprint)).add(nanos, binds, slow, failed);
+
+        if (slow) {
+            log.warn("Slow SQL: {} ms, {} binds{}: {}", TimeUnit.NANOSECONDS.toMillis(nanos), binds, failed ? ", failed" : "", sql);
+        } else if (sampleRate > 0 && log.isInfoEnabled() && random.getAsDouble() < sampleRate) {
+            log.info("SQL: {} ms, {} binds{}: {}", TimeUnit.NANOSECONDS.toMillis(nanos), binds, failed ? ", failed" : "", sql);
+        }
+    }
+
+    //Totals of a fingerprint, or of OTHER when no room is left for a new one (the bound may be passed by a few under races)
+    private StatementStats statsFor(String fingerprint) {
+        StatementStats existing = stats.get(fingerprint);
+        if (existing != null) {
+            return existing;
+        }
+        String key = stats.size() < maxFingerprints ? fingerprint : OTHER;
+        return stats.computeIfAbsent(key, StatementStats::new);
+    }
+
+    /**
+     * The fingerprints that took the most execution time in total
+     * @param limit How many to return
+     * @return Their totals, most expensive first
+     */
+    public List<StatementSummary> top(int limit) {
+        return stats.values().stream()
+                .map(StatementStats::summary)
+                .sorted(Comparator.comparingLong(StatementSummary::totalNanos).reversed())
+                .limit(Math.max(0, limit))
+                .toList();
+    }
+
+    //Forgets all totals (tests only; the HTTP report is read-only)
+    void reset() {
+        stats.clear();
+    }
+
+    //STATISTICS
+    public long getSlowThresholdMillis() { return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos); }
+    public double getSampleRate() { return sampleRate; }
+    public int getFingerprintCount() { return stats.size(); }
+    public long getStatementCount() { return stats.values().stream().mapToLong(s -> s.count.sum()).sum(); }
+
+    //Bind parameters across all rows of the execution (one row unless batched)
+    private static int bindCount(QueryInfo query) {
+        int binds = 0;
+        for (List<ParameterSetOperation> row : query.getParametersList()) {
+            binds += row.size();
+        }
+        return binds;
+    }
+
+    /**
+     * Normalizes SQL so statements that differ only in literal values share one fingerprint:
+     * string and number literals become ?, IN lists of any length become "in (?)", whitespace collapses to one space
+     * @param sql The statement
+     * @return Its fingerprint
+     */
+    static String fingerprint(String sql) {
+        if (sql == null) {
+            return "";
+        }
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = IN_LIST.matcher(normalized).replaceAll("in (?)");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        return normalized.length() > MAX_FINGERPRINT_LENGTH ? normalized.substring(0, MAX_FINGERPRINT_LENGTH) : normalized;
+    }
+}
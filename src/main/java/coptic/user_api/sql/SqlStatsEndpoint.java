@@ -0,0 +1,50 @@
+package coptic.user_api.sql;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Top-N statement report at /actuator/sqlstats: the fingerprints with the most total execution time, with their counts,
+ * mean and max latency and mean bind count. Read-only: totals are kept since startup. It is only served on the internal
+ * management port (management.server.port), never on the API port (SecurityConfig).
+ */
+@Component
+@Endpoint(id = "sqlstats")
+public class SqlStatsEndpoint {
+
+    private final SqlStatementRecorder recorder;
+
+    //Fingerprints listed when the request does not say
+    private final int reportSize;
+
+    /**
+     * Creates the endpoint
+     * @param recorder Where the totals are kept
+     * @param reportSize Default number of fingerprints listed
+     */
+    public SqlStatsEndpoint(SqlStatementRecorder recorder, @Value("${sql.inspection.report-size:20}") int reportSize) {
+        this.recorder = recorder;
+        this.reportSize = reportSize;
+    }
+
+    /**
+     * Reports the most expensive statements
+     * @param limit How many fingerprints to list (optional)
+     * @return Overall counts and the top fingerprints, most total time first
+     */
+    @ReadOperation
+    public Map<String, Object> report(@Nullable Integer limit) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("statements", recorder.getStatementCount());
+        report.put("fingerprints", recorder.getFingerprintCount());
+        report.put("slowThresholdMillis", recorder.getSlowThresholdMillis());
+        report.put("top", recorder.top(limit != null ? limit : reportSize));
+        return report;
+    }
+}
@@ -0,0 +1,53 @@
+package coptic.user_api.sql;
+
+//Totals of one statement fingerprint since startup, as read from /actuator/sqlstats
+public class StatementSummary {
+
+    //The SQL with literals replaced by ? and IN lists folded to one placeholder
+    private final String fingerprint;
+
+    //Executions, and how many of them were slow or failed
+    private final long count;
+    private final long slowCount;
+    private final long failedCount;
+
+    //Time spent executing, in nanoseconds: all executions together, and the longest one
+    private final long totalNanos;
+    private final long maxNanos;
+
+    //Bind parameters set across all executions (a batch counts each of its rows)
+    private final long binds;
+
+    /**
+     * Constructor to create a summary
+     * @param fingerprint Normalized SQL
+     * @param count Executions
+     * @param slowCount Executions over the slow threshold
+     * @param failedCount Executions that threw
+     * @param totalNanos Total execution time
+     * @param maxNanos Longest execution
+     * @param binds Total bind parameters
+     */
+    public StatementSummary(String fingerprint, long count, long slowCount, long failedCount,
+                            long totalNanos, long maxNanos, long binds) {
+        this.fingerprint = fingerprint;
+        this.count = count;
+        this.slowCount = slowCount;
+        this.failedCount = failedCount;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+        this.binds = binds;
+    }
+
+    //GETTERS
+    public String getFingerprint() { return fingerprint; }
+    public long getCount() { return count; }
+    public long getSlowCount() { return slowCount; }
+    public long getFailedCount() { return failedCount; }
+    public double getTotalMillis() { return totalNanos / 1e6; }
+    public double getMeanMillis() { return count == 0 ? 0 : totalNanos / 1e6 / count; }
+    public double getMaxMillis() { return maxNanos / 1e6; }
+    public double getMeanBinds() { return count == 0 ? 0 : (double) binds / count; }
+
+    long totalNanos() { return totalNanos; }
+}
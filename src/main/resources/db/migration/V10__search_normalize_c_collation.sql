@@ -0,0 +1,19 @@
+-- bookmark_search_normalize() (V4) relied on lower() folding ASCII only, which holds under the C collation but not
+-- when the database default is a linguistic locale (accented Latin, Greek and Cyrillic capitals would fold too).
+-- Pin lower() to C so the index folds exactly what coptic.user_api.search.TextNormalizer folds, whatever the locale:
+-- ASCII letters, plus the Coptic capitals translated explicitly. Other capitals are indexed and matched as written.
+CREATE OR REPLACE FUNCTION bookmark_search_normalize(input text) RETURNS text
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE
+AS $$
+    SELECT lower(translate(
+        regexp_replace(normalize(coalesce(input, ''), NFC),
+            '[\u0300-\u036F\u2CEF-\u2CF1\uFE24-\uFE26\u064B-\u065F\u0670\u06D6-\u06ED\u0640]', '', 'g'),
+        U&'\2C80\2C82\2C84\2C86\2C88\2C8A\2C8C\2C8E\2C90\2C92\2C94\2C96\2C98\2C9A\2C9C\2C9E\2CA0\2CA2\2CA4\2CA6\2CA8\2CAA\2CAC\2CAE\2CB0\2CB2\2CB4\2CB6\2CB8\2CBA\2CBC\2CBE\2CC0\2CC2\2CC4\2CC6\2CC8\2CCA\2CCC\2CCE\2CD0\2CD2\2CD4\2CD6\2CD8\2CDA\2CDC\2CDE\2CE0\2CE2\2CEB\2CED\2CF2\03E2\03E4\03E6\03E8\03EA\03EC\03EE',
+        U&'\2C81\2C83\2C85\2C87\2C89\2C8B\2C8D\2C8F\2C91\2C93\2C95\2C97\2C99\2C9B\2C9D\2C9F\2CA1\2CA3\2CA5\2CA7\2CA9\2CAB\2CAD\2CAF\2CB1\2CB3\2CB5\2CB7\2CB9\2CBB\2CBD\2CBF\2CC1\2CC3\2CC5\2CC7\2CC9\2CCB\2CCD\2CCF\2CD1\2CD3\2CD5\2CD7\2CD9\2CDB\2CDD\2CDF\2CE1\2CE3\2CEC\2CEE\2CF3\03E3\03E5\03E7\03E9\03EB\03ED\03EF') COLLATE "C")
+$$;
+
+-- Stored search vectors are only recomputed when their row is written. Rewrite the rows the old function folded
+-- differently: those holding a character the default collation lowercases but C does not (none under a C locale).
+UPDATE bookmarks SET name = name
+WHERE lower(concat_ws(' ', name, coptic_text, transliteration, english_translation, arabic_translation, notes))
+   <> lower(concat_ws(' ', name, coptic_text, transliteration, english_translation, arabic_translation, notes) COLLATE "C");
@@ -0,0 +1,33 @@
+-- Baseline schema, matching what ddl-auto=update used to create.
+-- Idempotent so it also runs cleanly on databases that already have these tables.
+
+CREATE TABLE IF NOT EXISTS users (
+    id            integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    email         varchar(255) NOT NULL,
+    password      varchar(255) NOT NULL,
+    token_version integer      NOT NULL DEFAULT 0,
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+-- Databases created before token versions existed
+ALTER TABLE users ADD COLUMN IF NOT EXISTS token_version integer NOT NULL DEFAULT 0;
+
+CREATE TABLE IF NOT EXISTS bookmarks (
+    id                  integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    name                varchar(255) NOT NULL,
+    user_id             integer      NOT NULL REFERENCES users (id),
+    coptic_text         varchar(255),
+    transliteration     varchar(255),
+    english_translation varchar(255),
+    arabic_translation  varchar(255),
+    notes               varchar(255)
+);
+
+CREATE TABLE IF NOT EXISTS password_reset_tokens (
+    id         integer GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    token      varchar(255) NOT NULL,
+    user_id    integer      NOT NULL REFERENCES users (id),
+    expiration timestamp(6) NOT NULL,
+    CONSTRAINT uk_password_reset_tokens_token UNIQUE (token),
+    CONSTRAINT uk_password_reset_tokens_user UNIQUE (user_id)
+);
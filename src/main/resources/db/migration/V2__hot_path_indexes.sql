@@ -0,0 +1,14 @@
+-- Indexes for the hot queries. Built CONCURRENTLY so a live bookmarks table is not locked
+-- (see V2__hot_path_indexes.sql.conf: this script runs outside a transaction).
+
+-- BookmarkRepository.findViewsByUserId / findViewPageByUserId / countByUserId:
+-- all bookmarks of one user, in id order (keyset pages seek on (user_id, id))
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_bookmarks_user_id_id ON bookmarks (user_id, id);
+
+-- Expired reset-token sweeps: range scan on expiration
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_password_reset_tokens_expiration ON password_reset_tokens (expiration);
+
+-- UserRepository.findByEmail / existsByEmail and PasswordResetTokenRepository.findByToken / deleteByUser
+-- are served by the unique constraints on users.email, password_reset_tokens.token and
+-- password_reset_tokens.user_id (Postgres backs each one with a btree index). A second index on
+-- the same column would only slow writes down, so none is added here.
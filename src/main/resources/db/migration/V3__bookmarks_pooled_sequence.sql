@@ -0,0 +1,9 @@
+-- Bookmark IDs move from IDENTITY to a pooled sequence so Hibernate can batch inserts.
+-- INCREMENT BY must equal the entity's allocationSize (50): each nextval reserves the 50 IDs ending at its value.
+
+CREATE SEQUENCE IF NOT EXISTS bookmarks_seq INCREMENT BY 50;
+
+-- First value handed out is max(id) + 50, i.e. IDs max(id) + 1 .. max(id) + 50
+SELECT setval('bookmarks_seq', COALESCE((SELECT MAX(id) FROM bookmarks), 0) + 50, false);
+
+ALTER TABLE bookmarks ALTER COLUMN id DROP IDENTITY IF EXISTS;
@@ -0,0 +1,3 @@
+-- Per-user bookmark version, bumped with every bookmark change and used as the ETag of the bookmark list.
+-- Constant default: no table rewrite on Postgres 11+.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS bookmark_version bigint NOT NULL DEFAULT 0;
@@ -0,0 +1,17 @@
+-- Reset tokens are stored as their SHA-256 digest (32 bytes) instead of the raw token, so a leaked table holds no
+-- usable links and PasswordResetTokenRepository lookups go through a compact fixed-width unique index.
+
+-- Expired rows first, so only live tokens are rewritten
+DELETE FROM password_reset_tokens WHERE expiration < now();
+
+ALTER TABLE password_reset_tokens ADD COLUMN IF NOT EXISTS token_hash bytea;
+
+-- Links already sent keep working: their token hashes to the same digest the service computes
+UPDATE password_reset_tokens SET token_hash = sha256(convert_to(token, 'UTF8')) WHERE token_hash IS NULL;
+
+ALTER TABLE password_reset_tokens ALTER COLUMN token_hash SET NOT NULL;
+
+-- Drops uk_password_reset_tokens_token along with the column
+ALTER TABLE password_reset_tokens DROP COLUMN IF EXISTS token;
+
+ALTER TABLE password_reset_tokens ADD CONSTRAINT uk_password_reset_tokens_token_hash UNIQUE (token_hash);
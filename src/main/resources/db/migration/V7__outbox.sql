@@ -0,0 +1,16 @@
+-- Transactional outbox: messages (reset emails) written in the same transaction as the change that causes them,
+-- delivered later by OutboxWorker. Delivered rows are deleted; rows that ran out of attempts keep failed_at set.
+CREATE TABLE IF NOT EXISTS outbox (
+    id              bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    kind            varchar(64)   NOT NULL,
+    recipient       varchar(255)  NOT NULL,
+    payload         text          NOT NULL,
+    created_at      timestamptz   NOT NULL DEFAULT now(),
+    attempts        integer       NOT NULL DEFAULT 0,
+    next_attempt_at timestamptz   NOT NULL DEFAULT now(),
+    last_error      varchar(1000),
+    failed_at       timestamptz
+);
+
+-- Claims: due rows in next_attempt_at order, skipping the dead ones
+CREATE INDEX IF NOT EXISTS idx_outbox_due ON outbox (next_attempt_at) WHERE failed_at IS NULL;
@@ -0,0 +1,28 @@
+-- Refresh tokens: opaque, stored as their SHA-256 digest, single use. Each refresh marks the presented row used and
+-- inserts its successor in the same family; presenting a used or revoked token revokes the whole family, along with
+-- the access tokens (access_jti) issued with its rows.
+CREATE TABLE IF NOT EXISTS refresh_tokens (
+    id            bigint GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    token_hash    bytea        NOT NULL,
+    user_id       integer      NOT NULL REFERENCES users (id) ON DELETE CASCADE,
+    family_id     uuid         NOT NULL,
+    token_version integer      NOT NULL,
+    access_jti    uuid         NOT NULL,
+    issued_at     timestamptz  NOT NULL,
+    expires_at    timestamptz  NOT NULL,
+    used_at       timestamptz,
+    revoked_at    timestamptz,
+    CONSTRAINT uk_refresh_tokens_token_hash UNIQUE (token_hash)
+);
+
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_family_id ON refresh_tokens (family_id);
+CREATE INDEX IF NOT EXISTS idx_refresh_tokens_expires_at ON refresh_tokens (expires_at);
+
+-- Access tokens revoked before their exp claim (logout, refresh token reuse), by jti. A row is only needed until the
+-- token would have expired anyway; TokenRevocationList loads the live ones into its Bloom filter.
+CREATE TABLE IF NOT EXISTS revoked_access_tokens (
+    jti        uuid         PRIMARY KEY,
+    expires_at timestamptz  NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_revoked_access_tokens_expires_at ON revoked_access_tokens (expires_at);
@@ -0,0 +1,10 @@
+-- Outbox payloads may hold secrets (reset tokens): failed messages no longer keep theirs, and reset emails carry the
+-- raw token instead of the whole link, which the sender renders.
+ALTER TABLE outbox ALTER COLUMN payload DROP NOT NULL;
+
+-- Failed rows are only kept for inspection; their payload is never delivered
+UPDATE outbox SET payload = NULL WHERE failed_at IS NOT NULL;
+
+-- Pending reset emails written before this change: keep only the token
+UPDATE outbox SET payload = substring(payload FROM 'token=(.*)$')
+WHERE kind = 'password-reset-email' AND failed_at IS NULL AND payload LIKE '%token=%';
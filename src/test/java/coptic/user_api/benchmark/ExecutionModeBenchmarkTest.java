@@ -0,0 +1,190 @@
+package coptic.user_api.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import coptic.user_api.UserApiApplication;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Platform threads vs virtual threads on the same workload, through the whole service path: Tomcat, the security
+ * filters (JWT verification included), the bookmark controller and service, and JDBC against the configured database.
+ * Each mode boots the application on a random port, signs up a user with a few hundred bookmarks, and then has more
+ * concurrent clients than Tomcat has platform threads alternate keyset pages and full-text searches.
+ * Logs throughput, p99 latency and failures per mode. Needs the same database as the other Spring Boot tests; run it
+ * where the database has cores of its own, or the two modes mostly measure how they compete with it for CPU.
+ * Run with: mvn test -Pbenchmark (-Dbenchmark.clients and -Dbenchmark.requests change the load)
+ */
+@Tag("benchmark")
+public class ExecutionModeBenchmarkTest {
+
+    private static final Logger log = LoggerFactory.getLogger(ExecutionModeBenchmarkTest.class);
+
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 400);
+    private static final int WARMUP_REQUESTS = Integer.getInteger("benchmark.warmup-requests", 2000);
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 20000);
+    private static final int BOOKMARKS = 500;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    @Test
+    public void compareExecutionModes() throws Exception {
+        Result platform = run("platform", false);
+        Result virtual = run("virtual", true);
+
+        log.info("{}", platform);
+        log.info("{}", virtual);
+        log.info("virtual vs platform: {}x throughput, {}x p99",
+                String.format("%.2f", virtual.throughput / platform.throughput),
+                String.format("%.2f", virtual.p99Millis / platform.p99Millis));
+
+        //Failures are part of the result (in virtual mode a request that waits too long for the database access
+        //limit fails fast instead of queueing), but each run has to have served the workload
+        assertTrue(platform.throughput > 0);
+        assertTrue(virtual.throughput > 0);
+    }
+
+    //Boots the application in one mode, seeds its user and drives the workload against it
+    private Result run(String mode, boolean virtualThreads) throws Exception {
+        //Command-line arguments, so they win over application.properties
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(UserApiApplication.class).run(
+                "--server.port=0",
+                "--management.server.port=0",
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                //Measure the execution mode, not the protections in front of it
+                "--rate-limit.enabled=false",
+                "--concurrency-limit.enabled=false",
+                //Seeding only; the workload never hashes
+                "--password.hash.strength=4")) {
+            assertEquals(virtualThreads, context.getEnvironment().getProperty("spring.threads.virtual.enabled", Boolean.class));
+            String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            String email = "bench-" + UUID.randomUUID() + "@example.com";
+            String token = seed(baseUrl, email);
+
+            List<HttpRequest> workload = List.of(
+                    get(baseUrl + "/bookmarks/user/" + email + "/page?limit=20", token),
+                    get(baseUrl + "/bookmarks/search?q=psalm&limit=20", token));
+
+            drive(workload, WARMUP_REQUESTS);
+            return drive(workload, REQUESTS).named(mode + " (" + CLIENTS + " clients, " + REQUESTS + " requests)");
+        }
+    }
+
+    //Signs up the benchmark user and adds its bookmarks; returns the user's access token
+    private String seed(String baseUrl, String email) throws Exception {
+        HttpResponse<String> signUp = http.send(post(baseUrl + "/users/sign_up", null,
+                Map.of("email", email, "password", "benchmark-password")), HttpResponse.BodyHandlers.ofString());
+        assertEquals(201, signUp.statusCode(), signUp.body());
+        String token = objectMapper.readTree(signUp.body()).get("token").asText();
+
+        List<Map<String, Object>> bookmarks = new ArrayList<>(BOOKMARKS);
+        for (int i = 0; i < BOOKMARKS; i++) {
+            bookmarks.add(Map.of(
+                    "name", (i % 5 == 0 ? "Psalm " : "Hymn ") + i,
+                    "copticText", "ⲡⲓⲱⲓⲕ ⲛⲧⲉ ⲡⲓⲱⲛϧ " + i,
+                    "transliteration", "piōik nte piōnḫ " + i,
+                    "englishTranslation", "The bread of life " + i,
+                    "notes", "Seeded for the execution mode benchmark"));
+        }
+        HttpResponse<String> batch = http.send(post(baseUrl + "/bookmarks/batch", token, Map.of("bookmarks", bookmarks)),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(201, batch.statusCode(), batch.body());
+        return token;
+    }
+
+    //Sends count requests from CLIENTS concurrent clients, cycling through the workload, and times each one;
+    //throughput counts successful requests, the p99 covers all of them
+    private Result drive(List<HttpRequest> workload, int count) throws InterruptedException {
+        long[] latencies = new long[count];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+
+        //Clients are platform threads in both runs: virtual ones would share the virtual-thread scheduler with the
+        //server in virtual mode (virtual threads are not time-sliced), so only the server side changes between modes
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        long start = System.nanoTime();
+        for (int c = 0; c < CLIENTS; c++) {
+            clients.execute(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < count) {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = http.send(workload.get(index % workload.size()),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() != 200) {
+                            failures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    }
+                    latencies[index] = System.nanoTime() - sent;
+                }
+            });
+        }
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(10, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(latencies);
+        return new Result((count - failures.get()) * 1e9 / elapsed,
+                latencies[(int) Math.ceil(count * 0.99) - 1] / 1e6, failures.get());
+    }
+
+    private static HttpRequest get(String url, String token) {
+        return HttpRequest.newBuilder(URI.create(url)).header("Authorization", "Bearer " + token).GET().build();
+    }
+
+    private HttpRequest post(String url, String token, Object body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body)));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request.build();
+    }
+
+    private static final class Result {
+        private final double throughput;
+        private final double p99Millis;
+        private final int failures;
+        private String mode;
+
+        private Result(double throughput, double p99Millis, int failures) {
+            this.throughput = throughput;
+            this.p99Millis = p99Millis;
+            this.failures = failures;
+        }
+
+        private Result named(String mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %.0f successful requests/s, p99 %.1f ms, %d failed", mode, throughput, p99Millis, failures);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package coptic.user_api.cache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheInvalidationBusTest {
+
+    //Delivers every published message to every started node, synchronously
+    private static final class LoopbackTransport implements InvalidationTransport {
+        private final List<Listener> listeners = new ArrayList<>();
+
+        @Override
+        public void publish(String message) {
+            listeners.forEach(listener -> listener.onMessage(message));
+        }
+
+        @Override
+        public void start(Listener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void stop() {
+            listeners.clear();
+        }
+
+        void gap() {
+            listeners.forEach(Listener::onGap);
+        }
+    }
+
+    private LoopbackTransport transport;
+    private CacheInvalidationBus nodeA;
+    private CacheInvalidationBus nodeB;
+    private List<String> eventsA;
+    private List<String> eventsB;
+
+    @BeforeEach
+    public void setUp() {
+        transport = new LoopbackTransport();
+        nodeA = new CacheInvalidationBus(transport, true);
+        nodeB = new CacheInvalidationBus(transport, true);
+        eventsA = new ArrayList<>();
+        eventsB = new ArrayList<>();
+        nodeA.subscribe(CacheRegion.USER, id -> eventsA.add("user " + id), () -> eventsA.add("flush"));
+        nodeB.subscribe(CacheRegion.USER, id -> eventsB.add("user " + id), () -> eventsB.add("flush"));
+        nodeB.subscribe(CacheRegion.BOOKMARKS, id -> eventsB.add("bookmarks " + id), () -> eventsB.add("flush"));
+        nodeA.start();
+        nodeB.start();
+    }
+
+    //An event reaches the other node's caches for that region only, and is skipped by the node that sent it
+    @Test
+    public void testPublish_ShouldInvalidateOtherNodesOnly() {
+        nodeA.publish(CacheRegion.BOOKMARKS, 7);
+        nodeA.publish(CacheRegion.USER, 8);
+
+        assertEquals(List.of("bookmarks 7", "user 8"), eventsB);
+        assertTrue(eventsA.isEmpty());
+        assertEquals(2, nodeB.getReceivedCount());
+    }
+
+    //After a gap every subscribed cache is flushed
+    @Test
+    public void testGap_ShouldFlushEverySubscribedCache() {
+        transport.gap();
+
+        assertEquals(List.of("flush", "flush"), eventsB);
+        assertEquals(List.of("flush"), eventsA);
+        assertEquals(1, nodeB.getFlushCount());
+    }
+
+    //Malformed messages and failing handlers must not stop delivery
+    @Test
+    public void testHandle_ShouldSurviveBadMessagesAndHandlers() {
+        nodeB.subscribe(CacheRegion.USER, id -> { throw new IllegalStateException("boom"); }, () -> {});
+        transport.publish("garbage");
+        transport.publish("other|NOPE|1");
+        transport.publish("other|USER|x");
+
+        nodeA.publish(CacheRegion.USER, 9);
+
+        assertEquals(List.of("user 9"), eventsB);
+    }
+
+    //Disabled: nothing is sent or received
+    @Test
+    public void testDisabled_ShouldNotUseTransport() {
+        LoopbackTransport quiet = new LoopbackTransport();
+        CacheInvalidationBus off = new CacheInvalidationBus(quiet, false);
+        off.start();
+        nodeB.publish(CacheRegion.USER, 1);
+        off.publish(CacheRegion.USER, 2);
+
+        assertTrue(quiet.listeners.isEmpty());
+        assertTrue(eventsB.isEmpty());
+    }
+}
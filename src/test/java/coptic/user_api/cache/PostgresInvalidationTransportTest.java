@@ -0,0 +1,109 @@
+package coptic.user_api.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Runs against the configured Postgres, on a channel of its own
+@SpringBootTest
+public class PostgresInvalidationTransportTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${spring.datasource.url}")
+    private String url;
+
+    @Value("${spring.datasource.username:}")
+    private String username;
+
+    @Value("${spring.datasource.password:}")
+    private String password;
+
+    private PostgresInvalidationTransport transport;
+    private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+    private final AtomicInteger gaps = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        transport = new PostgresInvalidationTransport(jdbcTemplate, url, username, password, "cache_invalidation_test", 500, 100);
+        transport.start(new InvalidationTransport.Listener() {
+            @Override
+            public void onMessage(String message) { messages.add(message); }
+
+            @Override
+            public void onGap() { gaps.incrementAndGet(); }
+        });
+        awaitGaps(1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        transport.stop();
+    }
+
+    //Outside a transaction the message is delivered right away
+    @Test
+    public void testPublish_ShouldReachListener() throws InterruptedException {
+        transport.publish("node|USER|7");
+
+        assertEquals("node|USER|7", messages.poll(5, TimeUnit.SECONDS));
+    }
+
+    //Inside a transaction: nothing on rollback, delivery only after commit
+    @Test
+    public void testPublish_ShouldFollowTransactionOutcome() throws InterruptedException {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        transaction.executeWithoutResult(status -> {
+            transport.publish("node|USER|1");
+            status.setRollbackOnly();
+        });
+        transaction.executeWithoutResult(status -> {
+            transport.publish("node|USER|2");
+            try {
+                assertNull(messages.poll(300, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertEquals("node|USER|2", messages.poll(5, TimeUnit.SECONDS));
+        assertNull(messages.poll(300, TimeUnit.MILLISECONDS));
+    }
+
+    //A killed listener connection is re-established and reported as a gap
+    @Test
+    public void testLostConnection_ShouldReconnectAndReportGap() throws InterruptedException {
+        jdbcTemplate.queryForList("SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE application_name = ?",
+                PostgresInvalidationTransport.APPLICATION_NAME);
+
+        awaitGaps(2);
+        transport.publish("node|BOOKMARKS|3");
+        assertEquals("node|BOOKMARKS|3", messages.poll(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitGaps(int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (gaps.get() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertTrue(gaps.get() >= expected, "listener did not (re)subscribe");
+    }
+}
@@ -0,0 +1,62 @@
+package coptic.user_api.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ConcurrencyLimitedDataSourceTest {
+
+    private DataSource target;
+    private ConcurrencyLimitedDataSource dataSource;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        target = mock(DataSource.class);
+        when(target.getConnection()).thenAnswer(invocation -> mock(Connection.class));
+        dataSource = new ConcurrencyLimitedDataSource(target, 2, 50);
+    }
+
+    //A third connection has to wait for one of the first two and fails fast if none comes back
+    @Test
+    public void testGetConnection_ShouldLimitCheckedOutConnections() throws SQLException {
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+        assertEquals(2, dataSource.getActiveCount());
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+
+        first.close();
+        assertNotNull(dataSource.getConnection());
+        verify(target, times(3)).getConnection();
+    }
+
+    //Closing twice returns the slot once; other calls reach the real connection
+    @Test
+    public void testClose_ShouldReleaseOnce() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        connection.close();
+        connection.close();
+
+        assertEquals(0, dataSource.getActiveCount());
+        dataSource.getConnection();
+        dataSource.getConnection();
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+    }
+
+    //A failing pool must not leak the slot
+    @Test
+    public void testGetConnection_TargetFails_ShouldReleaseSlot() throws SQLException {
+        when(target.getConnection()).thenThrow(new SQLException("down"));
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+        assertEquals(0, dataSource.getActiveCount());
+    }
+}
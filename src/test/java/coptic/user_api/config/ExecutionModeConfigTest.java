@@ -0,0 +1,33 @@
+package coptic.user_api.config;
+
+import coptic.user_api.sql.SqlStatementRecorder;
+import net.ttddyy.dsproxy.support.ProxyDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.GenericApplicationContext;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ExecutionModeConfigTest {
+
+    //The access limit sits directly over the pool and the SQL proxy wraps it, whatever order the beans are declared in
+    @Test
+    public void testDataSourceWrappers_ShouldPutTheLimitDirectlyOverThePool() {
+        DataSource pool = mock(DataSource.class);
+        try (GenericApplicationContext context = new GenericApplicationContext()) {
+            context.registerBean(SqlStatementRecorder.class, () -> mock(SqlStatementRecorder.class));
+            context.registerBean("sqlInspection", SqlInspectionConfig.SqlInspectionPostProcessor.class,
+                    () -> SqlInspectionConfig.sqlInspection(true, context.getBeanProvider(SqlStatementRecorder.class)));
+            context.registerBean("databaseAccessLimit", ExecutionModeConfig.DatabaseAccessLimitPostProcessor.class,
+                    () -> ExecutionModeConfig.databaseAccessLimit(true, 10, 2000));
+            context.registerBean("dataSource", DataSource.class, () -> pool);
+            context.refresh();
+
+            DataSource dataSource = context.getBean(DataSource.class);
+            assertInstanceOf(ProxyDataSource.class, dataSource);
+            assertInstanceOf(ConcurrencyLimitedDataSource.class, ((ProxyDataSource) dataSource).getDataSource());
+        }
+    }
+}
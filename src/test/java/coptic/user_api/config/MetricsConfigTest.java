@@ -0,0 +1,94 @@
+package coptic.user_api.config;
+
+import coptic.user_api.repositories.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Actuator is served on the management port only: the Prometheus scrape is reachable there without a token
+//and carries the pool, Hibernate, repository and app metrics; the API port does not serve it at all
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureObservability
+public class MetricsConfigTest {
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @LocalServerPort
+    private int serverPort;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    @Test
+    public void testPrometheusScrape_ShouldExposeHotPathMetrics() {
+        userRepository.findByEmail("nobody@example.com");
+        rest.getForEntity(api("/bookmarks/search?q=x"), String.class); //unauthenticated: only counts as an HTTP request
+
+        ResponseEntity<String> response = rest.getForEntity(management("/actuator/prometheus"), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String body = response.getBody();
+
+        assertTrue(body.contains("hikaricp_connections_active"), "Hikari pool");
+        assertTrue(body.contains("hikaricp_connections_acquire_seconds"), "Hikari acquire time");
+        assertTrue(body.contains("hibernate_query_executions_total") || body.contains("hibernate_statements_total"), "Hibernate statistics");
+        assertTrue(body.contains("spring_data_repository_invocations_seconds_count{") && body.contains("repository=\"UserRepository\""), "Repository timers");
+        assertTrue(body.contains("cache_hits_total{cache=\"users\""), "User cache");
+        assertTrue(body.contains("concurrency_limit{group=\"bookmark-reads\""), "Concurrency limits");
+        assertTrue(body.contains("password_hashing_queue"), "Hashing pool");
+    }
+
+    //The public API port serves no actuator endpoints, with or without a token
+    @Test
+    public void testActuator_ShouldNotBeServedOnTheApiPort() {
+        assertTrue(rest.getForEntity(api("/actuator/prometheus"), String.class).getStatusCode().is4xxClientError());
+        assertTrue(rest.getForEntity(api("/actuator/health"), String.class).getStatusCode().is4xxClientError());
+    }
+
+    @Test
+    public void testHealth_ShouldBeServedOnTheManagementPort() {
+        assertEquals(HttpStatus.OK, rest.getForEntity(management("/actuator/health"), String.class).getStatusCode());
+    }
+
+    //The SQL report is read on the management port and lists statements by fingerprint
+    @Test
+    public void testSqlStats_ShouldReportStatementFingerprints() {
+        userRepository.findByEmail("nobody@example.com");
+
+        ResponseEntity<String> response = rest.getForEntity(management("/actuator/sqlstats?limit=100"), String.class);
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        String body = response.getBody();
+
+        assertTrue(body.contains("\"top\""), body);
+        assertTrue(body.contains("from users"), body);
+        assertTrue(body.contains("\"meanBinds\""), body);
+    }
+
+    //The totals cannot be reset over HTTP, and the API port does not serve the report
+    @Test
+    public void testSqlStats_ShouldBeReadOnlyAndInternal() {
+        ResponseEntity<String> reset = rest.exchange(management("/actuator/sqlstats"), HttpMethod.DELETE, null, String.class);
+        assertTrue(reset.getStatusCode().is4xxClientError());
+        assertTrue(rest.getForEntity(api("/actuator/sqlstats"), String.class).getStatusCode().is4xxClientError());
+    }
+
+    private String api(String path) {
+        return "http://localhost:" + serverPort + path;
+    }
+
+    private String management(String path) {
+        return "http://localhost:" + managementPort + path;
+    }
+}
@@ -0,0 +1,57 @@
+package coptic.user_api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimedJsonHttpMessageConverterTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final TimedJsonHttpMessageConverter converter = new TimedJsonHttpMessageConverter(new ObjectMapper(), meterRegistry);
+
+    @AfterEach
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    //Each body is timed under its route pattern, and writes for the same route share one timer
+    @Test
+    public void testWrite_ShouldTimeEachRouteOnOneTimer() throws Exception {
+        write("/bookmarks/user/{email}");
+        write("/bookmarks/user/{email}");
+        write("/bookmarks/search");
+
+        assertEquals(2, meterRegistry.timer("json.serialization", "uri", "/bookmarks/user/{email}").count());
+        assertEquals(1, meterRegistry.timer("json.serialization", "uri", "/bookmarks/search").count());
+        assertEquals(2, meterRegistry.find("json.serialization").timers().size());
+    }
+
+    //Outside a mapped request the body is still timed, under UNKNOWN
+    @Test
+    public void testWrite_NoRoute_ShouldTimeUnderUnknown() throws Exception {
+        converter.write(Map.of("ok", true), MediaType.APPLICATION_JSON, new MockHttpOutputMessage());
+
+        assertEquals(1, meterRegistry.timer("json.serialization", "uri", "UNKNOWN").count());
+    }
+
+    private void write(String route) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, route);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(Map.of("ok", true), MediaType.APPLICATION_JSON, output);
+        assertEquals("{\"ok\":true}", output.getBodyAsString());
+    }
+}
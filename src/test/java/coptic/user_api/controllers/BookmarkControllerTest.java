@@ -4,8 +4,14 @@ package coptic.user_api.controllers;
 //Spring Boot test framework
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import coptic.user_api.dto.BookmarkPage;
+import coptic.user_api.dto.BookmarkView;
 import coptic.user_api.models.Bookmark;
 import coptic.user_api.models.User;
+import coptic.user_api.security.AuthenticatedUser;
+import coptic.user_api.dto.ImportResult;
+import coptic.user_api.services.BookmarkExportFormat;
+import coptic.user_api.services.BookmarkImportService;
 import coptic.user_api.services.BookmarkService;
 import coptic.user_api.services.UserService;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,16 +22,22 @@ import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMock
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
 
-import java.util.Collections;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -46,12 +58,16 @@ public class BookmarkControllerTest {
     @MockBean
     private UserService userService;
 
+    @MockBean
+    private BookmarkImportService bookmarkImportService;
+
     //JSON utility
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     //Sample user and bookmark
     private User user;
     private Bookmark bookmark;
+    private BookmarkView bookmarkView;
 
     //Create reusable test objects
     @BeforeEach
@@ -59,6 +75,7 @@ public class BookmarkControllerTest {
         user = new User("user@example.com", "password");
         bookmark = new Bookmark("Title", user, "ⲡⲁⲣⲧ", "part", "part", "جزء", "Some notes");
         bookmark.setId(1);
+        bookmarkView = new BookmarkView(1, "Title", "ⲡⲁⲣⲧ", "part", "part", "جزء", "Some notes");
     }
 
     //Test /bookmarks/add with valid user
@@ -93,33 +110,222 @@ public class BookmarkControllerTest {
                 .andExpect(content().string("User not found"));
     }
 
+    //Test /bookmarks/batch with valid user
+    @Test
+    public void testAddBookmarks_ValidUser_ShouldCreateAll() throws Exception {
+        when(userService.findUserByEmail("user@example.com")).thenReturn(user);
+        when(bookmarkService.saveBookmarks(anyList())).thenReturn(2);
+
+        mockMvc.perform(post("/bookmarks/batch").with(asOwner())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of(
+                                "bookmarks", List.of(
+                                        Map.of("name", "One", "copticText", "ⲟⲩⲁ"),
+                                        Map.of("name", "Two", "notes", "second"))
+                        ))))
+                .andExpect(status().isCreated())
+                .andExpect(content().string("2 bookmarks added successfully!"));
+
+        verify(userService, times(1)).findUserByEmail("user@example.com");
+    }
+
+    //Test /bookmarks/batch naming another user in the body
+    //Should refuse without looking anyone up or saving anything
+    @Test
+    public void testAddBookmarks_OtherUsersEmail_ShouldReturnForbidden() throws Exception {
+        mockMvc.perform(post("/bookmarks/batch").with(asOwner())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of(
+                                "email", "someone@example.com",
+                                "bookmarks", List.of(Map.of("name", "One"))
+                        ))))
+                .andExpect(status().isForbidden());
+
+        verify(userService, never()).findUserByEmail(anyString());
+        verify(bookmarkService, never()).saveBookmarks(anyList());
+    }
+
+    //Test /bookmarks/batch with a nameless bookmark
+    @Test
+    public void testAddBookmarks_MissingName_ShouldReturnBadRequest() throws Exception {
+        when(userService.findUserByEmail("user@example.com")).thenReturn(user);
+
+        mockMvc.perform(post("/bookmarks/batch").with(asOwner())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of(
+                                "email", "user@example.com",
+                                "bookmarks", List.of(Map.of("notes", "no name"))
+                        ))))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Every bookmark needs a name"));
+
+        verify(bookmarkService, never()).saveBookmarks(anyList());
+    }
+
     //Test /bookmarks/user/{email}
     @Test
     public void testGetUserBookmarks_ValidUser_ShouldReturnList() throws Exception {
+        when(bookmarkService.getBookmarkVersion("user@example.com")).thenReturn(5L);
         when(userService.findUserByEmail("user@example.com")).thenReturn(user);
-        when(bookmarkService.getBookmarksByUser(user)).thenReturn(List.of(bookmark));
+        when(bookmarkService.getBookmarkViewsByUser(user.getId())).thenReturn(List.of(bookmarkView));
 
         mockMvc.perform(get("/bookmarks/user/user@example.com"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$[0].name").value("Title"));
+                .andExpect(header().string("ETag", "\"5\""))
+                .andExpect(jsonPath("$[0].name").value("Title"))
+                .andExpect(jsonPath("$[0].user").doesNotExist());
+    }
+
+    //Test /bookmarks/user/{email} with a current If-None-Match
+    //Should answer 304 from the version alone, without loading the user or the bookmarks
+    @Test
+    public void testGetUserBookmarks_NotModified_ShouldReturn304WithoutLoading() throws Exception {
+        when(bookmarkService.getBookmarkVersion("user@example.com")).thenReturn(5L);
+
+        mockMvc.perform(get("/bookmarks/user/user@example.com").header("If-None-Match", "\"5\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"5\""))
+                .andExpect(content().string(""));
+
+        verify(userService, never()).findUserByEmail(anyString());
+        verify(bookmarkService, never()).getBookmarkViewsByUser(anyInt());
+    }
+
+    //Test /bookmarks/user/{email} with a stale If-None-Match
+    @Test
+    public void testGetUserBookmarks_StaleEtag_ShouldReturnList() throws Exception {
+        when(bookmarkService.getBookmarkVersion("user@example.com")).thenReturn(6L);
+        when(userService.findUserByEmail("user@example.com")).thenReturn(user);
+        when(bookmarkService.getBookmarkViewsByUser(user.getId())).thenReturn(List.of(bookmarkView));
+
+        mockMvc.perform(get("/bookmarks/user/user@example.com").header("If-None-Match", "\"5\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"6\""))
+                .andExpect(jsonPath("$[0].id").value(1));
     }
 
     //Test /bookmarks/user/{email} for user not found
     @Test
     public void testGetUserBookmarks_UserNotFound_ShouldReturnEmptyList() throws Exception {
-        when(userService.findUserByEmail("ghost@example.com")).thenReturn(null);
+        when(bookmarkService.getBookmarkVersion("ghost@example.com")).thenReturn(null);
 
         mockMvc.perform(get("/bookmarks/user/ghost@example.com"))
                 .andExpect(status().isNotFound())
                 .andExpect(content().json("[]"));
     }
 
+    //Test /bookmarks/user/{email}/page
+    @Test
+    public void testGetUserBookmarkPage_ShouldReturnItemsAndCursor() throws Exception {
+        when(bookmarkService.getBookmarkPage(7, null, 1, false)).thenReturn(new BookmarkPage(List.of(bookmarkView), "MQ", null));
+
+        mockMvc.perform(get("/bookmarks/user/user@example.com/page").param("limit", "1").with(asOwner()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].name").value("Title"))
+                .andExpect(jsonPath("$.nextCursor").value("MQ"));
+
+        verify(userService, never()).findUserByEmail(anyString());
+    }
+
+    //Test /bookmarks/user/{email}/page with a bad cursor
+    @Test
+    public void testGetUserBookmarkPage_BadCursor_ShouldReturnBadRequest() throws Exception {
+        when(bookmarkService.getBookmarkPage(7, "junk", 50, false)).thenThrow(new IllegalArgumentException("Invalid cursor"));
+
+        mockMvc.perform(get("/bookmarks/user/user@example.com/page").param("after", "junk").with(asOwner()))
+                .andExpect(status().isBadRequest());
+    }
+
+    //Test /bookmarks/user/{email}/page for another user's email
+    //Should refuse without reading any bookmarks
+    @Test
+    public void testGetUserBookmarkPage_OtherUser_ShouldReturnForbidden() throws Exception {
+        mockMvc.perform(get("/bookmarks/user/someone@example.com/page").with(asOwner()))
+                .andExpect(status().isForbidden());
+
+        verify(bookmarkService, never()).getBookmarkPage(anyInt(), any(), anyInt(), anyBoolean());
+    }
+
+    //Test /bookmarks/export
+    //Should stream what the service writes, as a download of the requested format
+    @Test
+    public void testExportBookmarks_ShouldStreamCallersBookmarks() throws Exception {
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(2);
+            out.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(bookmarkService).exportBookmarks(eq(7), eq(BookmarkExportFormat.NDJSON), any(OutputStream.class));
+
+        MvcResult started = mockMvc.perform(get("/bookmarks/export").param("format", "ndjson").with(asOwner()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"bookmarks.ndjson\""))
+                .andExpect(content().string("{\"id\":1}\n"));
+    }
+
+    //Test /bookmarks/export with an unknown format
+    @Test
+    public void testExportBookmarks_UnknownFormat_ShouldReturnBadRequest() throws Exception {
+        MvcResult started = mockMvc.perform(get("/bookmarks/export").param("format", "xml").with(asOwner()))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Unsupported format"));
+        verify(bookmarkService, never()).exportBookmarks(anyInt(), any(), any());
+    }
+
+    //Test /bookmarks/import
+    //Should hand the raw upload to the import service and return its counts
+    @Test
+    public void testImportBookmarks_ShouldReturnCounts() throws Exception {
+        when(bookmarkImportService.importBookmarks(eq(7), eq(BookmarkExportFormat.CSV), any(InputStream.class)))
+                .thenReturn(new ImportResult(2, 1, List.of("record 2: name is required")));
+
+        mockMvc.perform(post("/bookmarks/import").param("format", "csv")
+                        .with(asOwner())
+                        .contentType("text/csv")
+                        .content("name\nOne\n\nTwo\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(1))
+                .andExpect(jsonPath("$.errors[0]").value("record 2: name is required"));
+    }
+
+    //Test /bookmarks/search
+    @Test
+    public void testSearchBookmarks_ShouldReturnCallersResults() throws Exception {
+        when(bookmarkService.searchBookmarks(7, "part", null, 20))
+                .thenReturn(new BookmarkPage(List.of(bookmarkView), null, null));
+
+        mockMvc.perform(get("/bookmarks/search").param("q", "part").with(asOwner()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(1))
+                .andExpect(jsonPath("$.items[0].user").doesNotExist());
+    }
+
+    //Test /bookmarks/search with an empty query
+    @Test
+    public void testSearchBookmarks_EmptyQuery_ShouldReturnBadRequest() throws Exception {
+        when(bookmarkService.searchBookmarks(7, " ", null, 20))
+                .thenThrow(new IllegalArgumentException("Query cannot be empty"));
+
+        mockMvc.perform(get("/bookmarks/search").param("q", " ").with(asOwner()))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Query cannot be empty"));
+    }
+
     //Test /bookmarks/rename/{id}
     @Test
     public void testRenameBookmark_ShouldUpdateAndReturnOk() throws Exception {
-        when(bookmarkService.getBookmarkById(1)).thenReturn(Optional.of(bookmark));
+        when(bookmarkService.updateBookmark(eq(1), eq(7), any(Bookmark.class))).thenReturn(true);
 
         mockMvc.perform(put("/bookmarks/rename/1")
+                        .with(asOwner())
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(Map.of(
                                 "name", "Updated Title",
@@ -131,37 +337,75 @@ public class BookmarkControllerTest {
                         ))))
                 .andExpect(status().isOk())
                 .andExpect(content().string("Bookmark updated successfully"));
+
+        verify(bookmarkService, never()).getBookmarkById(anyInt());
     }
 
-    //Test /bookmarks/rename/{id} for missing ID
+    //Test /bookmarks/rename/{id} for a missing ID or another user's bookmark
     @Test
     public void testRenameBookmark_NotFound_ShouldReturn404() throws Exception {
-        when(bookmarkService.getBookmarkById(99)).thenReturn(Optional.empty());
+        when(bookmarkService.updateBookmark(eq(99), eq(7), any(Bookmark.class))).thenReturn(false);
 
         mockMvc.perform(put("/bookmarks/rename/99")
+                        .with(asOwner())
                         .contentType(MediaType.APPLICATION_JSON)
-                        .content(objectMapper.writeValueAsString(Collections.emptyMap())))
+                        .content(objectMapper.writeValueAsString(Map.of("name", "Title"))))
                 .andExpect(status().isNotFound())
                 .andExpect(content().string("Bookmark not found"));
     }
 
+    //Test PATCH /bookmarks/{id}
+    @Test
+    public void testPatchBookmark_ShouldSendOnlyGivenFields() throws Exception {
+        when(bookmarkService.patchBookmark(1, 7, Map.of("notes", "new notes"))).thenReturn(true);
+
+        mockMvc.perform(patch("/bookmarks/1")
+                        .with(asOwner())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("notes", "new notes"))))
+                .andExpect(status().isOk())
+                .andExpect(content().string("Bookmark updated successfully"));
+    }
+
+    //Test PATCH /bookmarks/{id} with an unknown field
+    @Test
+    public void testPatchBookmark_InvalidField_ShouldReturnBadRequest() throws Exception {
+        when(bookmarkService.patchBookmark(1, 7, Map.of("user", "x")))
+                .thenThrow(new IllegalArgumentException("Unknown field: user"));
+
+        mockMvc.perform(patch("/bookmarks/1")
+                        .with(asOwner())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("user", "x"))))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Unknown field: user"));
+    }
+
     //Test /bookmarks/delete/{id}
     @Test
     public void testDeleteBookmark_ShouldDeleteSuccessfully() throws Exception {
-        when(bookmarkService.getBookmarkById(1)).thenReturn(Optional.of(bookmark));
+        when(bookmarkService.deleteBookmark(1, 7)).thenReturn(true);
 
-        mockMvc.perform(delete("/bookmarks/delete/1"))
+        mockMvc.perform(delete("/bookmarks/delete/1").with(asOwner()))
                 .andExpect(status().isOk())
                 .andExpect(content().string("Bookmark deleted"));
+
+        verify(bookmarkService, never()).getBookmarkById(anyInt());
     }
 
-    //Test /bookmarks/delete/{id} for unknown ID
+    //Test /bookmarks/delete/{id} for an unknown ID or another user's bookmark
     @Test
     public void testDeleteBookmark_NotFound_ShouldReturn404() throws Exception {
-        when(bookmarkService.getBookmarkById(42)).thenReturn(Optional.empty());
+        when(bookmarkService.deleteBookmark(42, 7)).thenReturn(false);
 
-        mockMvc.perform(delete("/bookmarks/delete/42"))
+        mockMvc.perform(delete("/bookmarks/delete/42").with(asOwner()))
                 .andExpect(status().isNotFound())
                 .andExpect(content().string("Bookmark not found"));
     }
+
+    //Authenticate the request as user 7, the way JwtRequestFilter does
+    private static RequestPostProcessor asOwner() {
+        AuthenticatedUser principal = new AuthenticatedUser(7, "user@example.com");
+        return authentication(new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities()));
+    }
 }
@@ -1,9 +1,11 @@
 package coptic.user_api.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import coptic.user_api.dto.AuthTokens;
 import coptic.user_api.models.User;
-import coptic.user_api.security.JWT;
+import coptic.user_api.services.PasswordHashingBusyException;
 import coptic.user_api.services.PasswordResetService;
+import coptic.user_api.services.RefreshTokenService;
 import coptic.user_api.services.UserService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,11 +17,16 @@ import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -42,11 +49,19 @@ public class UserControllerTest {
     private PasswordResetService passwordResetService;
 
     @MockBean
-    private JWT jwt;
+    private RefreshTokenService refreshTokenService;
 
     //ObjectMapper for JSON serialization
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    //Auth endpoints answer asynchronously; start the request, then dispatch its async result
+    private ResultActions performAsync(RequestBuilder requestBuilder) throws Exception {
+        MvcResult started = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(started));
+    }
+
     //Test /users/sign_up (email already exists)
     @Test
     public void testSignUp_EmailExists_ShouldReturnConflict() throws Exception {
@@ -54,7 +69,7 @@ public class UserControllerTest {
 
         when(userService.emailExists(user.getEmail())).thenReturn(true);
 
-        mockMvc.perform(post("/users/sign_up")
+        performAsync(post("/users/sign_up")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(user)))
                 .andExpect(status().isConflict())
@@ -67,14 +82,15 @@ public class UserControllerTest {
         User user = new User("new@example.com", "pass");
 
         when(userService.emailExists(user.getEmail())).thenReturn(false);
-        when(userService.createUser(any())).thenReturn(user);
-        when(jwt.generateToken(user.getEmail())).thenReturn("mockToken");
+        when(userService.createUserAsync(any())).thenReturn(CompletableFuture.completedFuture(user));
+        when(refreshTokenService.issue(user)).thenReturn(new AuthTokens("mockToken", "mockRefresh"));
 
-        mockMvc.perform(post("/users/sign_up")
+        performAsync(post("/users/sign_up")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(user)))
                 .andExpect(status().isCreated())
-                .andExpect(jsonPath("$.token").value("mockToken"));
+                .andExpect(jsonPath("$.token").value("mockToken"))
+                .andExpect(jsonPath("$.refreshToken").value("mockRefresh"));
     }
 
     //Test /users/login (valid credentials)
@@ -83,14 +99,40 @@ public class UserControllerTest {
         User user = new User("login@example.com", "pass");
 
         when(userService.findUserByEmail(user.getEmail())).thenReturn(user);
-        when(userService.checkPassword("pass", "pass")).thenReturn(true);
-        when(jwt.generateToken(user.getEmail())).thenReturn("loginToken");
+        when(userService.checkPasswordAsync(user, "pass")).thenReturn(CompletableFuture.completedFuture(true));
+        when(refreshTokenService.issue(user)).thenReturn(new AuthTokens("loginToken", "loginRefresh"));
 
-        mockMvc.perform(post("/users/login")
+        performAsync(post("/users/login")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(user)))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.token").value("loginToken"));
+                .andExpect(jsonPath("$.token").value("loginToken"))
+                .andExpect(jsonPath("$.refreshToken").value("loginRefresh"));
+    }
+
+    //Test /users/refresh (valid refresh token)
+    @Test
+    public void testRefresh_ValidToken_ShouldReturnNewTokens() throws Exception {
+        when(refreshTokenService.refresh("oldRefresh")).thenReturn(new AuthTokens("newToken", "newRefresh"));
+
+        mockMvc.perform(post("/users/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("refreshToken", "oldRefresh"))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.token").value("newToken"))
+                .andExpect(jsonPath("$.refreshToken").value("newRefresh"));
+    }
+
+    //Test /users/refresh (unknown, expired or reused refresh token)
+    @Test
+    public void testRefresh_InvalidToken_ShouldReturnUnauthorized() throws Exception {
+        when(refreshTokenService.refresh("usedRefresh")).thenReturn(null);
+
+        mockMvc.perform(post("/users/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("refreshToken", "usedRefresh"))))
+                .andExpect(status().isUnauthorized())
+                .andExpect(content().string("Invalid or expired refresh token"));
     }
 
     //Test /users/login (invalid credentials)
@@ -100,43 +142,43 @@ public class UserControllerTest {
 
         when(userService.findUserByEmail(user.getEmail())).thenReturn(null);
 
-        mockMvc.perform(post("/users/login")
+        performAsync(post("/users/login")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(user)))
                 .andExpect(status().isUnauthorized())
                 .andExpect(content().string("Invalid credentials!"));
     }
 
-    //Test /users/request_reset (user found)
+    //Test /users/request_reset (user found): the link goes out by email only
     @Test
-    public void testRequestReset_UserFound_ShouldReturnResetLink() throws Exception {
-        when(passwordResetService.generateResetToken("user@example.com")).thenReturn("http://mocked/reset");
+    public void testRequestReset_UserFound_ShouldReturn202WithoutLink() throws Exception {
+        when(passwordResetService.generateResetToken("user@example.com")).thenReturn(true);
 
         mockMvc.perform(post("/users/request_reset")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(Map.of("email", "user@example.com"))))
-                .andExpect(status().isOk())
-                .andExpect(jsonPath("$.reset_link").value("http://mocked/reset"));
+                .andExpect(status().isAccepted())
+                .andExpect(content().string("If this email is registered, a reset link has been sent"));
     }
 
-    //Test /users/request_reset (user not found)
+    //Test /users/request_reset (user not found): same answer, so accounts can not be probed
     @Test
-    public void testRequestReset_UserNotFound_ShouldReturn404() throws Exception {
-        when(passwordResetService.generateResetToken("ghost@example.com")).thenReturn(null);
+    public void testRequestReset_UserNotFound_ShouldReturnSameAnswer() throws Exception {
+        when(passwordResetService.generateResetToken("ghost@example.com")).thenReturn(false);
 
         mockMvc.perform(post("/users/request_reset")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(Map.of("email", "ghost@example.com"))))
-                .andExpect(status().isNotFound())
-                .andExpect(content().string("User not found"));
+                .andExpect(status().isAccepted())
+                .andExpect(content().string("If this email is registered, a reset link has been sent"));
     }
 
     //Test /users/reset_password (success)
     @Test
     public void testResetPassword_ValidToken_ShouldReturnSuccess() throws Exception {
-        when(passwordResetService.resetPassword("token123", "newPass")).thenReturn(true);
+        when(passwordResetService.resetPassword("token123", "newPass")).thenReturn(CompletableFuture.completedFuture(true));
 
-        mockMvc.perform(post("/users/reset_password")
+        performAsync(post("/users/reset_password")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(Map.of("token", "token123", "newPassword", "newPass"))))
                 .andExpect(status().isOk())
@@ -146,12 +188,27 @@ public class UserControllerTest {
     //Test /users/reset_password (invalid or expired)
     @Test
     public void testResetPassword_InvalidToken_ShouldReturnBadRequest() throws Exception {
-        when(passwordResetService.resetPassword("invalid", "pass")).thenReturn(false);
+        when(passwordResetService.resetPassword("invalid", "pass")).thenReturn(CompletableFuture.completedFuture(false));
 
-        mockMvc.perform(post("/users/reset_password")
+        performAsync(post("/users/reset_password")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content(objectMapper.writeValueAsString(Map.of("token", "invalid", "newPassword", "pass"))))
                 .andExpect(status().isBadRequest())
                 .andExpect(content().string("Invalid or expired token"));
     }
+
+    //Test /users/login when the hashing queue is full
+    @Test
+    public void testLogin_HashingBusy_ShouldReturn503() throws Exception {
+        User user = new User("busy@example.com", "pass");
+
+        when(userService.findUserByEmail(user.getEmail())).thenReturn(user);
+        when(userService.checkPasswordAsync(user, "pass")).thenThrow(new PasswordHashingBusyException());
+
+        mockMvc.perform(post("/users/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(user)))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"));
+    }
 }
@@ -0,0 +1,112 @@
+package coptic.user_api.outbox;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//The outbox table against Postgres; the background worker is off (here and in every test context) so the tests own every row
+@SpringBootTest(properties = "outbox.worker.enabled=false")
+public class OutboxTest {
+
+    @Autowired
+    private Outbox outbox;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    public void setUp() {
+        jdbcTemplate.update("DELETE FROM outbox");
+    }
+
+    //A message commits or rolls back with the transaction that wrote it
+    @Test
+    public void testEnqueue_ShouldFollowCallerTransaction() {
+        transactionTemplate.executeWithoutResult(status -> {
+            outbox.enqueue(OutboxMessage.PASSWORD_RESET_EMAIL, "rolled-back@example.com", "link");
+            status.setRollbackOnly();
+        });
+        assertEquals(0, outbox.countPending());
+
+        transactionTemplate.executeWithoutResult(status ->
+                outbox.enqueue(OutboxMessage.PASSWORD_RESET_EMAIL, "committed@example.com", "link"));
+        assertEquals(1, outbox.countPending());
+    }
+
+    //Claimed messages are leased: claimed again only once the lease runs out, and deleted once delivered
+    @Test
+    public void testClaim_ShouldLeaseAndCountAttempts() throws InterruptedException {
+        outbox.enqueue(OutboxMessage.PASSWORD_RESET_EMAIL, "a@example.com", "link-a");
+
+        List<OutboxMessage> first = outbox.claim(10, 200);
+        assertEquals(1, first.size());
+        assertEquals(1, first.get(0).getAttempts());
+        assertEquals("link-a", first.get(0).getPayload());
+        assertTrue(outbox.claim(10, 200).isEmpty());
+
+        Thread.sleep(300);
+        List<OutboxMessage> again = outbox.claim(10, 60_000);
+        assertEquals(2, again.get(0).getAttempts());
+
+        outbox.delete(List.of(again.get(0).getId()));
+        assertEquals(0, outbox.countPending());
+    }
+
+    //Concurrent workers claim disjoint sets of messages
+    @Test
+    public void testClaim_ConcurrentWorkers_ShouldNotOverlap() {
+        for (int i = 0; i < 40; i++) {
+            outbox.enqueue(OutboxMessage.PASSWORD_RESET_EMAIL, "user" + i + "@example.com", "link");
+        }
+
+        List<CompletableFuture<List<OutboxMessage>>> claims = List.of(
+                CompletableFuture.supplyAsync(() -> outbox.claim(15, 60_000)),
+                CompletableFuture.supplyAsync(() -> outbox.claim(15, 60_000)),
+                CompletableFuture.supplyAsync(() -> outbox.claim(15, 60_000)));
+
+        Set<Long> seen = new HashSet<>();
+        int total = 0;
+        for (CompletableFuture<List<OutboxMessage>> claim : claims) {
+            for (OutboxMessage message : claim.join()) {
+                assertTrue(seen.add(message.getId()), "claimed twice: " + message.getId());
+                total++;
+            }
+        }
+        assertEquals(40, total + outbox.claim(100, 60_000).size());
+    }
+
+    //Retried messages wait out their delay; failed ones are never claimed again but stay in the table
+    @Test
+    public void testRetryAndFail_ShouldControlWhenMessagesAreDue() {
+        outbox.enqueue(OutboxMessage.PASSWORD_RESET_EMAIL, "retry@example.com", "link");
+        outbox.enqueue(OutboxMessage.PASSWORD_RESET_EMAIL, "dead@example.com", "link");
+        List<OutboxMessage> claimed = outbox.claim(10, 0);
+        Map<String, Long> byRecipient = claimed.stream().collect(Collectors.toMap(OutboxMessage::getRecipient, OutboxMessage::getId));
+
+        outbox.retryLater(byRecipient.get("retry@example.com"), 60_000, "timeout");
+        outbox.markFailed(byRecipient.get("dead@example.com"), "rejected");
+
+        assertTrue(outbox.claim(10, 0).isEmpty());
+        assertEquals(1, outbox.countPending());
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT count(*) FROM outbox", Integer.class));
+        //The failed row keeps its error but not its payload
+        assertNull(jdbcTemplate.queryForObject("SELECT payload FROM outbox WHERE failed_at IS NOT NULL", String.class));
+        assertEquals("link", jdbcTemplate.queryForObject("SELECT payload FROM outbox WHERE failed_at IS NULL", String.class));
+        assertTrue(outbox.oldestPendingAgeSeconds() >= 0);
+    }
+}
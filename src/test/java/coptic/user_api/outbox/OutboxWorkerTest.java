@@ -0,0 +1,102 @@
+package coptic.user_api.outbox;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxWorkerTest {
+
+    @Mock
+    private Outbox outbox;
+
+    @Mock
+    private OutboxSender sender;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private OutboxWorker worker;
+
+    @BeforeEach
+    public void setUp() {
+        worker = new OutboxWorker(outbox, sender, registry, true, 2, 5, 60_000, 1000, 8000, 3);
+    }
+
+    //Delivered messages are deleted together, and their lag is recorded
+    @Test
+    public void testDeliverBatch_ShouldSendAndDeleteDelivered() throws Exception {
+        when(outbox.claim(2, 60_000)).thenReturn(List.of(message(1, 1), message(2, 1)));
+
+        assertEquals(2, worker.deliverBatch());
+
+        verify(sender, times(2)).send(any());
+        verify(outbox).delete(List.of(1L, 2L));
+        assertEquals(2, worker.getDeliveredCount());
+        assertEquals(2, registry.timer("outbox.delivery.lag").count());
+    }
+
+    //A failed delivery is rescheduled with backoff; the rest of the batch still goes out
+    @Test
+    public void testDeliverBatch_SendFails_ShouldRetryLater() throws Exception {
+        OutboxMessage failing = message(1, 2);
+        when(outbox.claim(2, 60_000)).thenReturn(List.of(failing, message(2, 1)));
+        doThrow(new IOException("provider down")).when(sender).send(failing);
+
+        worker.deliverBatch();
+
+        verify(outbox).retryLater(eq(1L), eq(2000L), contains("provider down"));
+        verify(outbox).delete(List.of(2L));
+        assertEquals(1, worker.getFailedAttemptCount());
+    }
+
+    //Out of attempts: the message is marked failed instead of retried
+    @Test
+    public void testDeliverBatch_LastAttemptFails_ShouldGiveUp() throws Exception {
+        OutboxMessage failing = message(1, 3);
+        when(outbox.claim(2, 60_000)).thenReturn(List.of(failing));
+        doThrow(new IOException("mailbox unavailable")).when(sender).send(failing);
+
+        worker.deliverBatch();
+
+        verify(outbox).markFailed(eq(1L), contains("mailbox unavailable"));
+        verify(outbox, never()).retryLater(anyLong(), anyLong(), any());
+        assertEquals(1, worker.getGivenUpCount());
+    }
+
+    //A poll keeps claiming while batches come back full, within its budget
+    @Test
+    public void testPoll_ShouldDrainUntilShortBatch() {
+        when(outbox.claim(2, 60_000))
+                .thenReturn(List.of(message(1, 1), message(2, 1)))
+                .thenReturn(List.of(message(3, 1)));
+
+        worker.poll();
+
+        verify(outbox, times(2)).claim(2, 60_000);
+        assertEquals(3, worker.getDeliveredCount());
+    }
+
+    //Retry delays double from the initial delay up to the cap
+    @Test
+    public void testBackoff_ShouldDoubleUpToCap() {
+        assertEquals(1000, worker.backoffMillis(1));
+        assertEquals(2000, worker.backoffMillis(2));
+        assertEquals(4000, worker.backoffMillis(3));
+        assertEquals(8000, worker.backoffMillis(4));
+        assertEquals(8000, worker.backoffMillis(40));
+    }
+
+    private static OutboxMessage message(long id, int attempts) {
+        return new OutboxMessage(id, OutboxMessage.PASSWORD_RESET_EMAIL, "user@example.com", "link",
+                Instant.now().minusSeconds(1), attempts);
+    }
+}
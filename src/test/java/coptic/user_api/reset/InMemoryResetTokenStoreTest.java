@@ -0,0 +1,49 @@
+package coptic.user_api.reset;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InMemoryResetTokenStoreTest extends ResetTokenStoreContract {
+
+    private final AtomicInteger userIds = new AtomicInteger();
+
+    @Override
+    protected ResetTokenStore createStore(Clock clock) {
+        return new InMemoryResetTokenStore(1000, clock, Runnable::run);
+    }
+
+    @Override
+    protected int newUserId() {
+        return userIds.incrementAndGet();
+    }
+
+    //The number of tokens held stays within the configured bound
+    @Test
+    public void testPut_OverCapacity_ShouldEvict() {
+        InMemoryResetTokenStore small = new InMemoryResetTokenStore(10, clock, Runnable::run);
+        for (int i = 0; i < 100; i++) {
+            small.put(newUserId(), digest("token-" + i), Duration.ofMinutes(30));
+        }
+        small.deleteExpired(0);
+
+        assertTrue(small.size() <= 10, "size " + small.size());
+    }
+
+    //Expired tokens are reclaimed without anyone sweeping them
+    @Test
+    public void testExpiry_ShouldReclaimEntries() {
+        InMemoryResetTokenStore memory = (InMemoryResetTokenStore) store;
+        memory.put(newUserId(), digest("a"), Duration.ofMinutes(1));
+        memory.put(newUserId(), digest("b"), Duration.ofMinutes(1));
+
+        clock.advance(Duration.ofMinutes(2));
+        memory.deleteExpired(0);
+
+        assertEquals(0, memory.size());
+    }
+}
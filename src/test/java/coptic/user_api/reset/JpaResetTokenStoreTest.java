@@ -0,0 +1,31 @@
+package coptic.user_api.reset;
+
+import coptic.user_api.models.User;
+import coptic.user_api.repositories.PasswordResetTokenRepository;
+import coptic.user_api.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Clock;
+import java.util.UUID;
+
+//Runs the store contract against the password_reset_tokens table
+@SpringBootTest
+public class JpaResetTokenStoreTest extends ResetTokenStoreContract {
+
+    @Autowired
+    private PasswordResetTokenRepository tokenRepo;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Override
+    protected ResetTokenStore createStore(Clock clock) {
+        return new JpaResetTokenStore(tokenRepo, clock);
+    }
+
+    @Override
+    protected int newUserId() {
+        return userRepo.save(new User("reset-store-" + UUID.randomUUID() + "@example.com", "hash")).getId();
+    }
+}
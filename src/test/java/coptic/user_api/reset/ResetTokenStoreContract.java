@@ -0,0 +1,165 @@
+package coptic.user_api.reset;
+
+import coptic.user_api.security.TokenDigest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Behaviour every ResetTokenStore must have; each implementation's test extends this class
+abstract class ResetTokenStoreContract {
+
+    //Clock the store under test reads; tests move it forward instead of sleeping
+    protected final MutableClock clock = new MutableClock(Instant.now());
+
+    protected ResetTokenStore store;
+
+    //A store reading the given clock
+    protected abstract ResetTokenStore createStore(Clock clock);
+
+    //The ID of a user tokens may be stored for (a fresh one per call)
+    protected abstract int newUserId();
+
+    @BeforeEach
+    public void setUpStore() {
+        store = createStore(clock);
+    }
+
+    //A stored token leads to its user, and works exactly once
+    @Test
+    public void testConsume_ShouldSucceedOnce() {
+        int userId = newUserId();
+        byte[] token = digest("token-a");
+        store.put(userId, token, Duration.ofMinutes(30));
+
+        assertEquals(userId, store.findUserId(token));
+        assertTrue(store.consume(token));
+        assertFalse(store.consume(token));
+        assertNull(store.findUserId(token));
+    }
+
+    //Unknown tokens lead nowhere
+    @Test
+    public void testUnknownToken_ShouldNotBeFound() {
+        assertNull(store.findUserId(digest("never-stored")));
+        assertFalse(store.consume(digest("never-stored")));
+    }
+
+    //A new token for the same user makes the previous one unusable
+    @Test
+    public void testPut_SecondToken_ShouldReplaceFirst() {
+        int userId = newUserId();
+        byte[] first = digest("first");
+        byte[] second = digest("second");
+        store.put(userId, first, Duration.ofMinutes(30));
+        store.put(userId, second, Duration.ofMinutes(30));
+
+        assertNull(store.findUserId(first));
+        assertFalse(store.consume(first));
+        assertEquals(userId, store.findUserId(second));
+        assertTrue(store.consume(second));
+    }
+
+    //Tokens of different users are independent
+    @Test
+    public void testPut_DifferentUsers_ShouldKeepBothTokens() {
+        int alice = newUserId();
+        int bob = newUserId();
+        store.put(alice, digest("alice"), Duration.ofMinutes(30));
+        store.put(bob, digest("bob"), Duration.ofMinutes(30));
+
+        assertTrue(store.consume(digest("alice")));
+        assertEquals(bob, store.findUserId(digest("bob")));
+    }
+
+    //Past its TTL a token can be neither found nor consumed
+    @Test
+    public void testExpiredToken_ShouldBeUnusable() {
+        int userId = newUserId();
+        byte[] token = digest("short-lived");
+        store.put(userId, token, Duration.ofMinutes(30));
+
+        clock.advance(Duration.ofMinutes(29));
+        assertEquals(userId, store.findUserId(token));
+
+        clock.advance(Duration.ofMinutes(2));
+        assertNull(store.findUserId(token));
+        assertFalse(store.consume(token));
+    }
+
+    //Removing expired tokens keeps live ones
+    @Test
+    public void testDeleteExpired_ShouldKeepLiveTokens() {
+        int expiring = newUserId();
+        int live = newUserId();
+        store.put(expiring, digest("expiring"), Duration.ofMinutes(5));
+        store.put(live, digest("live"), Duration.ofHours(2));
+
+        clock.advance(Duration.ofMinutes(10));
+        store.deleteExpired(1000);
+
+        assertNull(store.findUserId(digest("expiring")));
+        assertEquals(live, store.findUserId(digest("live")));
+    }
+
+    //Concurrent resets with the same link: exactly one consumes it
+    @Test
+    public void testConsume_Concurrent_ShouldSucceedForOneCaller() throws Exception {
+        int userId = newUserId();
+        byte[] token = digest("raced");
+        store.put(userId, token, Duration.ofMinutes(30));
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Boolean>> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                calls.add(() -> store.consume(token));
+            }
+            int successes = 0;
+            for (Future<Boolean> result : pool.invokeAll(calls)) {
+                successes += result.get() ? 1 : 0;
+            }
+            assertEquals(1, successes);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    //Digests are salted with the test's clock so runs against a shared database never collide
+    protected byte[] digest(String token) {
+        return TokenDigest.sha256Bytes(token + "|" + clock.start);
+    }
+
+    protected static final class MutableClock extends Clock {
+        private final Instant start;
+        private volatile Instant now;
+
+        MutableClock(Instant start) {
+            this.start = start;
+            this.now = start;
+        }
+
+        void advance(Duration duration) { now = now.plus(duration); }
+
+        @Override
+        public ZoneId getZone() { return ZoneOffset.UTC; }
+
+        @Override
+        public Clock withZone(ZoneId zone) { throw new UnsupportedOperationException(); }
+
+        @Override
+        public Instant instant() { return now; }
+    }
+}
@@ -0,0 +1,81 @@
+package coptic.user_api.search;
+
+import coptic.user_api.dto.BookmarkView;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//In-process equivalent of PostgresBookmarkSearchIndex for tests:
+//same folding (TextNormalizer), every query word must match, weighted A (name) > B (text, translations) > C (notes)
+public class InMemoryBookmarkSearchIndex implements BookmarkSearchIndex {
+
+    //Same relative weights as Postgres' ts_rank defaults for A, B and C
+    private static final double NAME_WEIGHT = 1.0;
+    private static final double TEXT_WEIGHT = 0.4;
+    private static final double NOTES_WEIGHT = 0.2;
+
+    //userId -> word -> bookmarkId -> score
+    private final Map<Integer, Map<String, Map<Integer, Double>>> postings = new HashMap<>();
+    private final Map<Integer, BookmarkView> views = new HashMap<>();
+
+    /**
+     * Adds (or replaces) a bookmark in the index
+     * @param userId The owner's ID
+     * @param view The bookmark
+     */
+    public void put(int userId, BookmarkView view) {
+        remove(userId, view.getId());
+        views.put(view.getId(), view);
+        Map<String, Map<Integer, Double>> words = postings.computeIfAbsent(userId, id -> new HashMap<>());
+        add(words, view.getId(), view.getName(), NAME_WEIGHT);
+        add(words, view.getId(), view.getCopticText(), TEXT_WEIGHT);
+        add(words, view.getId(), view.getTransliteration(), TEXT_WEIGHT);
+        add(words, view.getId(), view.getEnglishTranslation(), TEXT_WEIGHT);
+        add(words, view.getId(), view.getArabicTranslation(), TEXT_WEIGHT);
+        add(words, view.getId(), view.getNotes(), NOTES_WEIGHT);
+    }
+
+    /**
+     * Removes a bookmark from the index
+     * @param userId The owner's ID
+     * @param bookmarkId The bookmark's ID
+     */
+    public void remove(int userId, int bookmarkId) {
+        views.remove(bookmarkId);
+        Map<String, Map<Integer, Double>> words = postings.get(userId);
+        if (words != null) {
+            words.values().forEach(scores -> scores.remove(bookmarkId));
+        }
+    }
+
+    @Override
+    public List<BookmarkView> search(int userId, String query, int offset, int limit) {
+        String[] terms = TextNormalizer.tokenize(query);
+        Map<String, Map<Integer, Double>> words = postings.getOrDefault(userId, Map.of());
+        if (terms.length == 0) {
+            return List.of();
+        }
+
+        //Intersect the postings of every term, summing scores
+        Map<Integer, Double> ranked = new HashMap<>(words.getOrDefault(terms[0], Map.of()));
+        for (int i = 1; i < terms.length; i++) {
+            Map<Integer, Double> next = words.getOrDefault(terms[i], Map.of());
+            ranked.keySet().retainAll(next.keySet());
+            ranked.replaceAll((id, score) -> score + next.get(id));
+        }
+
+        List<Map.Entry<Integer, Double>> results = new ArrayList<>(ranked.entrySet());
+        results.sort(Comparator.<Map.Entry<Integer, Double>>comparingDouble(Map.Entry::getValue).reversed()
+                .thenComparing(Map.Entry::getKey));
+        return results.stream().skip(offset).limit(limit).map(e -> views.get(e.getKey())).toList();
+    }
+
+    private static void add(Map<String, Map<Integer, Double>> words, int bookmarkId, String text, double weight) {
+        for (String word : TextNormalizer.tokenize(text)) {
+            words.computeIfAbsent(word, w -> new HashMap<>()).merge(bookmarkId, weight, Double::sum);
+        }
+    }
+}
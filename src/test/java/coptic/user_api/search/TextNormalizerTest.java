@@ -0,0 +1,48 @@
+package coptic.user_api.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TextNormalizerTest {
+
+    //Coptic overlines (combining overline U+0305, Coptic combining marks) are not part of the word
+    @Test
+    public void testNormalize_ShouldStripCopticOverlines() {
+        assertEquals("\u2ca1\u2c9f\u2ca5", TextNormalizer.normalize("\u2ca1\u0305\u2c9f\u0305\u2ca5\u0305"));
+        assertEquals("\u2c93\u2c8f\u2ca5", TextNormalizer.normalize("\u2c93\u2cef\u2c8f\u2ca5\ufe24\ufe26"));
+    }
+
+    //Arabic harakat and tatweel are removed, leaving the bare letters
+    @Test
+    public void testNormalize_ShouldStripArabicDiacriticsAndTatweel() {
+        //as-salamu with shadda, fatha and damma
+        assertEquals("\u0627\u0644\u0633\u0644\u0627\u0645",
+                TextNormalizer.normalize("\u0627\u0644\u0633\u0651\u064e\u0644\u064e\u0627\u0645\u064f"));
+        //salam stretched with tatweel
+        assertEquals("\u0633\u0644\u0627\u0645", TextNormalizer.normalize("\u0633\u0640\u0640\u0644\u0627\u0645"));
+    }
+
+    //Text is composed to NFC, and ASCII and Coptic capitals are lowercased (Coptic in both of its Unicode blocks)
+    @Test
+    public void testNormalize_ShouldComposeAndLowercase() {
+        assertEquals("\u2ca1\u2c81", TextNormalizer.normalize("\u2ca0\u2c80"));
+        assertEquals("\u03e3\u2cf3", TextNormalizer.normalize("\u03e2\u2cf2"));
+        //Decomposed E + acute composes to a single letter, which keeps its accent
+        assertEquals("caf\u00c9", TextNormalizer.normalize("CAFE\u0301"));
+        assertEquals("", TextNormalizer.normalize(null));
+    }
+
+    //Like lower() under the C collation, capitals outside ASCII and Coptic are left alone
+    @Test
+    public void testNormalize_ShouldNotFoldOtherScripts() {
+        assertEquals("\u00c9cole \u0394\u0399\u0391 \u041c\u0438\u0440", TextNormalizer.normalize("\u00c9cole \u0394\u0399\u0391 \u041c\u0438\u0440"));
+    }
+
+    //Words are split on anything that is not a letter or digit
+    @Test
+    public void testTokenize_ShouldSplitOnPunctuationAndSpaces() {
+        assertArrayEquals(new String[]{"the", "lord", "\u2ca1\u2c9f\u2ca5"}, TextNormalizer.tokenize(" The Lord, \u2ca1\u0305\u2c9f\u0305\u2ca5\u0305! "));
+        assertEquals(0, TextNormalizer.tokenize("  ").length);
+    }
+}
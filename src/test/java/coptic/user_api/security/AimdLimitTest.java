@@ -0,0 +1,68 @@
+package coptic.user_api.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AimdLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(500);
+
+    //Admission stops at the limit and resumes when a slot is released
+    @Test
+    public void testTryAcquire_ShouldStopAtLimit() {
+        AimdLimit limit = new AimdLimit(2, 1, 10, 100);
+
+        assertTrue(limit.tryAcquire());
+        assertTrue(limit.tryAcquire());
+        assertFalse(limit.tryAcquire());
+
+        limit.release(FAST, false);
+        assertTrue(limit.tryAcquire());
+        assertEquals(2, limit.getInFlight());
+    }
+
+    //Fast completions under load grow the limit by one, up to the max
+    @Test
+    public void testRelease_FastAndBusy_ShouldGrowToMax() {
+        AimdLimit limit = new AimdLimit(2, 1, 4, 100);
+        for (int i = 0; i < 10; i++) {
+            while (limit.tryAcquire()) { }
+            limit.release(FAST, false);
+        }
+        assertEquals(4, limit.getLimit());
+    }
+
+    //Fast completions while mostly idle leave the limit alone
+    @Test
+    public void testRelease_FastAndIdle_ShouldNotGrow() {
+        AimdLimit limit = new AimdLimit(10, 1, 100, 100);
+        for (int i = 0; i < 10; i++) {
+            limit.tryAcquire();
+            limit.release(FAST, false);
+        }
+        assertEquals(10, limit.getLimit());
+    }
+
+    //Slow or failed completions cut the limit, never below the min
+    @Test
+    public void testRelease_SlowOrFailed_ShouldShrinkToMin() {
+        AimdLimit limit = new AimdLimit(20, 3, 100, 100);
+        limit.tryAcquire();
+        limit.release(SLOW, false);
+        assertEquals(18, limit.getLimit());
+
+        limit.tryAcquire();
+        limit.release(FAST, true);
+        assertEquals(16, limit.getLimit());
+
+        for (int i = 0; i < 50; i++) {
+            limit.tryAcquire();
+            limit.release(SLOW, false);
+        }
+        assertEquals(3, limit.getLimit());
+    }
+}
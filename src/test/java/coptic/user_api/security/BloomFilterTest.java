@@ -0,0 +1,127 @@
+package coptic.user_api.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterTest {
+
+    /**
+     * Every added key must be reported as possibly present
+     */
+    @Test
+    public void testAddedKeys_AreNeverMissing() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.001);
+        List<UUID> keys = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            UUID key = UUID.randomUUID();
+            keys.add(key);
+            filter.put(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        }
+
+        for (UUID key : keys) {
+            assertTrue(filter.mightContain(key.getMostSignificantBits(), key.getLeastSignificantBits()));
+        }
+    }
+
+    /**
+     * At its expected size, the false positive rate should stay close to the target (here well under 3x)
+     */
+    @Test
+    public void testFalsePositiveRate_StaysNearTarget() {
+        BloomFilter filter = BloomFilter.create(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            UUID key = UUID.randomUUID();
+            filter.put(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        }
+
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            UUID key = UUID.randomUUID();
+            if (filter.mightContain(key.getMostSignificantBits(), key.getLeastSignificantBits())) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < probes * 0.03, "false positives: " + falsePositives);
+    }
+
+    /**
+     * Keys that differ in a single low bit (not random UUIDs) are still spread over different bits
+     */
+    @Test
+    public void testSequentialKeys_AreDistinguished() {
+        BloomFilter filter = BloomFilter.create(1_000, 0.001);
+        for (long i = 0; i < 1_000; i++) {
+            filter.put(0, i * 2);
+        }
+
+        int falsePositives = 0;
+        for (long i = 0; i < 1_000; i++) {
+            if (filter.mightContain(0, i * 2 + 1)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 20, "false positives: " + falsePositives);
+    }
+
+    /**
+     * Keys added concurrently (setting bits in the same words) must all be kept
+     */
+    @Test
+    public void testConcurrentPuts_LoseNoKey() throws InterruptedException {
+        BloomFilter filter = BloomFilter.create(64, 0.01);
+        int threads = 4;
+        int perThread = 5_000;
+        long[][] keys = new long[threads][perThread];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long[] own = keys[t];
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < own.length; i++) {
+                    own[i] = UUID.randomUUID().getLeastSignificantBits();
+                    filter.put(own[i], own[i]);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        for (long[] own : keys) {
+            for (long key : own) {
+                assertTrue(filter.mightContain(key, key));
+            }
+        }
+    }
+
+    /**
+     * Sizing: bits are a power of two and grow with the expected number of keys
+     */
+    @Test
+    public void testCreate_SizesForExpectedKeys() {
+        BloomFilter small = BloomFilter.create(1_000, 0.001);
+        BloomFilter large = BloomFilter.create(100_000, 0.001);
+
+        assertEquals(0, small.bitSize() & (small.bitSize() - 1));
+        assertTrue(small.bitSize() >= 14_378); // -n ln p / (ln 2)^2
+        assertTrue(large.bitSize() > small.bitSize());
+        assertTrue(small.hashCount() >= 1);
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(1_000, 0));
+    }
+}
@@ -0,0 +1,89 @@
+package coptic.user_api.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConcurrencyLimitFilterTest {
+
+    private Map<ConcurrencyLimitFilter.Group, AimdLimit> limits;
+    private ConcurrencyLimitFilter filter;
+
+    @BeforeEach
+    public void setUp() {
+        limits = new EnumMap<>(ConcurrencyLimitFilter.Group.class);
+        limits.put(ConcurrencyLimitFilter.Group.AUTH, new AimdLimit(1, 1, 1, 1000));
+        limits.put(ConcurrencyLimitFilter.Group.BOOKMARK_READS, new AimdLimit(4, 4, 4, 1000));
+        limits.put(ConcurrencyLimitFilter.Group.BOOKMARK_WRITES, new AimdLimit(2, 2, 2, 1000));
+        limits.put(ConcurrencyLimitFilter.Group.BULK, new AimdLimit(2, 2, 2, 60_000));
+        filter = new ConcurrencyLimitFilter(limits, 0.5);
+    }
+
+    //Requests map to their groups; other routes are not limited
+    @Test
+    public void testGroupOf() {
+        assertEquals(ConcurrencyLimitFilter.Group.AUTH, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("POST", "/users/login")));
+        assertEquals(ConcurrencyLimitFilter.Group.BOOKMARK_READS, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/bookmarks/search")));
+        assertEquals(ConcurrencyLimitFilter.Group.BOOKMARK_WRITES, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("PATCH", "/bookmarks/3")));
+        assertEquals(ConcurrencyLimitFilter.Group.BULK, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/bookmarks/export")));
+        assertEquals(ConcurrencyLimitFilter.Group.BULK, ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("POST", "/bookmarks/import")));
+        assertNull(ConcurrencyLimitFilter.groupOf(new MockHttpServletRequest("GET", "/swagger-ui.html")));
+    }
+
+    //A request arriving while its group is full is shed with 503; the slot frees up when the first one finishes
+    @Test
+    public void testFullGroup_ShouldShedWith503() throws ServletException, IOException {
+        MockHttpServletResponse[] inner = new MockHttpServletResponse[1];
+        FilterChain nested = (request, response) -> inner[0] = send("POST", "/users/login", (req, res) -> {});
+
+        send("POST", "/users/login", nested);
+
+        assertEquals(503, inner[0].getStatus());
+        assertEquals("1", inner[0].getHeader("Retry-After"));
+        assertEquals(1, filter.getShedCount(ConcurrencyLimitFilter.Group.AUTH));
+        assertEquals(0, limits.get(ConcurrencyLimitFilter.Group.AUTH).getInFlight());
+        assertEquals(200, send("POST", "/users/login", (req, res) -> {}).getStatus());
+    }
+
+    //An async request keeps its slot until the async work completes
+    @Test
+    public void testAsyncRequest_ShouldHoldSlotUntilComplete() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/bookmarks/add");
+        request.setAsyncSupported(true);
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+
+        AimdLimit writes = limits.get(ConcurrencyLimitFilter.Group.BOOKMARK_WRITES);
+        assertEquals(1, writes.getInFlight());
+
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+        assertEquals(0, writes.getInFlight());
+    }
+
+    //Imports and exports are shed while reads are busy, even with bulk slots free
+    @Test
+    public void testBulk_ReadsUnderPressure_ShouldBeShed() throws ServletException, IOException {
+        AimdLimit reads = limits.get(ConcurrencyLimitFilter.Group.BOOKMARK_READS);
+        reads.tryAcquire();
+        assertEquals(200, send("GET", "/bookmarks/export", (req, res) -> {}).getStatus());
+
+        reads.tryAcquire();
+        assertEquals(503, send("GET", "/bookmarks/export", (req, res) -> {}).getStatus());
+        assertEquals(200, send("GET", "/bookmarks/search", (req, res) -> {}).getStatus());
+    }
+
+    private MockHttpServletResponse send(String method, String uri, FilterChain chain) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest(method, uri), response, chain);
+        return response;
+    }
+}
@@ -1,7 +1,6 @@
 package coptic.user_api.security;
 
 import coptic.user_api.models.User;
-import coptic.user_api.repositories.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -15,9 +14,9 @@ import static org.mockito.Mockito.when;
 
 public class CustomUserDetailsServiceTest {
 
-    //Mock the UserRepository
+    //Mock the user cache (which fronts UserRepository)
     @Mock
-    private UserRepository userRepository;
+    private UserCache userCache;
 
     //Inject the mock into the service being tested
     @InjectMocks
@@ -42,8 +41,8 @@ public class CustomUserDetailsServiceTest {
         mockUser.setEmail("test@example.com");
         mockUser.setPassword("password123");
 
-        //Stub repository to return the mock user
-        when(userRepository.findByEmail("test@example.com")).thenReturn(mockUser);
+        //Stub cache to return the mock user
+        when(userCache.findByEmail("test@example.com")).thenReturn(mockUser);
 
         //Act: call the method
         UserDetails result = customUserDetailsService.loadUserByUsername("test@example.com");
@@ -60,8 +59,8 @@ public class CustomUserDetailsServiceTest {
      */
     @Test
     public void testLoadUserByUsername_UserNotFound_ShouldThrowException() {
-        //Stub repository to return null
-        when(userRepository.findByEmail("missing@example.com")).thenReturn(null);
+        //Stub cache to return null
+        when(userCache.findByEmail("missing@example.com")).thenReturn(null);
 
         //Act + Assert: expect UsernameNotFoundException
         assertThrows(UsernameNotFoundException.class, () ->
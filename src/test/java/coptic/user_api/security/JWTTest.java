@@ -1,8 +1,15 @@
 package coptic.user_api.security;
 
+import coptic.user_api.models.User;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class JWTTest {
@@ -22,43 +29,74 @@ public class JWTTest {
     }
 
     /**
-     * Test that generateToken creates a valid JWT and extractEmail returns the original email
+     * Test that parseClaims rejects a token whose payload was altered after signing
      */
     @Test
-    public void testGenerateTokenAndExtractEmail_ShouldMatchOriginalEmail() {
-        //Arrange: email to encode in the token
-        String email = "user@example.com";
+    public void testParseClaims_TamperedToken_ShouldThrow() {
+        //Arrange: valid token with its payload swapped for another one
+        User user = new User("user@example.com", "hash");
+        user.setId(42);
+        String[] parts = jwt.generateToken(user, UUID.randomUUID(), Instant.now()).split("\\.");
+        String forged = jwt.generateToken(new User("other@example.com", "hash"), UUID.randomUUID(), Instant.now());
+        String tampered = parts[0] + "." + forged.split("\\.")[1] + "." + parts[2];
 
-        //Act: generate token and extract it back
-        String token = jwt.generateToken(email);
-        String extractedEmail = jwt.extractEmail(token);
+        //Act + Assert: the signature no longer matches
+        assertThrows(JwtException.class, () -> jwt.parseClaims(tampered));
+    }
 
-        //Assert: make sure it matches
-        assertEquals(email, extractedEmail);
+    /**
+     * Test that parseClaims rejects a token past its expiry
+     */
+    @Test
+    public void testParseClaims_ExpiredToken_ShouldThrow() {
+        //Arrange: token issued two lifetimes ago
+        User user = new User("user@example.com", "hash");
+        user.setId(42);
+        String token = jwt.generateToken(user, UUID.randomUUID(), Instant.now().minus(JWT.DEFAULT_ACCESS_TOKEN_TTL.multipliedBy(2)));
+
+        //Act + Assert
+        assertThrows(JwtException.class, () -> jwt.parseClaims(token));
     }
 
     /**
-     * Test that validateToken returns true for a freshly generated token
+     * Test that a token generated for a User carries the user ID and token version claims
      */
     @Test
-    public void testValidateToken_ValidToken_ShouldReturnTrue() {
-        //Arrange: generate a new valid token
-        String email = "user@example.com";
-        String token = jwt.generateToken(email);
+    public void testGenerateTokenForUser_ShouldCarryIdAndVersion() {
+        //Arrange: user with an ID and a bumped token version
+        User user = new User("user@example.com", "hash");
+        user.setId(42);
+        user.setTokenVersion(3);
+
+        //Act
+        Claims claims = jwt.parseClaims(jwt.generateToken(user));
 
-        //Act + Assert: should be valid
-        assertTrue(jwt.validateToken(token, email));
+        //Assert
+        assertEquals("user@example.com", claims.getSubject());
+        assertEquals(42, claims.get(JWT.USER_ID_CLAIM, Integer.class));
+        assertEquals(3, claims.get(JWT.TOKEN_VERSION_CLAIM, Integer.class));
     }
 
     /**
-     * Test that validateToken returns false if the email does not match the one in the token
+     * Test that a user token carries the given jti and expires one access token lifetime after its issue time
      */
     @Test
-    public void testValidateToken_WrongEmail_ShouldReturnFalse() {
-        //Arrange: token with one email
-        String token = jwt.generateToken("user@example.com");
+    public void testGenerateTokenForUser_ShouldCarryJtiAndShortExpiry() {
+        //Arrange: 10-minute access tokens
+        JWT shortLived = new JWT(VALID_BASE64_SECRET, 600);
+        User user = new User("user@example.com", "hash");
+        user.setId(42);
+        UUID jti = UUID.randomUUID();
+        Instant issuedAt = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+        //Act
+        Claims claims = shortLived.parseClaims(shortLived.generateToken(user, jti, issuedAt));
+
+        //Assert
+        assertEquals(jti.toString(), claims.getId());
+        assertEquals(issuedAt.plusSeconds(600), claims.getExpiration().toInstant());
 
-        //Act + Assert: validating with a different email should fail
-        assertFalse(jwt.validateToken(token, "other@example.com"));
+        //Tokens issued without an explicit jti get a random one each
+        assertNotEquals(jwt.parseClaims(jwt.generateToken(user)).getId(), jwt.parseClaims(jwt.generateToken(user)).getId());
     }
 }
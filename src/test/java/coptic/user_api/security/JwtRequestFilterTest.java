@@ -7,6 +7,7 @@ import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -16,7 +17,9 @@ import org.springframework.security.core.userdetails.UserDetailsService;
 
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.time.Instant;
 import java.util.Collections;
+import java.util.UUID;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -27,8 +30,14 @@ public class JwtRequestFilterTest {
     private JwtRequestFilter jwtRequestFilter;
 
     // Dependencies to mock
-    private JWT jwt;
+    private JwtVerifier jwtVerifier;
     private UserDetailsService userDetailsService;
+    private TokenVersionCache tokenVersionCache;
+    private TokenRevocationList revocationList;
+    private SimpleMeterRegistry meterRegistry;
+
+    //Issues the tokens the mocked verifier hands back, shaped like the ones users get
+    private final JWT jwt = new JWT("c29tZXZlcnlzZWN1cmVhbmRsb25nYmFzZTY0c2VjcmV0a2V5");
 
     // Mock HTTP context
     private HttpServletRequest request;
@@ -40,19 +49,34 @@ public class JwtRequestFilterTest {
      */
     @BeforeEach
     public void setUp() throws Exception {
-        jwt = mock(JWT.class);
+        jwtVerifier = mock(JwtVerifier.class);
         userDetailsService = mock(UserDetailsService.class);
-        jwtRequestFilter = new JwtRequestFilter();
+        tokenVersionCache = mock(TokenVersionCache.class);
+        revocationList = mock(TokenRevocationList.class);
+        meterRegistry = new SimpleMeterRegistry();
+        jwtRequestFilter = new JwtRequestFilter(meterRegistry);
 
         //Use reflection to inject mocks into private fields
-        Field jwtField = JwtRequestFilter.class.getDeclaredField("jwt");
-        jwtField.setAccessible(true);
-        jwtField.set(jwtRequestFilter, jwt);
+        Field verifierField = JwtRequestFilter.class.getDeclaredField("jwtVerifier");
+        verifierField.setAccessible(true);
+        verifierField.set(jwtRequestFilter, jwtVerifier);
 
         Field udsField = JwtRequestFilter.class.getDeclaredField("userDetailsService");
         udsField.setAccessible(true);
         udsField.set(jwtRequestFilter, userDetailsService);
 
+        Field versionField = JwtRequestFilter.class.getDeclaredField("tokenVersionCache");
+        versionField.setAccessible(true);
+        versionField.set(jwtRequestFilter, tokenVersionCache);
+
+        Field revocationField = JwtRequestFilter.class.getDeclaredField("revocationList");
+        revocationField.setAccessible(true);
+        revocationField.set(jwtRequestFilter, revocationList);
+
+        Field statelessField = JwtRequestFilter.class.getDeclaredField("stateless");
+        statelessField.setAccessible(true);
+        statelessField.set(jwtRequestFilter, true);
+
         request = mock(HttpServletRequest.class);
         response = mock(HttpServletResponse.class);
         filterChain = mock(FilterChain.class);
@@ -61,19 +85,20 @@ public class JwtRequestFilterTest {
     }
 
     /**
-     * Should extract token from header, validate it, load user, and set authentication
+     * Should verify token once, load user, and set authentication (stateless mode off)
      */
     @Test
-    public void testValidToken_SetsAuthentication() throws ServletException, IOException {
+    public void testValidToken_SetsAuthentication() throws Exception {
         //Arrange
-        String token = "mocked.jwt.token";
         String email = "user@example.com";
+        String token = issue(5, 2, UUID.randomUUID());
         UserDetails userDetails = new User(email, "password", Collections.emptyList());
 
+        Field statelessField = JwtRequestFilter.class.getDeclaredField("stateless");
+        statelessField.setAccessible(true);
+        statelessField.set(jwtRequestFilter, false);
         when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
-        when(jwt.extractEmail(token)).thenReturn(email);
         when(userDetailsService.loadUserByUsername(email)).thenReturn(userDetails);
-        when(jwt.validateToken(token, email)).thenReturn(true);
 
         //Act
         jwtRequestFilter.doFilterInternal(request, response, filterChain);
@@ -86,6 +111,86 @@ public class JwtRequestFilterTest {
         verify(filterChain).doFilter(request, response);
     }
 
+    /**
+     * Should authenticate from the token claims alone when the token version is current
+     */
+    @Test
+    public void testSelfContainedToken_SetsAuthenticationWithoutUserLookup() throws ServletException, IOException {
+        //Arrange
+        String token = issue(5, 2, UUID.randomUUID());
+        when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+        when(tokenVersionCache.isCurrent(5, 2)).thenReturn(true);
+
+        //Act
+        jwtRequestFilter.doFilterInternal(request, response, filterChain);
+
+        //Assert: principal built from claims, database never touched
+        AuthenticatedUser principal = (AuthenticatedUser) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        assertEquals(5, principal.getId());
+        assertEquals("user@example.com", principal.getEmail());
+        verifyNoInteractions(userDetailsService);
+        verify(filterChain).doFilter(request, response);
+        assertEquals(1, meterRegistry.timer("jwt.filter", "phase", "verify").count());
+        assertEquals(1, meterRegistry.timer("jwt.filter", "phase", "version_check").count());
+    }
+
+    /**
+     * Should reject a token whose version is older than the user's current one (password changed/reset)
+     */
+    @Test
+    public void testStaleTokenVersion_SkipsAuthentication() throws ServletException, IOException {
+        //Arrange
+        String token = issue(5, 1, UUID.randomUUID());
+        when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+        when(tokenVersionCache.isCurrent(5, 1)).thenReturn(false);
+
+        //Act
+        jwtRequestFilter.doFilterInternal(request, response, filterChain);
+
+        //Assert
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verify(filterChain).doFilter(request, response);
+    }
+
+    /**
+     * Should reject a token whose jti was revoked (logout, refresh token reuse), checking it by the jti's two halves
+     */
+    @Test
+    public void testRevokedToken_SkipsAuthentication() throws ServletException, IOException {
+        //Arrange
+        UUID jti = UUID.randomUUID();
+        String token = issue(5, 2, jti);
+        when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+        when(revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits())).thenReturn(true);
+
+        //Act
+        jwtRequestFilter.doFilterInternal(request, response, filterChain);
+
+        //Assert: not authenticated, and the version was never looked at
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(tokenVersionCache);
+        verify(filterChain).doFilter(request, response);
+    }
+
+    /**
+     * Tokens without a jti (issued before refresh tokens existed) can not be revoked and skip the check
+     */
+    @Test
+    public void testTokenWithoutJti_SkipsRevocationCheck() throws ServletException, IOException {
+        //Arrange
+        String token = "old.jwt.token";
+        when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
+        when(jwtVerifier.verify(token)).thenReturn(new VerifiedToken("user@example.com", 5, 2, System.currentTimeMillis() + 60_000));
+        when(tokenVersionCache.isCurrent(5, 2)).thenReturn(true);
+
+        //Act
+        jwtRequestFilter.doFilterInternal(request, response, filterChain);
+
+        //Assert
+        assertNotNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(revocationList);
+    }
+
     /**
      * Should skip authentication if header is missing or malformed
      */
@@ -109,19 +214,26 @@ public class JwtRequestFilterTest {
     public void testInvalidToken_SkipsAuthentication() throws ServletException, IOException {
         //Arrange
         String token = "invalid.jwt";
-        String email = "user@example.com";
-        UserDetails userDetails = new User(email, "password", Collections.emptyList());
 
         when(request.getHeader("Authorization")).thenReturn("Bearer " + token);
-        when(jwt.extractEmail(token)).thenReturn(email);
-        when(userDetailsService.loadUserByUsername(email)).thenReturn(userDetails); // ← this was missing
-        when(jwt.validateToken(token, email)).thenReturn(false);
+        when(jwtVerifier.verify(token)).thenReturn(null);
 
         //Act
         jwtRequestFilter.doFilterInternal(request, response, filterChain);
 
-        //Assert: still no authentication
+        //Assert: still no authentication, and no user lookup for a token that failed verification
         assertNull(SecurityContextHolder.getContext().getAuthentication());
+        verifyNoInteractions(userDetailsService);
         verify(filterChain).doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    //Issue a token for user@example.com and have the mocked verifier return its parsed claims
+    private String issue(int userId, int tokenVersion, UUID jti) {
+        coptic.user_api.models.User user = new coptic.user_api.models.User("user@example.com", "hash");
+        user.setId(userId);
+        user.setTokenVersion(tokenVersion);
+        String token = jwt.generateToken(user, jti, Instant.now());
+        when(jwtVerifier.verify(token)).thenReturn(VerifiedToken.from(jwt.parseClaims(token)));
+        return token;
+    }
+}
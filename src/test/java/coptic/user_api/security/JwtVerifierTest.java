@@ -0,0 +1,81 @@
+package coptic.user_api.security;
+
+import coptic.user_api.models.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class JwtVerifierTest {
+
+    //Same test secret as JWTTest
+    private static final String VALID_BASE64_SECRET = "c29tZXZlcnlzZWN1cmVhbmRsb25nYmFzZTY0c2VjcmV0a2V5";
+
+    //Spied JWT utility, so parse calls can be counted
+    private JWT jwt;
+
+    //Verifier being tested
+    private JwtVerifier jwtVerifier;
+
+    //User the tokens are issued to
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        jwt = spy(new JWT(VALID_BASE64_SECRET));
+        jwtVerifier = new JwtVerifier(jwt, 100);
+        user = new User("user@example.com", "hash");
+        user.setId(42);
+    }
+
+    /**
+     * A valid token is parsed once; later requests with the same token come from the cache
+     */
+    @Test
+    public void testVerify_SameTokenTwice_ShouldParseOnce() {
+        String token = jwt.generateToken(user, UUID.randomUUID(), Instant.now());
+
+        VerifiedToken first = jwtVerifier.verify(token);
+        VerifiedToken second = jwtVerifier.verify(token);
+
+        assertNotNull(first);
+        assertEquals("user@example.com", first.getEmail());
+        assertSame(first, second);
+        verify(jwt, times(1)).parseClaims(token);
+    }
+
+    /**
+     * A token signed with another key is rejected and not cached
+     */
+    @Test
+    public void testVerify_ForeignSignature_ShouldReturnNull() {
+        JWT other = new JWT(Base64.getEncoder().encodeToString("another-secret-key-that-is-long-enough!".getBytes()));
+        String token = other.generateToken(user, UUID.randomUUID(), Instant.now());
+
+        assertNull(jwtVerifier.verify(token));
+        assertEquals(0, jwtVerifier.cachedTokenCount());
+    }
+
+    /**
+     * Garbage in the Authorization header is rejected instead of throwing
+     */
+    @Test
+    public void testVerify_MalformedToken_ShouldReturnNull() {
+        assertNull(jwtVerifier.verify("not.a.jwt"));
+    }
+
+    /**
+     * An expired token is rejected
+     */
+    @Test
+    public void testVerify_ExpiredToken_ShouldReturnNull() {
+        String token = jwt.generateToken(user, UUID.randomUUID(), Instant.now().minus(JWT.DEFAULT_ACCESS_TOKEN_TTL).minusSeconds(1));
+
+        assertNull(jwtVerifier.verify(token));
+    }
+}
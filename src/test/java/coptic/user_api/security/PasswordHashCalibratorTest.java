@@ -0,0 +1,20 @@
+package coptic.user_api.security;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHashCalibratorTest {
+
+    //An unreachable target still yields the minimum strength
+    @Test
+    public void testCalibrate_TargetTooLow_ShouldReturnMinimum() {
+        assertEquals(4, PasswordHashCalibrator.calibrate(-1, 4, 6));
+    }
+
+    //A generous target climbs to the maximum strength
+    @Test
+    public void testCalibrate_GenerousTarget_ShouldReturnMaximum() {
+        assertEquals(5, PasswordHashCalibrator.calibrate(10_000, 4, 5));
+    }
+}
@@ -0,0 +1,152 @@
+package coptic.user_api.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitFilterTest {
+
+    private RateLimitFilter filter;
+
+    //Bodies the controller would have seen
+    private List<String> passedBodies;
+    private FilterChain chain;
+
+    @BeforeEach
+    public void setUp() {
+        filter = new RateLimitFilter(true, new TokenBucketLimiter(1000));
+        filter.addRoute("POST /users/login", "login", "4/60", "2/60");
+        filter.addRoute("POST /users/sign_up", "sign-up", "1/60", null);
+        passedBodies = new ArrayList<>();
+        chain = (request, response) -> passedBodies.add(new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    //The per-email bucket runs out first; the body still reaches the controller intact
+    @Test
+    public void testLogin_PerEmail_ShouldRefuseWith429AndRetryAfter() throws ServletException, IOException {
+        String body = "{\"email\":\"a@example.com\",\"password\":\"x\"}";
+
+        assertEquals(200, send("POST", "/users/login", "1.1.1.1", body).getStatus());
+        assertEquals(200, send("POST", "/users/login", "1.1.1.1", "{\"email\":\"A@example.com \",\"password\":\"y\"}").getStatus());
+        MockHttpServletResponse refused = send("POST", "/users/login", "1.1.1.1", body);
+
+        assertEquals(429, refused.getStatus());
+        assertEquals("30", refused.getHeader("Retry-After"));
+        assertEquals(List.of(body, "{\"email\":\"A@example.com \",\"password\":\"y\"}"), passedBodies);
+
+        //Refused requests still cost an IP token; another account from the same IP gets the IP's last one
+        assertEquals(200, send("POST", "/users/login", "1.1.1.1", "{\"email\":\"b@example.com\"}").getStatus());
+        assertEquals(429, send("POST", "/users/login", "1.1.1.1", "{\"email\":\"c@example.com\"}").getStatus());
+    }
+
+    //Per-IP limits apply without reading the body; other IPs are unaffected
+    @Test
+    public void testSignUp_PerIp_ShouldRefuseSecondRequest() throws ServletException, IOException {
+        assertEquals(200, send("POST", "/users/sign_up", "1.1.1.1", "{}").getStatus());
+        assertEquals(429, send("POST", "/users/sign_up", "1.1.1.1", "{}").getStatus());
+        assertEquals(200, send("POST", "/users/sign_up", "2.2.2.2", "{}").getStatus());
+        assertEquals(List.of("{}", "{}"), passedBodies);
+    }
+
+    //Routes without limits, and a disabled filter, pass everything through
+    @Test
+    public void testUnlimitedRouteAndDisabledFilter_ShouldPassThrough() throws ServletException, IOException {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(200, send("GET", "/bookmarks/search", "1.1.1.1", "").getStatus());
+        }
+
+        filter = new RateLimitFilter(false, new TokenBucketLimiter(1000));
+        filter.addRoute("POST /users/sign_up", "sign-up", "1/60", null);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, send("POST", "/users/sign_up", "1.1.1.1", "{}").getStatus());
+        }
+    }
+
+    //Emails are only taken from a JSON string field
+    @Test
+    public void testEmailOf() {
+        assertEquals("a@b.c", RateLimitFilter.emailOf("{\"email\":\"a@b.c\"}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(RateLimitFilter.emailOf("{\"email\":5}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(RateLimitFilter.emailOf("not json".getBytes(StandardCharsets.UTF_8)));
+        assertNull(RateLimitFilter.emailOf(new byte[0]));
+    }
+
+    //A controller reading the replayed body without blocking gets all of it, then the end of the body
+    @Test
+    public void testReplayedBody_NonBlockingRead_ShouldDeliverWholeBody() throws ServletException, IOException {
+        String body = "{\"email\":\"a@example.com\",\"password\":\"x\"}";
+        ByteArrayOutputStream read = new ByteArrayOutputStream();
+        List<String> events = new ArrayList<>();
+        chain = (request, response) -> {
+            ServletInputStream in = request.getInputStream();
+            in.setReadListener(new ReadListener() {
+                @Override
+                public void onDataAvailable() throws IOException {
+                    byte[] buffer = new byte[8];
+                    while (in.isReady() && !in.isFinished()) {
+                        int n = in.read(buffer);
+                        if (n > 0) read.write(buffer, 0, n);
+                    }
+                    events.add("data");
+                }
+
+                @Override
+                public void onAllDataRead() { events.add("done"); }
+
+                @Override
+                public void onError(Throwable t) { events.add("error"); }
+            });
+        };
+
+        MockHttpServletRequest request = request("POST", "/users/login", "1.1.1.1", body);
+        request.setAsyncStarted(true);
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        assertEquals(body, read.toString(StandardCharsets.UTF_8));
+        assertEquals(List.of("data", "done"), events);
+    }
+
+    //Outside async mode a read listener is refused, as the Servlet contract requires
+    @Test
+    public void testReplayedBody_ReadListenerWithoutAsync_ShouldThrowIllegalState() {
+        chain = (request, response) -> request.getInputStream().setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() { }
+
+            @Override
+            public void onAllDataRead() { }
+
+            @Override
+            public void onError(Throwable t) { }
+        });
+
+        assertThrows(IllegalStateException.class, () -> send("POST", "/users/login", "1.1.1.1", "{\"email\":\"a@example.com\"}"));
+    }
+
+    private MockHttpServletResponse send(String method, String uri, String ip, String body) throws ServletException, IOException {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(method, uri, ip, body), response, chain);
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String method, String uri, String ip, String body) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setRemoteAddr(ip);
+        request.setContentType("application/json");
+        request.setContent(body.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
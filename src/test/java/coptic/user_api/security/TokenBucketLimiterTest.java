@@ -0,0 +1,85 @@
+package coptic.user_api.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000_000L);
+    private TokenBucketLimiter limiter;
+
+    @BeforeEach
+    public void setUp() {
+        limiter = new TokenBucketLimiter(100, now::get);
+    }
+
+    //A full bucket allows a burst of its capacity, then refuses with the time until the next token
+    @Test
+    public void testTryAcquire_ShouldAllowBurstThenRefuse() {
+        TokenBucketLimiter.Limit limit = new TokenBucketLimiter.Limit(3, 60);
+
+        assertEquals(0, limiter.tryAcquire("k", limit));
+        assertEquals(0, limiter.tryAcquire("k", limit));
+        assertEquals(0, limiter.tryAcquire("k", limit));
+
+        long wait = limiter.tryAcquire("k", limit);
+        assertEquals(TimeUnit.SECONDS.toNanos(20), wait);
+
+        //Other keys have buckets of their own
+        assertEquals(0, limiter.tryAcquire("other", limit));
+    }
+
+    //Tokens come back at the refill rate, and never beyond the capacity
+    @Test
+    public void testTryAcquire_ShouldRefillOverTime() {
+        TokenBucketLimiter.Limit limit = new TokenBucketLimiter.Limit(2, 10);
+        limiter.tryAcquire("k", limit);
+        limiter.tryAcquire("k", limit);
+        assertTrue(limiter.tryAcquire("k", limit) > 0);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(0, limiter.tryAcquire("k", limit));
+        assertTrue(limiter.tryAcquire("k", limit) > 0);
+
+        now.addAndGet(TimeUnit.HOURS.toNanos(1));
+        assertEquals(0, limiter.tryAcquire("k", limit));
+        assertEquals(0, limiter.tryAcquire("k", limit));
+        assertTrue(limiter.tryAcquire("k", limit) > 0);
+    }
+
+    //Concurrent callers must never get more tokens than the bucket holds
+    @Test
+    public void testTryAcquire_ConcurrentCallers_ShouldNotOverspend() throws InterruptedException {
+        TokenBucketLimiter.Limit limit = new TokenBucketLimiter.Limit(100, 3600);
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            pool.execute(() -> {
+                if (limiter.tryAcquire("k", limit) == 0) {
+                    allowed.incrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(100, allowed.get());
+    }
+
+    //Specs are capacity/seconds; blank means no limit
+    @Test
+    public void testParse() {
+        assertNull(TokenBucketLimiter.Limit.parse(" "));
+        assertNotNull(TokenBucketLimiter.Limit.parse("5/60"));
+        assertThrows(IllegalArgumentException.class, () -> TokenBucketLimiter.Limit.parse("5"));
+        assertThrows(IllegalArgumentException.class, () -> TokenBucketLimiter.Limit.parse("0/60"));
+    }
+}
@@ -0,0 +1,112 @@
+package coptic.user_api.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class TokenRevocationListTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private TokenRevocationList revocationList;
+
+    //jti already in revoked_access_tokens when the filter is rebuilt
+    private final UUID stored = UUID.randomUUID();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT count(*)"), eq(Long.class))).thenReturn(1L);
+        ResultSet row = mock(ResultSet.class);
+        when(row.getObject(1, UUID.class)).thenReturn(stored);
+        doAnswer(invocation -> {
+            invocation.<RowCallbackHandler>getArgument(1).processRow(row);
+            return null;
+        }).when(jdbcTemplate).query(startsWith("SELECT jti"), any(RowCallbackHandler.class));
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS"), eq(Boolean.class), any(UUID.class))).thenReturn(false);
+
+        revocationList = new TokenRevocationList(jdbcTemplate, 0.001, 1000, 100, 30_000);
+    }
+
+    /**
+     * Before the first rebuild there is no filter, so every check goes to the table
+     */
+    @Test
+    public void testBeforeFirstRebuild_ChecksTable() {
+        UUID jti = UUID.randomUUID();
+
+        assertFalse(revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits()));
+        assertEquals(1, revocationList.getPossiblePositiveCount());
+    }
+
+    /**
+     * Once the filter is built, tokens it has never seen are answered without touching the table
+     */
+    @Test
+    public void testUnrevokedToken_SkipsTable() {
+        assertEquals(1, revocationList.rebuild());
+
+        for (int i = 0; i < 100; i++) {
+            UUID jti = UUID.randomUUID();
+            assertFalse(revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits()));
+        }
+
+        //With 100 random jtis at a 0.1% rate, a false positive is possible but more than one is not plausible
+        assertTrue(revocationList.getPossiblePositiveCount() <= 1);
+    }
+
+    /**
+     * A jti loaded by the rebuild is a possible positive, confirmed by the table
+     */
+    @Test
+    public void testStoredRevocation_IsConfirmedByTable() {
+        revocationList.rebuild();
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS"), eq(Boolean.class), eq(stored))).thenReturn(true);
+
+        assertTrue(revocationList.isRevoked(stored.getMostSignificantBits(), stored.getLeastSignificantBits()));
+        assertEquals(1, revocationList.getConfirmedCount());
+    }
+
+    /**
+     * A local revocation reaches the current filter at once, and survives a rebuild whose scan missed it
+     */
+    @Test
+    public void testLocalRevocation_IsSeenImmediatelyAndAfterRebuild() {
+        revocationList.rebuild();
+        UUID jti = UUID.randomUUID();
+        when(jdbcTemplate.queryForObject(startsWith("SELECT EXISTS"), eq(Boolean.class), eq(jti))).thenReturn(true);
+
+        revocationList.revoke(jti, Instant.now().plusSeconds(600));
+        verify(jdbcTemplate).update(startsWith("INSERT INTO revoked_access_tokens"), eq(jti), any());
+        assertTrue(revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits()));
+
+        //The scan (mocked) only returns the stored jti, as if the revocation had not committed yet
+        revocationList.rebuild();
+        assertTrue(revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits()));
+        assertEquals(2, revocationList.getRebuildCount());
+    }
+
+    /**
+     * A failed rebuild keeps the previous filter
+     */
+    @Test
+    public void testFailedRebuild_KeepsPreviousFilter() {
+        revocationList.rebuild();
+        when(jdbcTemplate.update(anyString(), anyInt())).thenThrow(new IllegalStateException("database down"));
+
+        revocationList.scheduledRebuild();
+
+        assertEquals(1, revocationList.getRebuildCount());
+        assertEquals(1, revocationList.getLoadedCount());
+        UUID jti = UUID.randomUUID();
+        assertFalse(revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits()));
+    }
+}
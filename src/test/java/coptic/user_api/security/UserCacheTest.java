@@ -0,0 +1,113 @@
+package coptic.user_api.security;
+
+import coptic.user_api.models.User;
+import coptic.user_api.repositories.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class UserCacheTest {
+
+    private UserRepository userRepository;
+    private UserCache userCache;
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        userRepository = mock(UserRepository.class);
+        userCache = new UserCache(userRepository, 60, 100);
+        user = new User("Test@Example.com", "hash");
+        user.setId(7);
+    }
+
+    //Repeated lookups by email or ID should reach the repository once
+    @Test
+    public void testFindByEmail_ShouldServeRepeatedLookupsFromMemory() {
+        when(userRepository.findByEmail("Test@Example.com")).thenReturn(user);
+
+        assertEquals("hash", userCache.findByEmail("Test@Example.com").getPassword());
+        assertEquals("hash", userCache.findByEmail("Test@Example.com").getPassword());
+        assertEquals(7, userCache.findById(7).getId());
+
+        verify(userRepository, times(1)).findByEmail("Test@Example.com");
+        verify(userRepository, never()).findById(anyInt());
+        assertEquals(2, userCache.getHitCount());
+        assertEquals(1, userCache.getMissCount());
+    }
+
+    //The key is normalized, but emails differing in case are different accounts: only exact matches are hits
+    @Test
+    public void testFindByEmail_DifferentCase_ShouldAskRepository() {
+        when(userRepository.findByEmail("Test@Example.com")).thenReturn(user);
+        when(userRepository.findByEmail("test@example.com")).thenReturn(null);
+
+        userCache.findByEmail("Test@Example.com");
+
+        assertNull(userCache.findByEmail("test@example.com"));
+        verify(userRepository).findByEmail("test@example.com");
+    }
+
+    //Invalidating a user's ID should force the next lookup, by email or ID, back to the repository
+    @Test
+    public void testInvalidate_ShouldReloadOnNextLookup() {
+        User updated = new User("Test@Example.com", "newHash");
+        updated.setId(7);
+        when(userRepository.findByEmail("Test@Example.com")).thenReturn(user, updated);
+        when(userRepository.findById(7)).thenReturn(Optional.of(updated));
+
+        userCache.findByEmail("Test@Example.com");
+        userCache.invalidate(7);
+
+        assertEquals("newHash", userCache.findByEmail("Test@Example.com").getPassword());
+        userCache.invalidate("test@example.com ");
+        assertEquals("newHash", userCache.findById(7).getPassword());
+        verify(userRepository, times(2)).findByEmail("Test@Example.com");
+    }
+
+    //Unknown users are not cached
+    @Test
+    public void testFindByEmail_Missing_ShouldNotCache() {
+        when(userRepository.findByEmail("ghost@example.com")).thenReturn(null);
+
+        assertNull(userCache.findByEmail("ghost@example.com"));
+        assertNull(userCache.findByEmail("ghost@example.com"));
+
+        verify(userRepository, times(2)).findByEmail("ghost@example.com");
+        assertEquals(0, userCache.size());
+    }
+
+    //Each lookup gets its own copy: changing it does not change what the cache serves next
+    @Test
+    public void testLookups_ShouldReturnPrivateCopies() {
+        when(userRepository.findByEmail("Test@Example.com")).thenReturn(user);
+
+        User first = userCache.findByEmail("Test@Example.com");
+        first.setPassword("changedByCaller");
+        first.setTokenVersion(99);
+        User second = userCache.findByEmail("Test@Example.com");
+
+        assertNotSame(first, second);
+        assertEquals("hash", second.getPassword());
+        assertEquals(0, second.getTokenVersion());
+    }
+
+    //A load racing an invalidation (it read the row before the write, and finishes after the invalidation) is not kept
+    @Test
+    public void testLoadRacingInvalidation_ShouldNotBeCached() {
+        User updated = new User("Test@Example.com", "newHash");
+        updated.setId(7);
+        when(userRepository.findByEmail("Test@Example.com")).thenAnswer(invocation -> {
+            userCache.invalidate(7);
+            return user;
+        }).thenReturn(updated);
+
+        assertEquals("hash", userCache.findByEmail("Test@Example.com").getPassword());
+
+        assertEquals("newHash", userCache.findByEmail("Test@Example.com").getPassword());
+        verify(userRepository, times(2)).findByEmail("Test@Example.com");
+    }
+}
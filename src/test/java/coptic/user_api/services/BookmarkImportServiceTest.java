@@ -0,0 +1,187 @@
+package coptic.user_api.services;
+
+import coptic.user_api.dto.ImportResult;
+import coptic.user_api.models.Bookmark;
+import coptic.user_api.models.User;
+import coptic.user_api.security.UserCache;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class) //Enable Mockito annotations
+public class BookmarkImportServiceTest {
+
+    @Mock
+    private BookmarkService bookmarkService;
+
+    @Mock
+    private UserCache userCache;
+
+    //Service under test, committing chunks of 2
+    private BookmarkImportService importService;
+
+    //Copies of every chunk handed to saveBookmarks (the service reuses its chunk list)
+    private final List<List<Bookmark>> chunks = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        importService = new BookmarkImportService(bookmarkService, userCache, 2, 1000);
+        User owner = new User("test@example.com", "pass");
+        owner.setId(7);
+        lenient().when(userCache.findById(7)).thenReturn(owner);
+    }
+
+    //Test NDJSON import
+    //Should commit valid records in chunks and count malformed or invalid ones as rejected
+    @Test
+    public void testImportBookmarks_Ndjson_ShouldChunkAndReject() throws Exception {
+        recordChunks();
+        String upload = """
+                {"name":"One","copticText":"ⲟⲩⲁ"}
+                not json
+
+                {"notes":"no name"}
+                {"name":"Two","id":99}
+                {"name":"Three","notes":["not","a","string"]}
+                {"name":"Four"}
+                """;
+
+        ImportResult result = importService.importBookmarks(7, BookmarkExportFormat.NDJSON, stream(upload));
+
+        assertEquals(3, result.getAccepted());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of("record 2: invalid JSON", "record 3: name is required", "record 5: notes must be a string"),
+                result.getErrors());
+        assertEquals(List.of(List.of("One", "Two"), List.of("Four")), chunkNames());
+        assertEquals("ⲟⲩⲁ", chunks.get(0).get(0).getCopticText());
+        assertEquals(7, chunks.get(0).get(0).getUser().getId());
+    }
+
+    //Test CSV import
+    //Should accept the export's format, including quoted separators, quotes and line breaks
+    @Test
+    public void testImportBookmarks_Csv_ShouldParseQuotedFields() throws Exception {
+        recordChunks();
+        String upload = "id,name,copticText,transliteration,englishTranslation,arabicTranslation,notes\r\n"
+                + "1,\"Hello, \"\"world\"\"\",ⲡⲉⲧⲟⲩ,,\"line1\nline2\",الواحد,\r\n"
+                + "2,too,few\r\n"
+                + "3,Plain,,,,,\r\n";
+
+        ImportResult result = importService.importBookmarks(7, BookmarkExportFormat.CSV, stream(upload));
+
+        assertEquals(2, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(List.of("record 2: expected 7 fields, found 3"), result.getErrors());
+        Bookmark first = chunks.get(0).get(0);
+        assertEquals("Hello, \"world\"", first.getName());
+        assertEquals("line1\nline2", first.getEnglishTranslation());
+        assertNull(first.getTransliteration());
+        assertEquals("الواحد", first.getArabicTranslation());
+    }
+
+    //Test a chunk the database refuses
+    //Should reject that chunk only and keep importing
+    @Test
+    public void testImportBookmarks_ChunkFails_ShouldRejectOnlyThatChunk() throws Exception {
+        when(bookmarkService.saveBookmarks(anyList()))
+                .thenThrow(new DataIntegrityViolationException("boom"))
+                .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).size());
+        String upload = "{\"name\":\"A\"}\n{\"name\":\"B\"}\n{\"name\":\"C\"}\n";
+
+        ImportResult result = importService.importBookmarks(7, BookmarkExportFormat.NDJSON, stream(upload));
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(2, result.getRejected());
+        assertEquals(List.of("records 1-2: could not be saved"), result.getErrors());
+    }
+
+    //Test an overlong record
+    //Should skip it without buffering it and carry on with the next line
+    @Test
+    public void testImportBookmarks_OverlongRecord_ShouldBeRejected() throws Exception {
+        recordChunks();
+        String upload = "{\"name\":\"" + "x".repeat(ImportRecordReader.MAX_RECORD_CHARS) + "\"}\n{\"name\":\"Ok\"}\n";
+
+        ImportResult result = importService.importBookmarks(7, BookmarkExportFormat.NDJSON, stream(upload));
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(List.of(List.of("Ok")), chunkNames());
+    }
+
+    //Test an overlong quoted CSV field made of escaped quotes
+    //Should skip it like any other overlong record and carry on with the next line
+    @Test
+    public void testImportBookmarks_OverlongEscapedQuotes_ShouldBeRejected() throws Exception {
+        recordChunks();
+        String upload = "name\n\"" + "\"\"".repeat(ImportRecordReader.MAX_RECORD_CHARS) + "\"\nOk\n";
+
+        ImportResult result = importService.importBookmarks(7, BookmarkExportFormat.CSV, stream(upload));
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(1, result.getRejected());
+        assertEquals(List.of(List.of("Ok")), chunkNames());
+    }
+
+    //Test validation of column lengths
+    @Test
+    public void testValidate_ShouldRejectValuesLongerThanTheColumn() {
+        assertNull(BookmarkImportService.validate(Map.of("name", "ok")));
+        assertEquals("notes is longer than 255 characters",
+                BookmarkImportService.validate(Map.of("name", "ok", "notes", "n".repeat(256))));
+    }
+
+    //Test importing for a user that does not exist
+    @Test
+    public void testImportBookmarks_UnknownUser_ShouldThrow() {
+        when(userCache.findById(8)).thenReturn(null);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> importService.importBookmarks(8, BookmarkExportFormat.NDJSON, stream("")));
+        verifyNoInteractions(bookmarkService);
+    }
+
+    //Test a chunk size below one (one transaction per record)
+    @Test
+    public void testConstructor_ChunkSizeNotPositive_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new BookmarkImportService(bookmarkService, userCache, 0, 1000));
+    }
+
+    //Test a chunk size larger than a batch may be (every chunk write would be refused)
+    @Test
+    public void testConstructor_ChunkLargerThanBatchLimit_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new BookmarkImportService(bookmarkService, userCache, 1001, 1000));
+    }
+
+    //Capture a copy of each chunk and report it saved
+    private void recordChunks() {
+        when(bookmarkService.saveBookmarks(anyList())).thenAnswer(invocation -> {
+            List<Bookmark> chunk = invocation.getArgument(0);
+            chunks.add(new ArrayList<>(chunk));
+            return chunk.size();
+        });
+    }
+
+    private List<List<String>> chunkNames() {
+        return chunks.stream().map(chunk -> chunk.stream().map(Bookmark::getName).toList()).toList();
+    }
+
+    private static ByteArrayInputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
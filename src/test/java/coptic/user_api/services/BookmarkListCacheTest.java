@@ -0,0 +1,92 @@
+package coptic.user_api.services;
+
+import coptic.user_api.dto.BookmarkView;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BookmarkListCacheTest {
+
+    @AfterEach
+    public void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    //A second read should not call the loader, and the cached list should be immutable
+    @Test
+    public void testGet_ShouldLoadOnceAndReturnUnmodifiableList() {
+        BookmarkListCache cache = new BookmarkListCache(true, 1 << 20, 60);
+        AtomicInteger loads = new AtomicInteger();
+
+        List<BookmarkView> first = cache.get(7, id -> { loads.incrementAndGet(); return new ArrayList<>(List.of(view(1))); });
+        List<BookmarkView> second = cache.get(7, id -> { loads.incrementAndGet(); return List.of(); });
+
+        assertEquals(1, loads.get());
+        assertSame(first, second);
+        assertThrows(UnsupportedOperationException.class, () -> first.add(view(2)));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    //Inside a transaction the list must survive until the transaction ends, then be dropped
+    @Test
+    public void testInvalidateAfterTransaction_ShouldWaitForCompletion() {
+        BookmarkListCache cache = new BookmarkListCache(true, 1 << 20, 60);
+        cache.get(7, id -> List.of(view(1)));
+
+        TransactionSynchronizationManager.initSynchronization();
+        cache.invalidateAfterTransaction(7);
+        assertEquals(1, cache.size());
+
+        for (TransactionSynchronization sync : TransactionSynchronizationManager.getSynchronizations()) {
+            sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+
+        AtomicInteger loads = new AtomicInteger();
+        cache.get(7, id -> { loads.incrementAndGet(); return List.of(); });
+        assertEquals(1, loads.get());
+    }
+
+    //Disabled: every read goes to the loader
+    @Test
+    public void testGet_Disabled_ShouldAlwaysLoad() {
+        BookmarkListCache cache = new BookmarkListCache(false, 1 << 20, 60);
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get(7, id -> { loads.incrementAndGet(); return List.of(); });
+        cache.get(7, id -> { loads.incrementAndGet(); return List.of(); });
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    //Weight grows with the text held, and lists heavier than the bound are not kept
+    @Test
+    public void testWeigh_ShouldTrackPayloadSize() {
+        BookmarkView small = view(1);
+        BookmarkView large = new BookmarkView(2, "x".repeat(1000), null, null, null, null, null);
+        assertTrue(BookmarkListCache.weigh(List.of(large)) > BookmarkListCache.weigh(List.of(small)) + 1900);
+
+        BookmarkListCache cache = new BookmarkListCache(true, 1000, 60);
+        cache.get(7, id -> List.of(large));
+        cache.get(8, id -> List.of(small));
+        cache.cleanUp();
+
+        assertTrue(cache.getWeightedSize() <= 1000);
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    private static BookmarkView view(int id) {
+        return new BookmarkView(id, "Name " + id, null, null, null, null, null);
+    }
+}
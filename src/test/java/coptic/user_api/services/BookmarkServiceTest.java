@@ -1,20 +1,34 @@
 package coptic.user_api.services;
 
+import coptic.user_api.dto.BookmarkPage;
+import coptic.user_api.dto.BookmarkView;
 import coptic.user_api.models.Bookmark;
 import coptic.user_api.models.User;
 
 import coptic.user_api.repositories.BookmarkRepository;
+import coptic.user_api.repositories.UserRepository;
+import coptic.user_api.search.InMemoryBookmarkSearchIndex;
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.cache.CacheRegion;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import org.springframework.data.domain.Limit;
+
+import jakarta.persistence.EntityManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -26,8 +40,22 @@ public class BookmarkServiceTest {
     @Mock
     private BookmarkRepository bookmarkRepository;
 
-    //Inject into service
-    @InjectMocks
+    //Mock user repository (bookmark version)
+    @Mock
+    private UserRepository userRepository;
+
+    //Mock persistence context (flushed and cleared by batch inserts)
+    @Mock
+    private EntityManager entityManager;
+
+    //Mock invalidation bus (the other nodes' bookmark list caches)
+    @Mock
+    private CacheInvalidationBus invalidationBus;
+
+    //In-process search index (same ranking rules as the Postgres one)
+    private InMemoryBookmarkSearchIndex searchIndex;
+
+    //Service under test, built around the mock
     private BookmarkService bookmarkService;
 
     //Sample user and bookmark
@@ -37,7 +65,11 @@ public class BookmarkServiceTest {
     //Initialize user and bookmark before each test
     @BeforeEach
     public void setUp() {
+        searchIndex = new InMemoryBookmarkSearchIndex();
+        bookmarkService = new BookmarkService(bookmarkRepository, userRepository, entityManager, searchIndex,
+                new BookmarkListCache(true, 1 << 20, 60), invalidationBus, 2, 2, 4);
         user = new User("test@example.com", "pass");
+        user.setId(7);
         bookmark = new Bookmark("Sample", user, "ⲡⲉⲧⲟⲩ", "petou", "the one", "الواحد", "notes");
     }
 
@@ -51,6 +83,34 @@ public class BookmarkServiceTest {
 
         assertEquals(bookmark, result);
         verify(bookmarkRepository).save(bookmark);
+        verify(userRepository).bumpBookmarkVersion(7);
+        verify(invalidationBus).publish(CacheRegion.BOOKMARKS, 7);
+    }
+
+    //Test saveBookmarks
+    //Should save every bookmark and flush/clear after each full batch (batch size 2)
+    @Test
+    public void testSaveBookmarks_ShouldFlushAndClearEachFullBatch() {
+        List<Bookmark> bookmarks = List.of(bookmark, bookmark, bookmark);
+
+        int saved = bookmarkService.saveBookmarks(bookmarks);
+
+        assertEquals(3, saved);
+        verify(bookmarkRepository, times(3)).save(bookmark);
+        verify(entityManager, times(1)).flush();
+        verify(entityManager, times(1)).clear();
+        verify(userRepository, times(1)).bumpBookmarkVersion(7); // once per batch, not per bookmark
+    }
+
+    //Test saveBookmarks above the per-request limit
+    //Should reject the batch without saving anything
+    @Test
+    public void testSaveBookmarks_TooMany_ShouldThrow() {
+        List<Bookmark> bookmarks = List.of(bookmark, bookmark, bookmark, bookmark, bookmark);
+
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.saveBookmarks(bookmarks));
+        verifyNoInteractions(entityManager);
+        verify(bookmarkRepository, never()).save(any());
     }
 
     //Test getBookmarksByUser
@@ -65,6 +125,175 @@ public class BookmarkServiceTest {
         assertEquals(bookmarks, result);
     }
 
+    //Test getBookmarkViewsByUser
+    //Should return the lean views for the user's ID
+    @Test
+    public void testGetBookmarkViewsByUser_ShouldReturnViews() {
+        List<BookmarkView> views = List.of(view(1));
+        when(bookmarkRepository.findViewsByUserId(7)).thenReturn(views);
+
+        assertEquals(views, bookmarkService.getBookmarkViewsByUser(7));
+    }
+
+    //Repeated reads should be served from the list cache until a mutation drops it
+    @Test
+    public void testGetBookmarkViewsByUser_ShouldCacheUntilMutation() {
+        when(bookmarkRepository.findViewsByUserId(7)).thenReturn(List.of(view(1)), List.of(view(1), view(2)));
+
+        assertEquals(1, bookmarkService.getBookmarkViewsByUser(7).size());
+        assertEquals(1, bookmarkService.getBookmarkViewsByUser(7).size());
+        verify(bookmarkRepository, times(1)).findViewsByUserId(7);
+
+        when(bookmarkRepository.save(bookmark)).thenReturn(bookmark);
+        bookmarkService.saveBookmark(bookmark);
+
+        assertEquals(2, bookmarkService.getBookmarkViewsByUser(7).size());
+        verify(bookmarkRepository, times(2)).findViewsByUserId(7);
+    }
+
+    //A mutation that matched no row should leave the cached list alone
+    @Test
+    public void testDeleteBookmark_NotOwned_ShouldKeepCachedList() {
+        when(bookmarkRepository.findViewsByUserId(7)).thenReturn(List.of(view(1)));
+        when(bookmarkRepository.deleteByIdAndUserId(1, 7)).thenReturn(0);
+
+        bookmarkService.getBookmarkViewsByUser(7);
+        assertFalse(bookmarkService.deleteBookmark(1, 7));
+        bookmarkService.getBookmarkViewsByUser(7);
+
+        verify(bookmarkRepository, times(1)).findViewsByUserId(7);
+    }
+
+    //Test getBookmarkPage
+    //Should fetch one extra row and return a cursor when more bookmarks remain
+    @Test
+    public void testGetBookmarkPage_MoreRows_ShouldReturnNextCursor() {
+        user.setId(7);
+        when(bookmarkRepository.findViewPageByUserId(7, 0, Limit.of(3))).thenReturn(Arrays.asList(view(1), view(2), view(3)));
+
+        BookmarkPage page = bookmarkService.getBookmarkPage(user.getId(), null, 50, false);
+
+        assertEquals(2, page.getItems().size());
+        assertEquals(2, BookmarkService.decodeCursor(page.getNextCursor()));
+        assertNull(page.getTotal());
+    }
+
+    //Should resume after the cursor and report the total when asked, with no cursor on the last page
+    @Test
+    public void testGetBookmarkPage_LastPage_ShouldHaveNoCursor() {
+        user.setId(7);
+        when(bookmarkRepository.findViewPageByUserId(7, 4, Limit.of(3))).thenReturn(List.of(view(5)));
+        when(bookmarkRepository.countByUserId(7)).thenReturn(5L);
+
+        BookmarkPage page = bookmarkService.getBookmarkPage(user.getId(), BookmarkService.encodeCursor(4), 2, true);
+
+        assertEquals(5, page.getItems().get(0).getId());
+        assertNull(page.getNextCursor());
+        assertEquals(5L, page.getTotal());
+    }
+
+    //Should reject a cursor that was not produced by the service
+    @Test
+    public void testGetBookmarkPage_BadCursor_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.getBookmarkPage(user.getId(), "not-a-cursor", 10, false));
+    }
+
+    //Test exportBookmarks as NDJSON
+    //Should write one JSON object per line, straight from the streamed views
+    @Test
+    public void testExportBookmarks_Ndjson_ShouldWriteOneObjectPerLine() throws Exception {
+        when(bookmarkRepository.streamViewsByUserId(7)).thenReturn(Stream.of(view(1), view(2)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        bookmarkService.exportBookmarks(7, BookmarkExportFormat.NDJSON, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"id\":1,\"name\":\"Sample 1\""));
+        assertTrue(lines[1].startsWith("{\"id\":2,"));
+    }
+
+    //Test exportBookmarks as CSV
+    //Should write a header, quote fields holding separators, and keep Coptic/Arabic text intact
+    @Test
+    public void testExportBookmarks_Csv_ShouldQuoteSpecialFields() throws Exception {
+        BookmarkView tricky = new BookmarkView(3, "Hello, \"world\"", "ⲡⲉⲧⲟⲩ", null, "line1\nline2", "الواحد", null);
+        when(bookmarkRepository.streamViewsByUserId(7)).thenReturn(Stream.of(tricky));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        bookmarkService.exportBookmarks(7, BookmarkExportFormat.CSV, out);
+
+        assertEquals("id,name,copticText,transliteration,englishTranslation,arabicTranslation,notes\r\n"
+                        + "3,\"Hello, \"\"world\"\"\",ⲡⲉⲧⲟⲩ,,\"line1\nline2\",الواحد,\r\n",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    //Test getBookmarkVersion
+    //Should read only the version by email
+    @Test
+    public void testGetBookmarkVersion_ShouldReadVersionByEmail() {
+        when(userRepository.findBookmarkVersionByEmail("test@example.com")).thenReturn(3L);
+
+        assertEquals(3L, bookmarkService.getBookmarkVersion("test@example.com"));
+        verifyNoInteractions(bookmarkRepository);
+    }
+
+    //Test searchBookmarks
+    //Should ignore overlines and diacritics, rank name matches first, and page through results
+    @Test
+    public void testSearchBookmarks_ShouldRankAndPaginate() {
+        //"ⲡ̅ⲟ̅ⲥ̅" (Lord, with overlines) in the name of 2, in the Coptic text of 1 and 3
+        searchIndex.put(7, new BookmarkView(1, "Psalm", "\u2ca1\u2c9f\u2ca5", null, "the Lord", null, null));
+        searchIndex.put(7, new BookmarkView(2, "\u2ca1\u0305\u2c9f\u0305\u2ca5\u0305 prayer", null, null, null, null, null));
+        searchIndex.put(7, new BookmarkView(3, "Hymn", "\u2ca1\u0305\u2c9f\u0305\u2ca5\u0305", null, null, null, null));
+        searchIndex.put(8, new BookmarkView(4, "\u2ca1\u2c9f\u2ca5", null, null, null, null, null));
+
+        BookmarkPage first = bookmarkService.searchBookmarks(7, "\u2ca0\u2c9e\u2ca4", null, 2);
+        assertEquals(List.of(2, 1), first.getItems().stream().map(BookmarkView::getId).toList());
+        assertNotNull(first.getNextCursor());
+
+        BookmarkPage second = bookmarkService.searchBookmarks(7, "\u2ca1\u2c9f\u2ca5", first.getNextCursor(), 2);
+        assertEquals(List.of(3), second.getItems().stream().map(BookmarkView::getId).toList());
+        assertNull(second.getNextCursor());
+    }
+
+    //Test searchBookmarks with every word required
+    //Should only return bookmarks matching all words, and match Arabic without diacritics
+    @Test
+    public void testSearchBookmarks_ShouldRequireAllWords() {
+        searchIndex.put(7, new BookmarkView(1, "Greeting", null, null, "peace be with you", "\u0627\u0644\u0633\u0651\u064e\u0644\u064e\u0627\u0645", null));
+        searchIndex.put(7, new BookmarkView(2, "Farewell", null, null, "go in peace", null, null));
+
+        assertEquals(List.of(1), bookmarkService.searchBookmarks(7, "peace you", null, 10).getItems().stream().map(BookmarkView::getId).toList());
+        assertEquals(List.of(1), bookmarkService.searchBookmarks(7, "\u0627\u0644\u0633\u0644\u0627\u0645", null, 10).getItems().stream().map(BookmarkView::getId).toList());
+    }
+
+    //Test searchBookmarks paged up to the depth limit
+    //Should stop handing out cursors there, and refuse cursors past it
+    @Test
+    public void testSearchBookmarks_ShouldStopAtMaxResults() {
+        for (int i = 1; i <= BookmarkService.MAX_SEARCH_RESULTS + 5; i++) {
+            searchIndex.put(7, new BookmarkView(i, "Psalm " + i, null, null, null, null, null));
+        }
+
+        BookmarkPage last = bookmarkService.searchBookmarks(7, "psalm",
+                BookmarkService.encodeCursor(BookmarkService.MAX_SEARCH_RESULTS - 2), 10);
+
+        //More matches remain, but they lie past the limit
+        assertEquals(2, last.getItems().size());
+        assertNull(last.getNextCursor());
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.searchBookmarks(7, "psalm",
+                BookmarkService.encodeCursor(BookmarkService.MAX_SEARCH_RESULTS), 10));
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.searchBookmarks(7, "psalm",
+                BookmarkService.encodeCursor(-1), 10));
+    }
+
+    //Test searchBookmarks with an empty query
+    @Test
+    public void testSearchBookmarks_EmptyQuery_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.searchBookmarks(7, "  ", null, 10));
+    }
+
     //Test getBookmarkById
     //Should return the bookmark wrapped in Optional if found
     @Test
@@ -77,25 +306,62 @@ public class BookmarkServiceTest {
         assertEquals(bookmark, result.get());
     }
 
-    //Test deleteBookmarkById
-    //Should call repository.deleteById()
+    //Test deleteBookmark
+    //Should issue one owner-scoped delete and report whether a row went away
     @Test
-    public void testDeleteBookmarkById_ShouldCallRepositoryDelete() {
-        bookmarkService.deleteBookmarkById(1);
+    public void testDeleteBookmark_ShouldUseOwnerScopedDelete() {
+        when(bookmarkRepository.deleteByIdAndUserId(1, 7)).thenReturn(1);
+        when(bookmarkRepository.deleteByIdAndUserId(1, 8)).thenReturn(0);
 
-        verify(bookmarkRepository).deleteById(1);
+        assertTrue(bookmarkService.deleteBookmark(1, 7));
+        assertFalse(bookmarkService.deleteBookmark(1, 8));
+        verify(bookmarkRepository, never()).findById(anyInt());
+
+        //Only the delete that removed a row changes the version
+        verify(userRepository).bumpBookmarkVersion(7);
+        verify(userRepository, never()).bumpBookmarkVersion(8);
     }
 
     //Test updateBookmark
-    //Should call save() and flush() and return the updated bookmark
+    //Should issue one owner-scoped update with every field, without loading or saving the entity
     @Test
-    public void testUpdateBookmark_ShouldSaveAndFlush() {
-        when(bookmarkRepository.save(bookmark)).thenReturn(bookmark);
+    public void testUpdateBookmark_ShouldUseOwnerScopedUpdate() {
+        when(bookmarkRepository.updateByIdAndUserId(1, 7, "Sample", "ⲡⲉⲧⲟⲩ", "petou", "the one", "الواحد", "notes"))
+                .thenReturn(1);
 
-        Bookmark result = bookmarkService.updateBookmark(bookmark);
+        assertTrue(bookmarkService.updateBookmark(1, 7, bookmark));
+        verify(userRepository).bumpBookmarkVersion(7);
+        verify(bookmarkRepository, never()).save(any());
+        verify(bookmarkRepository, never()).findById(anyInt());
+    }
 
-        verify(bookmarkRepository).save(bookmark);
-        verify(bookmarkRepository).flush();
-        assertEquals(bookmark, result);
+    //Test patchBookmark
+    //Should pass only the sent fields to the partial update
+    @Test
+    public void testPatchBookmark_ShouldUpdateOnlySentFields() {
+        Map<String, Object> changes = Map.of("notes", "new notes");
+        when(bookmarkRepository.patchByIdAndUserId(1, 7, changes)).thenReturn(1);
+
+        assertTrue(bookmarkService.patchBookmark(1, 7, changes));
+        verify(userRepository).bumpBookmarkVersion(7);
+    }
+
+    //Test patchBookmark with bad input
+    //Should reject unknown fields, empty names and empty bodies before touching the database
+    @Test
+    public void testPatchBookmark_InvalidChanges_ShouldThrow() {
+        Map<String, Object> nullName = new HashMap<>();
+        nullName.put("name", null);
+
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.patchBookmark(1, 7, Map.of("user", "x")));
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.patchBookmark(1, 7, Map.of("name", " ")));
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.patchBookmark(1, 7, nullName));
+        assertThrows(IllegalArgumentException.class, () -> bookmarkService.patchBookmark(1, 7, Map.of()));
+        verifyNoInteractions(bookmarkRepository);
+    }
+
+    //Small helper to build a view with a given ID
+    private static BookmarkView view(int id) {
+        return new BookmarkView(id, "Sample " + id, null, null, null, null, null);
     }
 }
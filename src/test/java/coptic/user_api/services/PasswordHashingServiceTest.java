@@ -0,0 +1,62 @@
+package coptic.user_api.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PasswordHashingServiceTest {
+
+    //One thread, one queue slot: easy to fill
+    private PasswordHashingService hashingService;
+
+    @BeforeEach
+    public void setUp() {
+        hashingService = new PasswordHashingService(1, 1);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        hashingService.shutdown();
+    }
+
+    //Should run the task off the calling thread and record it
+    @Test
+    public void testSubmit_ShouldRunOnHashingThread() {
+        String threadName = hashingService.submit(() -> Thread.currentThread().getName()).join();
+
+        assertTrue(threadName.startsWith("password-hash-"));
+        assertEquals(1, hashingService.getCompletedCount());
+    }
+
+    //Should refuse immediately once the thread is busy and the queue is full
+    @Test
+    public void testSubmit_QueueFull_ShouldThrowBusy() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Boolean> running = hashingService.submit(() -> {
+            started.countDown();
+            try {
+                return release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> queued = hashingService.submit(() -> true);
+
+        assertEquals(1, hashingService.getQueueDepth());
+        assertThrows(PasswordHashingBusyException.class, () -> hashingService.submit(() -> true));
+        assertEquals(1, hashingService.getRejectedCount());
+
+        release.countDown();
+        assertTrue(running.get(5, TimeUnit.SECONDS));
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+    }
+}
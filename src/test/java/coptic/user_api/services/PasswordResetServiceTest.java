@@ -1,22 +1,37 @@
 package coptic.user_api.services;
 
 import coptic.user_api.models.User;
-import coptic.user_api.models.PasswordResetToken;
 
-import coptic.user_api.repositories.PasswordResetTokenRepository;
 import coptic.user_api.repositories.UserRepository;
+import coptic.user_api.reset.ResetTokenStore;
+import coptic.user_api.security.TokenDigest;
+import coptic.user_api.security.TokenVersionCache;
+import coptic.user_api.security.UserCache;
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.cache.CacheRegion;
+import coptic.user_api.outbox.Outbox;
+import coptic.user_api.outbox.OutboxMessage;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.time.LocalDateTime;
+import java.lang.reflect.Field;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class) //Enable Mockito annotations
@@ -24,7 +39,7 @@ public class PasswordResetServiceTest {
 
     //Mock dependencies
     @Mock
-    private PasswordResetTokenRepository tokenRepo;
+    private ResetTokenStore tokenStore;
 
     @Mock
     private UserRepository userRepo;
@@ -32,81 +47,134 @@ public class PasswordResetServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private TokenVersionCache tokenVersionCache;
+
+    @Mock
+    private PasswordHashingService passwordHashingService;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private CacheInvalidationBus invalidationBus;
+
+    @Mock
+    private Outbox outbox;
+
+    //Real template over a mocked transaction manager
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(mock(PlatformTransactionManager.class));
+
+    //Task executor running inline
+    @Spy
+    private Executor ioExecutor = new SyncTaskExecutor();
+
     //Inject service with mocks
     @InjectMocks
     private PasswordResetService passwordResetService;
 
-    //Sample user and token
+    //Sample user
     private User user;
-    private PasswordResetToken token;
 
-    //Setup reusable user and token
+    //Setup reusable user
     @BeforeEach
-    public void setUp() {
+    public void setUp() throws Exception {
         user = new User("reset@example.com", "oldPassword");
-        token = new PasswordResetToken("abc123", user, LocalDateTime.now().plusMinutes(30));
+        Field id = User.class.getDeclaredField("id");
+        id.setAccessible(true);
+        id.set(user, 7);
     }
 
     //Test generateResetToken
-    //Should delete old tokens, create new token, and return reset link
+    //Should store only the digest of a new token for the user, and queue the email carrying the token itself
     @Test
-    public void testGenerateResetToken_ShouldReturnResetLink() {
+    public void testGenerateResetToken_ShouldQueueEmail() {
         when(userRepo.findByEmail("reset@example.com")).thenReturn(user);
+        ArgumentCaptor<String> token = ArgumentCaptor.forClass(String.class);
 
-        String link = passwordResetService.generateResetToken("reset@example.com");
+        assertTrue(passwordResetService.generateResetToken("reset@example.com"));
 
-        assertNotNull(link);
-        assertTrue(link.contains("http://localhost:3000/reset-password?token="));
-        verify(tokenRepo).deleteByUser(user);
-        verify(tokenRepo).save(any(PasswordResetToken.class));
+        verify(outbox).enqueue(eq(OutboxMessage.PASSWORD_RESET_EMAIL), eq("reset@example.com"), token.capture());
+        verify(tokenStore).put(7, TokenDigest.sha256Bytes(token.getValue()), PasswordResetService.TOKEN_TTL);
     }
 
     //Test generateResetToken when user does not exist
-    //Should return null
+    //Should return false
     @Test
-    public void testGenerateResetToken_UserNotFound_ShouldReturnNull() {
+    public void testGenerateResetToken_UserNotFound_ShouldReturnFalse() {
         when(userRepo.findByEmail("nope@example.com")).thenReturn(null);
 
-        String link = passwordResetService.generateResetToken("nope@example.com");
+        assertFalse(passwordResetService.generateResetToken("nope@example.com"));
 
-        assertNull(link);
-        verify(tokenRepo, never()).save(any());
+        verifyNoInteractions(tokenStore, outbox);
     }
 
     //Test resetPassword when token is valid and not expired
-    //Should encode password, save user, delete token, and return true
+    //Should encode password, consume the token, then update the user in one statement (revoking old JWTs)
     @Test
     public void testResetPassword_ValidToken_ShouldResetPassword() {
-        when(tokenRepo.findByToken("abc123")).thenReturn(token);
+        byte[] hash = TokenDigest.sha256Bytes("abc123");
+        when(tokenStore.findUserId(aryEq(hash))).thenReturn(7);
+        when(tokenStore.consume(aryEq(hash))).thenReturn(true);
         when(passwordEncoder.encode("newPassword")).thenReturn("hashedNew");
+        runHashingInline();
 
-        boolean result = passwordResetService.resetPassword("abc123", "newPassword");
+        boolean result = passwordResetService.resetPassword("abc123", "newPassword").join();
 
         assertTrue(result);
-        verify(userRepo).save(any(User.class));
-        verify(tokenRepo).delete(token);
+        verify(ioExecutor).execute(any());
+        verify(userRepo).resetPassword(7, "hashedNew");
+        verify(tokenVersionCache).evict(7);
+        verify(userCache).invalidate(7);
+        verify(invalidationBus).publish(CacheRegion.USER, 7);
     }
 
-    //Test resetPassword when token is null
+    //Test resetPassword when the token was consumed by a concurrent reset while hashing
+    //Should return false and leave the user alone
+    @Test
+    public void testResetPassword_TokenAlreadyConsumed_ShouldReturnFalse() {
+        when(tokenStore.findUserId(any())).thenReturn(7);
+        when(tokenStore.consume(any())).thenReturn(false);
+        when(passwordEncoder.encode("newPassword")).thenReturn("hashedNew");
+        runHashingInline();
+
+        boolean result = passwordResetService.resetPassword("abc123", "newPassword").join();
+
+        assertFalse(result);
+        verify(userRepo, never()).resetPassword(anyInt(), any());
+        verifyNoInteractions(invalidationBus);
+    }
+
+    //Test resetPassword when token is unknown or expired (the lookup only returns live tokens)
     //Should return false
     @Test
     public void testResetPassword_InvalidToken_ShouldReturnFalse() {
-        when(tokenRepo.findByToken("invalid")).thenReturn(null);
+        when(tokenStore.findUserId(any())).thenReturn(null);
 
-        boolean result = passwordResetService.resetPassword("invalid", "newPassword");
+        boolean result = passwordResetService.resetPassword("invalid", "newPassword").join();
 
         assertFalse(result);
+        verifyNoInteractions(passwordHashingService);
     }
 
-    //Test resetPassword when token is expired
+    //Test resetPassword without a token
     //Should return false
     @Test
-    public void testResetPassword_ExpiredToken_ShouldReturnFalse() {
-        token.setExpiration(LocalDateTime.now().minusMinutes(5));
-        when(tokenRepo.findByToken("abc123")).thenReturn(token);
-
-        boolean result = passwordResetService.resetPassword("abc123", "newPassword");
+    public void testResetPassword_MissingToken_ShouldReturnFalse() {
+        boolean result = passwordResetService.resetPassword(null, "newPassword").join();
 
         assertFalse(result);
+        verifyNoInteractions(tokenStore);
+    }
+
+    //Run hashing tasks inline, checking that they only hash (the token is consumed and the user updated on the task executor)
+    private void runHashingInline() {
+        when(passwordHashingService.submit(any())).thenAnswer(invocation -> {
+            Object result = ((Supplier<?>) invocation.getArgument(0)).get();
+            verify(tokenStore, never()).consume(any());
+            verifyNoInteractions(userRepo);
+            return CompletableFuture.completedFuture(result);
+        });
     }
 }
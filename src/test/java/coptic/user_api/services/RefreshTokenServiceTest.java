@@ -0,0 +1,125 @@
+package coptic.user_api.services;
+
+import coptic.user_api.dto.AuthTokens;
+import coptic.user_api.models.User;
+import coptic.user_api.repositories.UserRepository;
+import coptic.user_api.security.JWT;
+import coptic.user_api.security.TokenRevocationList;
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+//Refresh token rotation and revocation against Postgres
+@SpringBootTest
+public class RefreshTokenServiceTest {
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private TokenRevocationList revocationList;
+
+    @Autowired
+    private UserRepository userRepo;
+
+    @Autowired
+    private JWT jwt;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User user;
+
+    @BeforeEach
+    public void setUp() {
+        user = userRepo.save(new User("refresh-" + UUID.randomUUID() + "@example.com", "hash"));
+    }
+
+    //A refresh returns a new pair for the same user and retires the presented refresh token
+    @Test
+    public void testRefresh_ShouldRotate() {
+        AuthTokens first = refreshTokenService.issue(user);
+
+        AuthTokens second = refreshTokenService.refresh(first.getRefreshToken());
+
+        assertNotNull(second);
+        assertNotEquals(first.getRefreshToken(), second.getRefreshToken());
+        Claims claims = jwt.parseClaims(second.getToken());
+        assertEquals(user.getId(), claims.get(JWT.USER_ID_CLAIM, Integer.class));
+        assertNotEquals(jwt.parseClaims(first.getToken()).getId(), claims.getId());
+        assertNotNull(refreshTokenService.refresh(second.getRefreshToken()));
+    }
+
+    //Presenting a used refresh token revokes the whole session: its successor and the access tokens issued with both
+    @Test
+    public void testReusedToken_ShouldRevokeFamily() {
+        AuthTokens first = refreshTokenService.issue(user);
+        AuthTokens second = refreshTokenService.refresh(first.getRefreshToken());
+
+        assertNull(refreshTokenService.refresh(first.getRefreshToken()));
+
+        assertNull(refreshTokenService.refresh(second.getRefreshToken()));
+        assertTrue(isRevoked(first.getToken()));
+        assertTrue(isRevoked(second.getToken()));
+    }
+
+    //Logout revokes the session; other sessions of the same user are untouched
+    @Test
+    public void testLogout_ShouldRevokeOnlyThatSession() {
+        AuthTokens session = refreshTokenService.issue(user);
+        AuthTokens otherSession = refreshTokenService.issue(user);
+
+        assertTrue(refreshTokenService.logout(session.getRefreshToken()));
+
+        assertNull(refreshTokenService.refresh(session.getRefreshToken()));
+        assertTrue(isRevoked(session.getToken()));
+        assertFalse(isRevoked(otherSession.getToken()));
+        assertNotNull(refreshTokenService.refresh(otherSession.getRefreshToken()));
+        assertFalse(refreshTokenService.logout("unknown"));
+    }
+
+    //Sessions started before a password change or reset can not be refreshed
+    @Test
+    public void testRefreshAfterPasswordReset_ShouldFail() {
+        AuthTokens tokens = refreshTokenService.issue(user);
+
+        userRepo.resetPassword(user.getId(), "new-hash");
+
+        assertNull(refreshTokenService.refresh(tokens.getRefreshToken()));
+    }
+
+    //Expired refresh tokens are refused, and purged
+    @Test
+    public void testExpiredToken_ShouldBeRefusedAndPurged() {
+        AuthTokens tokens = refreshTokenService.issue(user);
+        jdbcTemplate.update("UPDATE refresh_tokens SET expires_at = now() - interval '1 minute' WHERE user_id = ?", user.getId());
+
+        assertNull(refreshTokenService.refresh(tokens.getRefreshToken()));
+        assertTrue(refreshTokenService.purgeExpired() >= 1);
+        assertEquals(0, jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM refresh_tokens WHERE user_id = ?", Integer.class, user.getId()));
+    }
+
+    //Revocations made in the database are picked up by a rebuild of the filter
+    @Test
+    public void testRebuild_ShouldLoadStoredRevocations() {
+        UUID jti = UUID.randomUUID();
+        jdbcTemplate.update("INSERT INTO revoked_access_tokens (jti, expires_at) VALUES (?, now() + interval '10 minutes')", jti);
+
+        assertTrue(revocationList.rebuild() >= 1);
+
+        assertTrue(revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits()));
+    }
+
+    private boolean isRevoked(String accessToken) {
+        UUID jti = UUID.fromString(jwt.parseClaims(accessToken).getId());
+        return revocationList.isRevoked(jti.getMostSignificantBits(), jti.getLeastSignificantBits());
+    }
+}
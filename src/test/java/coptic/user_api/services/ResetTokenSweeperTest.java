@@ -0,0 +1,46 @@
+package coptic.user_api.services;
+
+import coptic.user_api.reset.ResetTokenStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ResetTokenSweeperTest {
+
+    @Mock
+    private ResetTokenStore tokenStore;
+
+    //Full batches mean more may be waiting; a short batch ends the run
+    @Test
+    public void testSweepExpired_ShouldDeleteUntilShortBatch() {
+        when(tokenStore.deleteExpired(100)).thenReturn(100, 100, 37);
+        ResetTokenSweeper sweeper = new ResetTokenSweeper(tokenStore, true, 100, 10);
+
+        assertEquals(237, sweeper.sweepExpired());
+        verify(tokenStore, times(3)).deleteExpired(100);
+        assertEquals(237, sweeper.getSweptCount());
+    }
+
+    //A run never issues more than its batch budget, however large the backlog
+    @Test
+    public void testSweepExpired_LargeBacklog_ShouldStopAtBatchBudget() {
+        when(tokenStore.deleteExpired(50)).thenReturn(50);
+        ResetTokenSweeper sweeper = new ResetTokenSweeper(tokenStore, true, 50, 3);
+
+        assertEquals(150, sweeper.sweepExpired());
+        verify(tokenStore, times(3)).deleteExpired(50);
+    }
+
+    //A disabled sweeper leaves the table alone on scheduled runs
+    @Test
+    public void testSweep_Disabled_ShouldDoNothing() {
+        new ResetTokenSweeper(tokenStore, false, 100, 10).sweep();
+
+        verifyNoInteractions(tokenStore);
+    }
+}
@@ -2,15 +2,28 @@ package coptic.user_api.services;
 
 import coptic.user_api.models.User;
 import coptic.user_api.repositories.UserRepository;
+import coptic.user_api.security.TokenVersionCache;
+import coptic.user_api.security.UserCache;
+import coptic.user_api.cache.CacheInvalidationBus;
+import coptic.user_api.cache.CacheRegion;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
 import org.mockito.InjectMocks;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,6 +38,32 @@ public class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private TokenVersionCache tokenVersionCache;
+
+    @Mock
+    private PasswordHashingService passwordHashingService;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private CacheInvalidationBus invalidationBus;
+
+    //Real registry, so hashing timers can be checked
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    //Real template over a mocked transaction manager, so commits and rollbacks can be checked
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Spy
+    private TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+    //Task executor running inline, so the database work after a hash can be checked
+    @Spy
+    private Executor ioExecutor = new SyncTaskExecutor();
+
     //Inject into service
     @InjectMocks
     private UserService userService;
@@ -47,12 +86,58 @@ public class UserServiceTest {
 
         assertEquals("hashedPassword", savedUser.getPassword());
         verify(userRepository).save(savedUser);
+        verify(userCache).invalidate(savedUser.getEmail());
+    }
+
+    //Test updatePassword (hash, bump token version in one statement, evict cached version)
+    @Test
+    public void testUpdatePassword_ShouldEncodeBumpVersionAndEvict() {
+        user.setId(7);
+        when(passwordEncoder.encode("newPassword")).thenReturn("hashedNew");
+        when(userRepository.resetPassword(7, "hashedNew")).thenReturn(1);
+
+        assertTrue(userService.updatePassword(user, "newPassword"));
+        verify(transactionManager).commit(any());
+
+        //The caller's copy is never saved (it may hold an outdated token version)
+        verify(userRepository, never()).save(any());
+        verify(tokenVersionCache).evict(7);
+        verify(userCache).invalidate(7);
+        verify(invalidationBus).publish(CacheRegion.USER, 7);
+    }
+
+    //Test updatePassword when the invalidation event can not be sent: the update is rolled back, the caller sees the error
+    @Test
+    public void testUpdatePassword_PublishFails_ShouldRollBack() {
+        user.setId(7);
+        when(passwordEncoder.encode("newPassword")).thenReturn("hashedNew");
+        when(userRepository.resetPassword(7, "hashedNew")).thenReturn(1);
+        doThrow(new IllegalStateException("notify failed")).when(invalidationBus).publish(CacheRegion.USER, 7);
+
+        assertThrows(IllegalStateException.class, () -> userService.updatePassword(user, "newPassword"));
+
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+        verify(userCache).invalidate(7);
+    }
+
+    //Test updatePassword for a user deleted meanwhile (nothing published)
+    @Test
+    public void testUpdatePassword_MissingUser_ShouldReturnFalse() {
+        user.setId(7);
+        when(passwordEncoder.encode("newPassword")).thenReturn("hashedNew");
+        when(userRepository.resetPassword(7, "hashedNew")).thenReturn(0);
+
+        assertFalse(userService.updatePassword(user, "newPassword"));
+
+        verify(invalidationBus, never()).publish(any(), anyInt());
+        verify(userCache).invalidate(7);
     }
 
     //Test findUserByEmail
     @Test
     public void testFindUserByEmail_ShouldReturnUser() {
-        when(userRepository.findByEmail("test@example.com")).thenReturn(user);
+        when(userCache.findByEmail("test@example.com")).thenReturn(user);
 
         User result = userService.findUserByEmail("test@example.com");
 
@@ -77,6 +162,7 @@ public class UserServiceTest {
         boolean match = userService.checkPassword("raw", "hashed");
 
         assertTrue(match);
+        assertEquals(1, meterRegistry.timer("password.hash", "operation", "check").count());
     }
 
     //Test checkPassword (no match)
@@ -89,6 +175,114 @@ public class UserServiceTest {
         assertFalse(match);
     }
 
+    //Test checkPassword for a user whose hash is current (no rehash)
+    @Test
+    public void testCheckPasswordForUser_CurrentHash_ShouldNotRehash() {
+        user.setPassword("{bcrypt}current");
+        when(passwordEncoder.matches("raw", "{bcrypt}current")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("{bcrypt}current")).thenReturn(false);
+
+        assertTrue(userService.checkPassword(user, "raw"));
+
+        verify(userRepository, never()).updatePasswordHash(anyInt(), any(), any());
+    }
+
+    //Test checkPassword for a user whose hash is outdated (rehash and persist)
+    @Test
+    public void testCheckPasswordForUser_OutdatedHash_ShouldRehashAndPersist() {
+        user.setId(3);
+        user.setPassword("legacyHash");
+        when(passwordEncoder.matches("raw", "legacyHash")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("legacyHash")).thenReturn(true);
+        when(passwordEncoder.encode("raw")).thenReturn("{bcrypt}fresh");
+        when(userRepository.updatePasswordHash(3, "legacyHash", "{bcrypt}fresh")).thenReturn(1);
+
+        assertTrue(userService.checkPassword(user, "raw"));
+
+        //Persisted and the cached copy dropped; the caller's instance is left as it was
+        verify(userRepository).updatePasswordHash(3, "legacyHash", "{bcrypt}fresh");
+        verify(userCache).invalidate(3);
+        assertEquals("legacyHash", user.getPassword());
+    }
+
+    //Test checkPassword for a user with a wrong password (never rehash)
+    @Test
+    public void testCheckPasswordForUser_WrongPassword_ShouldNotRehash() {
+        user.setPassword("legacyHash");
+        when(passwordEncoder.matches("wrong", "legacyHash")).thenReturn(false);
+
+        assertFalse(userService.checkPassword(user, "wrong"));
+
+        verify(passwordEncoder, never()).encode(any());
+    }
+
+    //Test checkPasswordAsync (check runs through the hashing pool)
+    @Test
+    public void testCheckPasswordAsync_ShouldRunOnHashingPool() {
+        when(passwordHashingService.submit(any())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(((Supplier<?>) invocation.getArgument(0)).get()));
+        when(passwordEncoder.matches("raw", "hashed")).thenReturn(true);
+
+        boolean match = userService.checkPasswordAsync("raw", "hashed").join();
+
+        assertTrue(match);
+        verify(passwordHashingService).submit(any());
+    }
+
+    //Test checkPasswordAsync for a user whose hash is outdated (hash on the pool, store on the task executor)
+    @Test
+    public void testCheckPasswordAsyncForUser_OutdatedHash_ShouldPersistOffThePool() {
+        user.setId(3);
+        user.setPassword("legacyHash");
+        runHashingInlineWithoutDatabase();
+        when(passwordEncoder.matches("raw", "legacyHash")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("legacyHash")).thenReturn(true);
+        when(passwordEncoder.encode("raw")).thenReturn("{bcrypt}fresh");
+        when(userRepository.updatePasswordHash(3, "legacyHash", "{bcrypt}fresh")).thenReturn(1);
+
+        assertTrue(userService.checkPasswordAsync(user, "raw").join());
+
+        verify(ioExecutor).execute(any());
+        verify(userRepository).updatePasswordHash(3, "legacyHash", "{bcrypt}fresh");
+    }
+
+    //Test createUserAsync (hash on the pool, then save on the task executor)
+    @Test
+    public void testCreateUserAsync_ShouldEncodeOnPoolAndSave() {
+        runHashingInlineWithoutDatabase();
+        when(passwordEncoder.encode("plaintextPassword")).thenReturn("hashedPassword");
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        User savedUser = userService.createUserAsync(user).join();
+
+        assertEquals("hashedPassword", savedUser.getPassword());
+        verify(ioExecutor).execute(any());
+        verify(userRepository).save(user);
+    }
+
+    //Test updatePasswordAsync (hash on the pool, update on the task executor)
+    @Test
+    public void testUpdatePasswordAsync_ShouldEncodeOnPoolAndUpdate() {
+        user.setId(7);
+        runHashingInlineWithoutDatabase();
+        when(passwordEncoder.encode("newPassword")).thenReturn("hashedNew");
+        when(userRepository.resetPassword(7, "hashedNew")).thenReturn(1);
+
+        assertTrue(userService.updatePasswordAsync(user, "newPassword").join());
+
+        verify(ioExecutor).execute(any());
+        verify(userRepository).resetPassword(7, "hashedNew");
+    }
+
+    //Run hashing tasks inline, checking that they do not touch the database (that belongs on the task executor)
+    private void runHashingInlineWithoutDatabase() {
+        when(passwordHashingService.submit(any())).thenAnswer(invocation -> {
+            Object result = ((Supplier<?>) invocation.getArgument(0)).get();
+            verifyNoInteractions(userRepository);
+            return CompletableFuture.completedFuture(result);
+        });
+    }
+
     //Test encodePassword
     @Test
     public void testEncodePassword_ShouldReturnEncodedPassword() {
@@ -97,5 +291,6 @@ public class UserServiceTest {
         String encoded = userService.encodePassword("123");
 
         assertEquals("encoded123", encoded);
+        assertEquals(1, meterRegistry.timer("password.hash", "operation", "encode").count());
     }
 }
@@ -0,0 +1,141 @@
+package coptic.user_api.sql;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SqlStatementRecorderTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(SqlStatementRecorder.class);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+
+    @BeforeEach
+    public void setUp() {
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        logger.detachAppender(appender);
+    }
+
+    //Statements differing only in literals, IN list length or spacing share a fingerprint
+    @Test
+    public void testFingerprint_ShouldFoldLiteralsAndInLists() {
+        assertEquals("select * from users where email=? and id=?",
+                SqlStatementRecorder.fingerprint("select *  from users\n where email='a''b@x.com' and id=42"));
+        assertEquals("select b1_0.id from bookmarks b1_0 where b1_0.id in (?)",
+                SqlStatementRecorder.fingerprint("select b1_0.id from bookmarks b1_0 where b1_0.id in (?, ?,?)"));
+        assertEquals(SqlStatementRecorder.fingerprint("delete from t where id IN (?)"),
+                SqlStatementRecorder.fingerprint("delete from t where id in (?,?,?,?)"));
+        assertEquals(SqlStatementRecorder.MAX_FINGERPRINT_LENGTH,
+                SqlStatementRecorder.fingerprint("select " + "x,".repeat(1000) + "y").length());
+    }
+
+    //Totals add up per fingerprint, and the report lists the most total time first
+    @Test
+    public void testTop_ShouldAggregateByFingerprintAndSortByTotalTime() {
+        SqlStatementRecorder recorder = new SqlStatementRecorder(1000, 0, 100, () -> 1);
+        recorder.record("select * from users where id=1", TimeUnit.MILLISECONDS.toNanos(2), 0, false);
+        recorder.record("select * from users where id=2", TimeUnit.MILLISECONDS.toNanos(4), 0, false);
+        recorder.record("select * from bookmarks where user_id=?", TimeUnit.MILLISECONDS.toNanos(10), 1, false);
+        recorder.record("select * from bookmarks where user_id=?", TimeUnit.MILLISECONDS.toNanos(1), 1, true);
+
+        List<StatementSummary> top = recorder.top(10);
+        assertEquals(2, top.size());
+        assertEquals("select * from bookmarks where user_id=?", top.get(0).getFingerprint());
+        assertEquals(2, top.get(0).getCount());
+        assertEquals(1, top.get(0).getFailedCount());
+        assertEquals(11.0, top.get(0).getTotalMillis(), 0.001);
+        assertEquals(10.0, top.get(0).getMaxMillis(), 0.001);
+        assertEquals(1.0, top.get(0).getMeanBinds(), 0.001);
+        assertEquals("select * from users where id=?", top.get(1).getFingerprint());
+        assertEquals(3.0, top.get(1).getMeanMillis(), 0.001);
+
+        assertEquals(1, recorder.top(1).size());
+        assertEquals(4, recorder.getStatementCount());
+
+        recorder.reset();
+        assertTrue(recorder.top(10).isEmpty());
+    }
+
+    //Past the bound, new statement shapes are counted together instead of growing the table
+    @Test
+    public void testRecord_TableFull_ShouldCountNewShapesUnderOther() {
+        SqlStatementRecorder recorder = new SqlStatementRecorder(1000, 0, 2, () -> 1);
+        recorder.record("select a from t", 1, 0, false);
+        recorder.record("select b from t", 1, 0, false);
+        recorder.record("select c from t", 1, 0, false);
+        recorder.record("select d from t", 1, 0, false);
+        recorder.record("select a from t", 1, 0, false);
+
+        assertEquals(3, recorder.getFingerprintCount());
+        StatementSummary other = recorder.top(10).stream()
+                .filter(s -> s.getFingerprint().equals(SqlStatementRecorder.OTHER)).findFirst().orElseThrow();
+        assertEquals(2, other.getCount());
+    }
+
+    //Slow statements are always logged at WARN; fast ones only when sampled, and never with bound values
+    @Test
+    public void testRecord_ShouldLogSlowAndSampledStatements() {
+        double[] roll = {0.9};
+        SqlStatementRecorder recorder = new SqlStatementRecorder(100, 0.5, 100, () -> roll[0]);
+
+        recorder.record("update users set password=? where id=?", TimeUnit.MILLISECONDS.toNanos(150), 2, false);
+        recorder.record("select 1", TimeUnit.MILLISECONDS.toNanos(1), 0, false);
+        roll[0] = 0.1;
+        recorder.record("select 2", TimeUnit.MILLISECONDS.toNanos(1), 0, false);
+
+        assertEquals(2, appender.list.size());
+        assertEquals(Level.WARN, appender.list.get(0).getLevel());
+        assertTrue(appender.list.get(0).getFormattedMessage().contains("150 ms, 2 binds: update users set password=? where id=?"));
+        assertEquals(Level.INFO, appender.list.get(1).getLevel());
+        assertTrue(appender.list.get(1).getFormattedMessage().endsWith("select 2"));
+    }
+
+    //Through the DataSource proxy, each execution is timed and its binds counted
+    @Test
+    public void testProxy_ShouldRecordExecutionsWithBindCounts() throws Exception {
+        DataSource target = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(target.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(mock(ResultSet.class));
+
+        SqlStatementRecorder recorder = new SqlStatementRecorder(1000, 0, 100, () -> 1);
+        DataSource dataSource = ProxyDataSourceBuilder.create(target).listener(recorder).build();
+
+        try (Connection c = dataSource.getConnection();
+             PreparedStatement ps = c.prepareStatement("select * from users where email=? and token_version=?")) {
+            ps.setString(1, "a@example.com");
+            ps.setInt(2, 3);
+            ps.executeQuery();
+            ps.executeQuery();
+        }
+
+        StatementSummary summary = recorder.top(1).get(0);
+        assertEquals("select * from users where email=? and token_version=?", summary.getFingerprint());
+        assertEquals(2, summary.getCount());
+        assertEquals(2.0, summary.getMeanBinds(), 0.001);
+    }
+}